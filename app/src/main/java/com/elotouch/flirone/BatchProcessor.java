@@ -0,0 +1,290 @@
+package com.example.flirone;
+
+import android.util.Log;
+
+import com.flir.thermalsdk.image.ImageFactory;
+import com.flir.thermalsdk.image.Rectangle;
+import com.flir.thermalsdk.image.TemperatureUnit;
+import com.flir.thermalsdk.image.ThermalImageFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-analyze a directory of saved radiometric images with the current {@link CalibrationHandler} parameters.
+ * <p>
+ * Every image is calibrated, read into a {@link TemperatureMatrix} and run through the same {@link RoiStatistics} as the
+ * live stream, for the whole image and for the guide rectangle. Files are processed on a work-stealing pool sized to
+ * the number of cores; how many are decoded at once is further limited by a memory budget derived from the free heap,
+ * so large images can't run the process out of memory. The result is a CSV report with one row per file and a summary.
+ * <p>
+ * Recorded {@link FrameCodec} sessions are decoded and every frame is measured; their row holds the lowest minimum,
+ * highest maximum and mean average over all frames. Frames are {@link RadiometricCorrection#recorrect re-corrected}
+ * from the calibration stored in the recording to the current one; recordings that don't store it are measured as
+ * they were recorded.
+ * <p>
+ * An instance runs a single batch.
+ */
+class BatchProcessor {
+    private static final String TAG = "BatchProcessor";
+    // Snapshots are kept in their own subdirectory, which isn't scanned
+    private static final String[] EXTENSIONS = {".jpg", ".jpeg", FrameCodec.EXTENSION};
+    // Decoded image, temperature array and matrix take a multiple of the file size
+    private static final int DECODE_FACTOR = 8;
+    private static final long MB = 1024 * 1024;
+
+    /**
+     * Totals of a batch run
+     */
+    static class Summary {
+        int files;
+        int failed;
+        long elapsedMillis;
+        double maxKelvin = -Double.MAX_VALUE;
+        File report;
+
+        @Override
+        public String toString() {
+            return (files - failed) + "/" + files + " images in " + elapsedMillis + " ms"
+                    + (files > failed ? ", max " + Math.round(CalibrationHandler.kToC(maxKelvin) * 100.0) / 100.0 + " C" : "");
+        }
+    }
+
+    /**
+     * Result of one file, written as a report row
+     */
+    private static class Result {
+        final File file;
+        int width;
+        int height;
+        int frames = 1;
+        final RoiStatistics image = new RoiStatistics();
+        final RoiStatistics guide = new RoiStatistics();
+        boolean hasGuide;
+        String error;
+
+        Result(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Fold the statistics of one more recorded frame into the totals, averages are kept as sums until {@link #finish}
+         */
+        void add(RoiStatistics total, RoiStatistics frame, boolean first) {
+            if (first) {
+                total.min = frame.min;
+                total.max = frame.max;
+                total.avg = 0;
+            }
+            total.min = Math.min(total.min, frame.min);
+            total.max = Math.max(total.max, frame.max);
+            total.avg += frame.avg;
+        }
+
+        void finish(RoiStatistics total, int count) {
+            total.avg /= Math.max(1, count);
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final TemperatureMatrixPool matrixPool;
+    private final int parallelism;
+
+    BatchProcessor() {
+        parallelism = Math.max(1, Runtime.getRuntime().availableProcessors());
+        pool = new ForkJoinPool(parallelism);
+        matrixPool = new TemperatureMatrixPool(parallelism);
+    }
+
+    /**
+     * Process every image in a directory and write the report next to it
+     *
+     * @param directory  directory holding the saved images
+     * @param reportFile where to write the CSV report
+     * @return totals of the run
+     */
+    Summary process(File directory, File reportFile) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        File[] files = directory.listFiles((dir, name) -> {
+            String lower = name.toLowerCase();
+            for (String extension : EXTENSIONS) {
+                if (lower.endsWith(extension)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+        if (files == null) {
+            throw new IOException("Can not list " + directory);
+        }
+        Arrays.sort(files);
+
+        // Budget in MB: half of what the heap can still grow to
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        int budget = (int) Math.max(1, free / 2 / MB);
+        Semaphore memory = new Semaphore(budget);
+
+        List<Result> results = new ArrayList<>(files.length);
+        boolean finished = false;
+        try {
+            for (File file : files) {
+                Result result = new Result(file);
+                results.add(result);
+                int cost = (int) Math.min(budget, Math.max(1, file.length() * DECODE_FACTOR / MB));
+                // Blocks this thread, not the pool, once the budget is used up
+                memory.acquire(cost);
+                pool.execute(() -> {
+                    try {
+                        analyze(result);
+                    } finally {
+                        memory.release(cost);
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            finished = true;
+        } finally {
+            if (!finished) {
+                // Interrupted, don't leave the workers running
+                pool.shutdownNow();
+            }
+        }
+
+        Summary summary = new Summary();
+        summary.files = files.length;
+        summary.report = reportFile;
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(reportFile))) {
+            out.write("file,frames,width,height,min_c,max_c,avg_c,guide_min_c,guide_max_c,guide_avg_c,error\n");
+            for (Result result : results) {
+                out.write(csv(result.file.getName()));
+                out.write(',');
+                if (result.error != null) {
+                    summary.failed++;
+                    out.write(",,,,,,,,," + csv(result.error) + "\n");
+                    continue;
+                }
+                summary.maxKelvin = Math.max(summary.maxKelvin, result.image.max);
+                out.write(result.frames + "," + result.width + "," + result.height + "," + celsius(result.image.min) + "," + celsius(result.image.max) + "," + celsius(result.image.avg) + ",");
+                if (result.hasGuide) {
+                    out.write(celsius(result.guide.min) + "," + celsius(result.guide.max) + "," + celsius(result.guide.avg));
+                } else {
+                    out.write(",,");
+                }
+                out.write(",\n");
+            }
+        }
+        summary.elapsedMillis = System.currentTimeMillis() - start;
+        Log.d(TAG, "process: " + summary + " with " + parallelism + " threads and a " + budget + " MB budget");
+        return summary;
+    }
+
+    /**
+     * A CSV field, quoted with its quotes doubled if it holds a separator, a quote or a line break
+     */
+    private static String csv(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + field.replace("\"", "\"\"") + '"';
+            }
+        }
+        return field;
+    }
+
+    private void analyze(Result result) {
+        if (result.file.getName().endsWith(FrameCodec.EXTENSION)) {
+            analyzeRecording(result);
+            return;
+        }
+        TemperatureMatrix matrix = null;
+        try {
+            ThermalImageFile image = ImageFactory.createImage(result.file.getAbsolutePath());
+            CalibrationHandler.applyTo(image);
+            image.setTemperatureUnit(TemperatureUnit.KELVIN);
+            result.width = image.getWidth();
+            result.height = image.getHeight();
+            matrix = matrixPool.acquire(result.width, result.height);
+            matrix.fill(image.getValues(new Rectangle(0, 0, result.width, result.height)), result.file.lastModified());
+
+            result.image.compute(matrix, 0, 0, matrix.width, matrix.height);
+            if (FlirCameraActivity.width > 0 && FlirCameraActivity.height > 0) {
+                SummedAreaTable sums = new SummedAreaTable();
+                sums.build(matrix);
+                result.hasGuide = result.guide.compute(matrix, sums, FlirCameraActivity.left, FlirCameraActivity.top, FlirCameraActivity.width, FlirCameraActivity.height);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Could not analyze " + result.file + ": " + e);
+            result.error = String.valueOf(e.getMessage());
+        } finally {
+            if (matrix != null) {
+                matrix.release();
+            }
+        }
+    }
+
+    private void analyzeRecording(Result result) {
+        RoiStatistics image = new RoiStatistics();
+        RoiStatistics guide = new RoiStatistics();
+        SummedAreaTable sums = new SummedAreaTable();
+        RadiometricCorrection current = CalibrationHandler.correction();
+        float[] row = new float[0];
+        int guideFrames = 0;
+        result.frames = 0;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(result.file), 64 * 1024)) {
+            FrameDecoder decoder = new FrameDecoder(in);
+            RadiometricCorrection recorded = decoder.getCorrection();
+            TemperatureMatrix matrix;
+            while ((matrix = decoder.read(matrixPool)) != null) {
+                try {
+                    if (current != null && recorded != null) {
+                        if (row.length < matrix.width) {
+                            row = new float[matrix.width];
+                        }
+                        current.recorrect(matrix, recorded, row);
+                    }
+                    result.width = matrix.width;
+                    result.height = matrix.height;
+                    image.compute(matrix, 0, 0, matrix.width, matrix.height);
+                    result.add(result.image, image, result.frames == 0);
+                    if (FlirCameraActivity.width > 0 && FlirCameraActivity.height > 0) {
+                        sums.build(matrix);
+                        if (guide.compute(matrix, sums, FlirCameraActivity.left, FlirCameraActivity.top, FlirCameraActivity.width, FlirCameraActivity.height)) {
+                            result.add(result.guide, guide, guideFrames == 0);
+                            guideFrames++;
+                        }
+                    }
+                    result.frames++;
+                } finally {
+                    matrix.release();
+                }
+            }
+            result.finish(result.image, result.frames);
+            result.finish(result.guide, guideFrames);
+            result.hasGuide = guideFrames > 0;
+            if (result.frames == 0) {
+                result.error = "empty recording";
+            }
+            Log.d(TAG, "Decoded " + result.frames + " frames of " + result.file.getName() + " at " + decoder.getThroughputMBps() + " MB/s");
+        } catch (IOException e) {
+            Log.e(TAG, "Could not analyze " + result.file + ": " + e);
+            result.error = String.valueOf(e.getMessage());
+        }
+    }
+
+    private static double celsius(double kelvin) {
+        return Math.round(CalibrationHandler.kToC(kelvin) * 100.0) / 100.0;
+    }
+}
@@ -1,7 +1,7 @@
 package com.example.flirone;
 
 import android.app.Activity;
-import android.app.AlertDialog;
+import android.content.Intent;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -17,10 +17,10 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.flir.thermalsdk.image.DistanceUnit;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Map;
 import java.util.Objects;
 
 public class CalibrateActivity extends AppCompatActivity {
@@ -113,26 +113,36 @@ public class CalibrateActivity extends AppCompatActivity {
     }
 
     public void viewLog(View v) {
-        if (CameraHandler.tempLog != null) {
-            StringBuilder msgDialog = new StringBuilder();
-
-            if (CameraHandler.tempLog.size() != 0) {
-                for (Map.Entry<Long, String> entry : CameraHandler.tempLog.entrySet()) {
-                    Date date = new Date(entry.getKey());
-                    msgDialog.append(date.toString()).append(":\n==>").append(entry.getValue()).append("\n");
-                }
-            } else {
-                msgDialog.append("There are no logs recorded.");
-            }
+        startActivity(new Intent(getApplicationContext(), LogViewerActivity.class));
+    }
 
-            String title = CameraHandler.tempLog.size() + " Readings:";
-            new AlertDialog.Builder(getWindow().getContext()).setTitle(title).setMessage(msgDialog.toString()).setPositiveButton("Close", null).setNegativeButton("Reset", (dialog, which) -> {
-                CameraHandler.resetLog();
-                viewLog(v);
-            }).setNeutralButton("Save", (dialog, which) -> {
-                CameraHandler.saveLog(this,false);
-            }).show();
+    /**
+     * Run every saved image through the current calibration and write a report to the logs directory
+     * @param v the button pressed
+     */
+    public void analyzeImages(View v) {
+        saveAll(null);
+        File images = new FileHandler(getApplicationContext()).getImageStoragePath();
+        File logs = getExternalFilesDir("logs");
+        if (logs == null) {
+            Toast.makeText(this, "No storage for the report", Toast.LENGTH_SHORT).show();
+            return;
         }
+        DateFormat formatter = new SimpleDateFormat("MM-dd-yyyy-HH:mm:ss");
+        File report = new File(logs, formatter.format(new Date(System.currentTimeMillis())) + "-BATCH.csv");
+        Toast.makeText(this, "Analyzing saved images...", Toast.LENGTH_SHORT).show();
+        new Thread(() -> {
+            String msg;
+            try {
+                BatchProcessor.Summary summary = new BatchProcessor().process(images, report);
+                msg = summary + ", report: " + report.getName();
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+                msg = "Analysis failed: " + e.getMessage();
+            }
+            String finalMsg = msg;
+            runOnUiThread(() -> Toast.makeText(this, finalMsg, Toast.LENGTH_LONG).show());
+        }).start();
     }
 
 }
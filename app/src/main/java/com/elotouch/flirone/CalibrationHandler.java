@@ -2,6 +2,7 @@ package com.example.flirone;
 
 import com.flir.thermalsdk.androidsdk.ThermalSdkAndroid;
 import com.flir.thermalsdk.image.DistanceUnit;
+import com.flir.thermalsdk.image.TemperatureUnit;
 import com.flir.thermalsdk.image.ThermalImage;
 import com.flir.thermalsdk.image.ThermalValue;
 import com.flir.thermalsdk.image.palettes.Palette;
@@ -36,6 +37,8 @@ public class CalibrationHandler {
     static double relativeHumidity = -1;
     static double transmission = -1;
     static DistanceUnit distanceUnit = DistanceUnit.METER;
+    // Kelvin added to every temperature as it is read, kept up to date by DriftCompensator
+    static volatile float driftOffset = 0;
     static Palette palette = null;
     private static final String[] palettes = {"iron", "Arctic", "blackhot", "bw", "Coldest", "ColorWheel_Redhot", "ColorWheel6", "ColorWheel12", "DoubleRainbow2", "lava", "rainbow", "rainHC", "whitehot", "Hottest"};
     public static boolean calibrationButtonHidden = true;
@@ -43,18 +46,42 @@ public class CalibrationHandler {
 
     static void calibrate(ThermalImage img){
         setDefaults(img);
-        img.getImageParameters().setAtmosphericTemperature(atmosphericTemperature);
-        img.getImageParameters().setDistance(distance);
-        img.getImageParameters().setEmissivity(emissivity);
-        img.getImageParameters().setExternalOpticsTemperature(externalOpticsTemperature);
-        img.getImageParameters().setExternalOpticsTransmission(externalOpticsTransmission);
-        img.getImageParameters().setReflectedTemperature(reflectiveTemperature);
-        img.getImageParameters().setRelativeHumidity(relativeHumidity);
-        img.getImageParameters().setTransmission(transmission);
+        applyTo(img);
+    }
+
+    /**
+     * Apply the current parameters to an image without touching the defaults or the UI, e.g. for saved images.
+     * Parameters that were never set are left as stored in the image.
+     */
+    static void applyTo(ThermalImage img){
+        if(atmosphericTemperature != -1){
+            img.getImageParameters().setAtmosphericTemperature(atmosphericTemperature);
+        }
+        if(distance != -1){
+            img.getImageParameters().setDistance(distance);
+        }
+        if(emissivity != -1){
+            img.getImageParameters().setEmissivity(emissivity);
+        }
+        if(externalOpticsTemperature != -1){
+            img.getImageParameters().setExternalOpticsTemperature(externalOpticsTemperature);
+        }
+        if(externalOpticsTransmission != -1){
+            img.getImageParameters().setExternalOpticsTransmission(externalOpticsTransmission);
+        }
+        if(reflectiveTemperature != -1){
+            img.getImageParameters().setReflectedTemperature(reflectiveTemperature);
+        }
+        if(relativeHumidity != -1){
+            img.getImageParameters().setRelativeHumidity(relativeHumidity);
+        }
+        if(transmission != -1){
+            img.getImageParameters().setTransmission(transmission);
+        }
         img.setDistanceUnit(distanceUnit);
 
         List<String> arr = Arrays.asList(palettes);
-        if(arr.contains(palette.name)){
+        if(palette != null && arr.contains(palette.name)){
             img.setPalette(PaletteManager.getDefaultPalettes().get(arr.indexOf(palette.name)));
         }
     }
@@ -131,6 +158,33 @@ public class CalibrationHandler {
         }
     }
 
+    /**
+     * @return the core's equivalent of an SDK temperature unit
+     */
+    static TemperatureScale scale(TemperatureUnit unit){
+        switch (unit) {
+            case CELSIUS:
+                return TemperatureScale.CELSIUS;
+            case FAHRENHEIT:
+                return TemperatureScale.FAHRENHEIT;
+            default:
+                return TemperatureScale.KELVIN;
+        }
+    }
+
+    /**
+     * @return the current parameters as a {@link RadiometricCorrection}, to re-correct whole matrices that were read with
+     * other parameters, or null until they were taken from the first image
+     */
+    static RadiometricCorrection correction(){
+        if (emissivity <= 0 || reflectiveTemperature < 0 || atmosphericTemperature < 0 || transmission <= 0) {
+            return null;
+        }
+        boolean optics = externalOpticsTransmission > 0 && externalOpticsTemperature >= 0;
+        return new RadiometricCorrection(emissivity, reflectiveTemperature, atmosphericTemperature, transmission,
+                optics ? externalOpticsTemperature : 0, optics ? externalOpticsTransmission : 1);
+    }
+
     private static double kToF(double k){
         return ((k - 273.15) * 9/5) + 32;
     }
@@ -4,17 +4,19 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.media.FaceDetector;
 import android.util.Log;
 
 import com.flir.thermalsdk.androidsdk.image.BitmapAndroid;
+import com.flir.thermalsdk.image.JavaImageBuffer;
 import com.flir.thermalsdk.image.Rectangle;
 import com.flir.thermalsdk.image.TemperatureUnit;
 import com.flir.thermalsdk.image.ThermalImage;
-import com.flir.thermalsdk.image.measurements.MeasurementException;
-import com.flir.thermalsdk.image.measurements.MeasurementRectangle;
+import com.flir.thermalsdk.ErrorCode;
+import com.flir.thermalsdk.image.fusion.FusionMode;
 import com.flir.thermalsdk.live.Camera;
 import com.flir.thermalsdk.live.CommunicationInterface;
 import com.flir.thermalsdk.live.Identity;
@@ -25,16 +27,21 @@ import com.flir.thermalsdk.live.streaming.ThermalImageStreamListener;
 
 import org.jetbrains.annotations.Nullable;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.Objects;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * EHandle a FLIR ONE camera or built in emulator: Discovery, connecting and start receiving images.
@@ -49,9 +56,82 @@ class CameraHandler {
     private static final String TAG = "CameraHandler";
 
     private StreamDataListener streamDataListener;
+    // Frames being processed at once, the pipeline keeps as many for reuse
+    private static final int MAX_FRAMES_IN_FLIGHT = 4;
+    private volatile FramePipeline<PipelineFrame> pipeline;
+    // Frames the consumer asked for, frames beyond that are dropped before they are decoded
+    private final FrameDemand frameDemand = new FrameDemand();
     private static TemperatureUnit temperatureUnit = TemperatureUnit.CELSIUS;
-    static HashMap<Long,String> tempLog = new HashMap<>();
-    private Long currentReadingStartMillis;
+    // Guards tempLog, tempLogHistogram and journal: the guide stage appends on its worker thread while the log viewer
+    // saves and resets them on the UI thread
+    private static final Object tempLogLock = new Object();
+    // Readings of the guide rectangle since the last save, in Kelvin
+    static final ReadingBatch tempLog = new ReadingBatch(4096);
+    static final TimeSeriesStore tempStore = new TimeSeriesStore();
+    // Every guide histogram since the log was last saved or reset, merged
+    static final TemperatureHistogram tempLogHistogram = new TemperatureHistogram();
+    // Longest time a reading in tempLog is only in memory
+    private static final long JOURNAL_SYNC_MILLIS = 1000;
+    // Crash-safe copy of tempLog, null until opened
+    private static ReadingJournal journal;
+    private static long currentReadingStartMillis;
+    private static final char[] LOG_MIN = ": \t Min: ".toCharArray();
+    private static final char[] LOG_MAX = "; Max: ".toCharArray();
+    private static final char[] LOG_AVG = "; Avg: ".toCharArray();
+    private static final char[] LOG_P90 = "; P90: ".toCharArray();
+    private static final char[] LOG_P95 = "; P95: ".toCharArray();
+    private static final char[] LOG_WINDOW = "Window of ".toCharArray();
+    private static final char[] LOG_PIXELS = " pixels".toCharArray();
+
+    // Per frame temperatures, shared by every processing stage
+    private final TemperatureMatrixPool matrixPool = new TemperatureMatrixPool(4);
+    private Rectangle fullFrame;
+    private final OverlayRenderer overlay = new OverlayRenderer();
+
+    // Remote monitoring, null while switched off
+    static volatile MonitoringServer monitoringServer;
+    // Radiometric recording, null while switched off
+    static volatile FrameRecorder frameRecorder;
+    // Side by side view of every fusion mode, null while switched off
+    static volatile MultiModeRenderer multiModeRenderer;
+    // Fusion done by SoftwareFusion instead of the SDK, null while switched off
+    static volatile SoftwareFusion softwareFusion;
+    // Compensation of slow drift against a reference region, null while switched off
+    static volatile DriftCompensator driftCompensator;
+    // Face temperature of a screened person that raises an alert
+    private static final double ALERT_KELVIN = TemperatureScale.ZERO_CELSIUS + 38.0;
+    // Totals of the session for the dashboard
+    static final SessionStatistics sessionStats = new SessionStatistics(ALERT_KELVIN);
+    // Snapshots to the image storage, null until the first one is asked for
+    static volatile SnapshotWriter snapshotWriter;
+    // Reconnects a stalled or lost stream, null while it is off
+    static volatile StreamSupervisor streamSupervisor;
+    // Idles the expensive stages while the scene is static, null while it is off
+    static volatile MotionGate motionGate;
+    // Users of the visual photo, it is only decoded while one of them needs it
+    static volatile boolean photoVisible;
+    static volatile boolean faceDetection = true;
+    private static final int PHOTO_REPORT_INTERVAL = 100;
+    // Photo decoding, only touched on the camera thread
+    private long photosDecoded;
+    private long photosSkipped;
+    private long photoNanos;
+    private long photoBytes;
+    private int[] thermalPixels = new int[0];
+    private int[] visualPixels = new int[0];
+    // Face detection, only touched by the face stage: every skin region is scaled into the same window, so one detector
+    // and one bitmap serve every frame and a search costs the same whatever the photo resolution
+    private static final int FACE_WINDOW_SIZE = 160;
+    private Bitmap faceWindow;
+    private FaceDetector faceDetector;
+    private final Canvas faceCanvas = new Canvas();
+    private final FaceDetector.Face[] faces = new FaceDetector.Face[1];
+    private final PointF faceMidPoint = new PointF();
+    private final Rect faceSource = new Rect();
+    private final RectF faceTarget = new RectF();
+    private long faceFrames;
+    private long faceWindows;
+    private long faceNanos;
 
     public interface StreamDataListener {
         void images(BitmapFrameBuffer dataHolder);
@@ -62,8 +142,8 @@ class CameraHandler {
     // Discovered FLIR cameras
     private LinkedList<Identity> cameraIndentities = new LinkedList<>();
 
-    // A FLIR Camera
-    private Camera camera;
+    // A FLIR Camera, replaced on the stream supervisor's thread when it reconnects
+    private volatile Camera camera;
 
     public interface DiscoveryStatus {
         void started();
@@ -91,17 +171,77 @@ class CameraHandler {
     }
 
     void connectCamera(Identity identity, ConnectionStatusListener connectionStatusListener) throws IOException {
-        camera = new Camera();
-        camera.connect(identity, connectionStatusListener);
+        Camera connecting = new Camera();
+        camera = connecting;
+        connecting.connect(identity, connectionStatusListener);
     }
 
     void disconnectCamera() {
-        if (camera != null) {
-            if (camera.isGrabbing()) {
-                camera.unsubscribeAllStreams();
+        dropConnection();
+        FramePipeline<PipelineFrame> current = pipeline;
+        if (current != null) {
+            pipeline = null;
+            current.stop();
+        }
+        Log.d(TAG, "disconnectCamera: " + photoReport());
+    }
+
+    /**
+     * Let go of a stalled or lost camera, but keep the pipeline with its pooled frames, matrices and bitmaps, so the
+     * stream picks up warm once {@link #startStream} is called on the next connection
+     */
+    void dropConnection() {
+        Camera current = camera;
+        if (current == null) {
+            return;
+        }
+        try {
+            if (current.isGrabbing()) {
+                current.unsubscribeAllStreams();
+            }
+            current.disconnect();
+        } catch (RuntimeException e) {
+            // Whatever is left of a lost connection may not let go cleanly
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Scan for the camera again, e.g. after a USB hiccup, which may give it a new identity
+     *
+     * @param lost          the camera that was lost
+     * @param timeoutMillis how long to scan
+     * @return the same camera, or the real FLIR ONE if the lost one was, null if it didn't turn up in time
+     */
+    @Nullable Identity rediscover(Identity lost, long timeoutMillis) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        Identity[] found = new Identity[1];
+        DiscoveryEventListener listener = new DiscoveryEventListener() {
+            @Override
+            public void onCameraFound(Identity identity) {
+                Log.d(TAG, "rediscover: found " + identity);
+                if (identity.deviceId.equals(lost.deviceId) || (!isEmulator(identity) && !isEmulator(lost))) {
+                    found[0] = identity;
+                    latch.countDown();
+                }
             }
-            camera.disconnect();
+
+            @Override
+            public void onDiscoveryError(CommunicationInterface communicationInterface, ErrorCode errorCode) {
+                Log.e(TAG, "rediscover: " + communicationInterface + " " + errorCode);
+            }
+        };
+        DiscoveryFactory.getInstance().scan(listener, CommunicationInterface.EMULATOR, CommunicationInterface.USB);
+        try {
+            latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            DiscoveryFactory.getInstance().stop(CommunicationInterface.EMULATOR, CommunicationInterface.USB);
         }
+        return found[0];
+    }
+
+    private static boolean isEmulator(Identity identity) {
+        return identity.deviceId.contains("EMULATED FLIR ONE") || identity.deviceId.contains("C++ Emulator");
     }
 
     /**
@@ -111,9 +251,21 @@ class CameraHandler {
      */
     void startStream(StreamDataListener listener) {
         this.streamDataListener = listener;
+        frameDemand.reset();
+        if (pipeline == null) {
+            pipeline = createPipeline();
+        }
         camera.subscribeStream(thermalImageStreamListener);
     }
 
+    /**
+     * Flow control of the stream: the listener has to {@link FrameDemand#request request} every frame it wants,
+     * nothing is delivered until it does
+     */
+    FrameDemand getFrameDemand() {
+        return frameDemand;
+    }
+
     /**
      * Stop a stream of ThermalImages from the Camera (or emulator)
      *
@@ -202,6 +354,15 @@ class CameraHandler {
         public void onImageReceived() {
             //Will be called on a non-ui thread
             Log.d(TAG, "onImageReceived(), we got another ThermalImage");
+            StreamSupervisor supervisor = streamSupervisor;
+            if (supervisor != null) {
+                supervisor.frameArrived();
+            }
+            if (!frameDemand.tryTake()) {
+                Log.d(TAG, "onImageReceived(), no demand, dropping frame: " + frameDemand);
+                sessionStats.frameDropped();
+                return;
+            }
             camera.withImage(receiveCameraImage);
         }
     };
@@ -225,43 +386,228 @@ class CameraHandler {
         @Override
         public void accept(ThermalImage thermalImage) {
             Log.d(TAG, "accept() called with: thermalImage = [" + thermalImage.getDescription() + "]");
-            CalibrationHandler.calibrate(thermalImage);
+            FramePipeline<PipelineFrame> current = pipeline;
+            if (current == null) {
+                frameDemand.drop(FrameDemand.PROCESSING);
+                sessionStats.frameDropped();
+                return;
+            }
+            PipelineFrame frame = current.obtain();
+            frame.thermalImage = thermalImage;
+            current.submit(frame);
+        }
+    };
 
-            // Set static variables for FlirCameraActivity
-            thermal_width = thermalImage.getWidth();
-            thermal_height = thermalImage.getHeight();
+    /**
+     * Build the processing of a frame as pipeline stages, see {@link FramePipeline}
+     */
+    private FramePipeline<PipelineFrame> createPipeline() {
+        return new FramePipeline<>(MAX_FRAMES_IN_FLIGHT, PipelineFrame::new, this::frameFinished)
+                .add("temperatures", FramePipeline.Affinity.CAMERA, PipelineFrame.THERMAL, PipelineFrame.MATRIX, this::readTemperatures)
+                .add("motion", FramePipeline.Affinity.CAMERA, PipelineFrame.MATRIX, PipelineFrame.MOTION, this::gateOnMotion)
+                .add("render", FramePipeline.Affinity.CAMERA, PipelineFrame.THERMAL | PipelineFrame.MOTION, PipelineFrame.IMAGE | PipelineFrame.PHOTO, this::renderImages)
+                .add("modes", FramePipeline.Affinity.CAMERA, PipelineFrame.THERMAL | PipelineFrame.IMAGE, PipelineFrame.MODES, this::captureModes)
+                .add("record", FramePipeline.Affinity.WORKER, PipelineFrame.MATRIX, 0, this::recordFrame)
+                .add("sums", FramePipeline.Affinity.WORKER, PipelineFrame.MATRIX, PipelineFrame.SUMS, frame -> frame.sums.build(frame.matrix))
+                .add("drift", FramePipeline.Affinity.WORKER, PipelineFrame.MATRIX | PipelineFrame.SUMS, 0, this::compensateDrift)
+                .add("guide", FramePipeline.Affinity.WORKER, PipelineFrame.MATRIX | PipelineFrame.SUMS, PipelineFrame.GUIDE, this::measureGuideRectangle)
+                .add("skin", FramePipeline.Affinity.WORKER, PipelineFrame.MATRIX, PipelineFrame.SKIN, this::findSkin)
+                .add("face", FramePipeline.Affinity.WORKER, PipelineFrame.MATRIX | PipelineFrame.SUMS | PipelineFrame.PHOTO | PipelineFrame.SKIN, PipelineFrame.FACE, this::detectFace)
+                .add("fusion", FramePipeline.Affinity.WORKER, PipelineFrame.IMAGE | PipelineFrame.PHOTO, PipelineFrame.IMAGE, this::fuseInSoftware)
+                .add("overlay", FramePipeline.Affinity.WORKER, PipelineFrame.IMAGE | PipelineFrame.GUIDE | PipelineFrame.FACE, PipelineFrame.IMAGE, this::drawOverlay)
+                .add("stats", FramePipeline.Affinity.WORKER, PipelineFrame.MATRIX | PipelineFrame.FACE, 0, this::countFrame)
+                .add("snapshot", FramePipeline.Affinity.WORKER, PipelineFrame.MATRIX | PipelineFrame.IMAGE | PipelineFrame.GUIDE | PipelineFrame.FACE, 0, this::offerSnapshot)
+                .add("publish", FramePipeline.Affinity.WORKER, PipelineFrame.IMAGE | PipelineFrame.GUIDE | PipelineFrame.FACE, 0, this::publishFrame)
+                .add("grid", FramePipeline.Affinity.WORKER, PipelineFrame.IMAGE | PipelineFrame.MODES, PipelineFrame.DISPLAY, this::composeModes)
+                .add("display", FramePipeline.Affinity.WORKER, PipelineFrame.IMAGE | PipelineFrame.PHOTO | PipelineFrame.DISPLAY, 0, this::displayFrame)
+                .start();
+    }
 
-            // Get Bitmaps
-            if (thermalImage.getFusion() != null) {
-                thermalImage.getFusion().setFusionMode(FlirCameraActivity.curr_fusion_mode);
-            }
-            //Get a bitmap with only IR data
-            Bitmap msxBitmap = BitmapAndroid.createBitmap(thermalImage.getImage()).getBitMap();
-            //Get a bitmap with the visual image, it might have different dimensions then the bitmap from THERMAL_ONLY
-            Bitmap dcBitmap = BitmapAndroid.createBitmap(Objects.requireNonNull(thermalImage.getFusion().getPhoto())).getBitMap();
+    /**
+     * Every stage is done with a frame
+     */
+    private void frameFinished(PipelineFrame frame) {
+        if (frame.matrix != null) {
+            frame.matrix.release();
+        }
+        if (!frame.delivered) {
+            // Don't lose the request, or the stream would stall
+            frameDemand.drop(FrameDemand.PROCESSING);
+            sessionStats.frameDropped();
+        }
+    }
+
+    /**
+     * Calibrate the image and read all temperatures once, every later stage works on the matrix instead of asking the
+     * SDK again
+     */
+    private void readTemperatures(PipelineFrame frame) {
+        ThermalImage thermalImage = frame.thermalImage;
+        CalibrationHandler.calibrate(thermalImage);
+
+        // Set static variables for FlirCameraActivity
+        thermal_width = thermalImage.getWidth();
+        thermal_height = thermalImage.getHeight();
+
+        frame.unit = temperatureUnit;
+        frame.driftOffset = CalibrationHandler.driftOffset;
+        frame.matrix = fillTemperatureMatrix(thermalImage, frame.driftOffset);
+    }
+
+    /**
+     * Let the {@link MotionGate} decide whether the expensive stages run for this frame
+     */
+    private void gateOnMotion(PipelineFrame frame) {
+        MotionGate gate = motionGate;
+        frame.active = gate == null || gate.update(frame.matrix, frame.matrix.timestamp());
+    }
+
+    /**
+     * Count time the gated stages took towards the savings of the {@link MotionGate}
+     */
+    private static void gatedWork(long start) {
+        MotionGate gate = motionGate;
+        if (gate != null) {
+            gate.spent(System.nanoTime() - start);
+        }
+    }
+
+    private void renderImages(PipelineFrame frame) {
+        ThermalImage thermalImage = frame.thermalImage;
+        // Get Bitmaps, software fusion starts from the plain thermal image
+        frame.mode = softwareFusion != null ? FusionMode.THERMAL_ONLY : FlirCameraActivity.curr_fusion_mode;
+        if (thermalImage.getFusion() != null) {
+            thermalImage.getFusion().setFusionMode(frame.mode);
+        }
+        //Get a bitmap with only IR data
+        frame.msxBitmap = BitmapAndroid.createBitmap(thermalImage.getImage()).getBitMap();
+        //Get a bitmap with the visual image, it might have different dimensions then the bitmap from THERMAL_ONLY.
+        //Decoded once and shared by every stage, and skipped when nothing would look at it
+        if (frame.active && needsPhoto()) {
+            long start = System.nanoTime();
+            frame.dcBitmap = BitmapAndroid.createBitmap(Objects.requireNonNull(thermalImage.getFusion().getPhoto())).getBitMap();
+            photoNanos += System.nanoTime() - start;
+            gatedWork(start);
+            photoBytes = frame.dcBitmap.getByteCount();
+            photosDecoded++;
+        } else {
+            photosSkipped++;
+        }
+        if ((photosDecoded + photosSkipped) % PHOTO_REPORT_INTERVAL == 0) {
+            Log.d(TAG, photoReport());
+        }
+        frame.imageWidth = frame.msxBitmap.getWidth();
+        frame.imageHeight = frame.msxBitmap.getHeight();
+
+        // Set Temperature Unit
+        thermalImage.setTemperatureUnit(frame.unit);
+    }
 
-            // Set Temperature Unit
-            thermalImage.setTemperatureUnit(temperatureUnit);
+    /**
+     * @return whether anything will use the visual photo of the current frame
+     */
+    private static boolean needsPhoto() {
+        return photoVisible || faceDetection || softwareFusion != null;
+    }
 
-            // Set up Canvas & Paint
-            Canvas canvas = new Canvas(msxBitmap);
-            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private String photoReport() {
+        return "photo: " + photosDecoded + " decoded, " + (photosDecoded > 0 ? photoNanos / photosDecoded / 1000 : 0)
+                + " us avg, " + photosSkipped + " skipped, saving " + (photosSkipped * photoNanos / Math.max(1, photosDecoded) / 1000000)
+                + " ms and " + (photosSkipped * photoBytes >> 20) + " MB of bitmaps";
+    }
 
-            // Draw Rectangles
-            drawGuideRectangle(canvas, paint, thermalImage, msxBitmap);
-            drawFaceRectangle(canvas, paint, thermalImage, dcBitmap, msxBitmap);
+    /**
+     * Render the other fusion modes while the image is valid, the grid is laid out by {@link #composeModes}
+     */
+    private void captureModes(PipelineFrame frame) {
+        MultiModeRenderer multiView = multiModeRenderer;
+        if (multiView == null) {
+            return;
+        }
+        if (frame.modeBuffers == null) {
+            frame.modeBuffers = new JavaImageBuffer[MultiModeRenderer.MODES.length];
+            frame.modeNanos = new long[MultiModeRenderer.MODES.length];
+        }
+        multiView.capture(frame.thermalImage, frame.mode, frame.modeBuffers, frame.modeNanos);
+        frame.modesCaptured = true;
+    }
 
-            Log.d(TAG, "adding images to cache");
-            streamDataListener.images(msxBitmap, dcBitmap);
+    private void recordFrame(PipelineFrame frame) {
+        FrameRecorder recorder = frameRecorder;
+        if (recorder != null) {
+            recorder.record(frame.matrix);
         }
-    };
+    }
+
+    /**
+     * Emboss the edges of the visual image onto the thermal bitmap with {@link SoftwareFusion}
+     */
+    private void fuseInSoftware(PipelineFrame frame) {
+        SoftwareFusion fusion = softwareFusion;
+        if (fusion == null || frame.mode != FusionMode.THERMAL_ONLY || frame.dcBitmap == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        Bitmap msxBitmap = frame.msxBitmap;
+        Bitmap dcBitmap = frame.dcBitmap;
+        int width = msxBitmap.getWidth();
+        int height = msxBitmap.getHeight();
+        int visualWidth = dcBitmap.getWidth();
+        int visualHeight = dcBitmap.getHeight();
+        if (thermalPixels.length < width * height) {
+            thermalPixels = new int[width * height];
+        }
+        if (visualPixels.length < visualWidth * visualHeight) {
+            visualPixels = new int[visualWidth * visualHeight];
+        }
+        msxBitmap.getPixels(thermalPixels, 0, width, 0, 0, width, height);
+        dcBitmap.getPixels(visualPixels, 0, visualWidth, 0, 0, visualWidth, visualHeight);
+        // Same registration as the face rectangle: visual pixels per thermal bitmap pixel
+        float ratiow2 = (float) visualWidth / (float) width;
+        float ratioh2 = (float) visualHeight / (float) height;
+        fusion.fuse(thermalPixels, width, height, visualPixels, visualWidth, visualHeight, ratiow2, ratioh2);
+        msxBitmap.setPixels(thermalPixels, 0, width, 0, 0, width, height);
+        gatedWork(start);
+        Log.d(TAG, "fuseInSoftware: " + (fusion.getLastNanos() / 1000) + " us, average " + fusion.getAverageMillis() + " ms");
+    }
+
+    /**
+     * Copy the temperatures of the whole image, in Kelvin, into a pooled matrix
+     *
+     * @param thermalImage the calibrated image to read
+     * @param offset       drift offset to add to every temperature
+     * @return a matrix holding one reference, the caller must release it
+     */
+    private TemperatureMatrix fillTemperatureMatrix(ThermalImage thermalImage, float offset) {
+        int width = thermalImage.getWidth();
+        int height = thermalImage.getHeight();
+        if (fullFrame == null || fullFrame.width != width || fullFrame.height != height) {
+            fullFrame = new Rectangle(0, 0, width, height);
+        }
+        thermalImage.setTemperatureUnit(TemperatureUnit.KELVIN);
+        TemperatureMatrix matrix = matrixPool.acquire(width, height);
+        matrix.fill(thermalImage.getValues(fullFrame), offset, System.currentTimeMillis());
+        return matrix;
+    }
 
-    private void drawGuideRectangle(Canvas canvas, Paint paint, ThermalImage thermalImage, Bitmap msxBitmap){
-        // Get Ratios
-        float ratiow = (float) msxBitmap.getWidth() / (float) thermalImage.getWidth();
-        float ratioh = (float) msxBitmap.getHeight() / (float) thermalImage.getHeight();
-        int width = (int)FlirCameraActivity.width;
-        int height = (int)FlirCameraActivity.height;
+    /**
+     * Update the drift model from the reference region, the new offset applies from the next frames on
+     */
+    private void compensateDrift(PipelineFrame frame) {
+        DriftCompensator compensator = driftCompensator;
+        if (compensator != null) {
+            compensator.update(frame.matrix, frame.sums, frame.driftOffset, frame.matrix.timestamp());
+        }
+    }
+
+    /**
+     * Compute the statistics of the guide rectangle and log them
+     */
+    private void measureGuideRectangle(PipelineFrame frame){
+        TemperatureMatrix matrix = frame.matrix;
+        // Kept fractional, edge pixels are weighted by how much of them the rectangle covers
+        float width = (float)FlirCameraActivity.width;
+        float height = (float)FlirCameraActivity.height;
         if (width <= 0 && height <= 0) {
             return;
         }
@@ -269,168 +615,430 @@ class CameraHandler {
         // calculate left and top positioning coordinates to display the rectangle in the middle
         float left = (float)FlirCameraActivity.left;
         float top = (float)FlirCameraActivity.top;
-
-        // Create a rectangle based off those measurements in order to poll the data for statistics
-        Rectangle rect = new Rectangle((int) left, (int) top, width, height);
-        if (left + width > thermalImage.getWidth() || top + height > thermalImage.getHeight()) {
+        if (left + width > matrix.width || top + height > matrix.height) {
             throw new IndexOutOfBoundsException();
         }
-
-        // Draw Rectangle
-        paint.setColor(Color.GREEN);
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(2 * ratiow);
-        canvas.drawRect(left * ratiow, top * ratioh, (left+rect.width)*ratiow, (top+rect.height)*ratioh, paint);
+        frame.guideX = left;
+        frame.guideY = top;
+        frame.guideWidth = width;
+        frame.guideHeight = height;
 
         // Get statistic points and calculate them.
-        MeasurementRectangle mRect;
-        try {
-            thermalImage.getMeasurements().clear();
-            thermalImage.getMeasurements().addRectangle(rect.x, rect.y, rect.width, rect.height);
-            mRect = thermalImage.getMeasurements().getRectangles().get(0);
-        } catch (Exception e){
+        RoiStatistics guideStats = frame.guide;
+        if (!guideStats.compute(matrix, frame.sums, left, top, width, height)) {
             Log.e(TAG, "Could not calculate Guide Rectangle in Thermal Image");
-            e.printStackTrace();
             return;
         }
-        try {
-            mRect.setColdSpotMarkerVisible(true);
-            mRect.setHotSpotMarkerVisible(true);
-        } catch (MeasurementException e){
-            e.printStackTrace();
-        }
-        double min = (Math.round(mRect.getMin().value * 100.0) / 100.0);
-        double max = (Math.round(mRect.getMax().value * 100.0) / 100.0);
-        double avg = (Math.round((mRect.getAverage().value) * 100.0) / 100.0);
+        frame.guideMeasured = true;
 
         // Write to log
         // TODO: Should this also be implemented for the facial detection square?
         long curr_time = System.currentTimeMillis();
-        if(tempLog == null || tempLog.size() == 0){
-            currentReadingStartMillis = curr_time;
-        }
-        // TODO - change this to 5 min instead of 15 sec
-        if((curr_time- currentReadingStartMillis )/1000 > 15){
-            Log.e("ANDREI", "Saving current log and clearning log queue");
-            saveLog(FlirCameraActivity.getInstance(),true);
-            tempLog.clear();
-        } else{
-            try {
-                assert tempLog != null;
-                tempLog.put(curr_time, "Min: " + min + "; Max: " + max + "; Avg: " + avg);
-            } catch (AssertionError e){
-                e.printStackTrace();
+        tempStore.ingest(curr_time, (float) guideStats.min, (float) guideStats.max, (float) guideStats.avg);
+        logReading(curr_time, guideStats);
+    }
+
+    /**
+     * Append a reading of the guide rectangle to tempLog and the journal, saving and emptying the log when it is due.
+     * The log and the journal are only emptied once the save succeeded.
+     */
+    private static void logReading(long curr_time, RoiStatistics guideStats) {
+        synchronized (tempLogLock) {
+            if(tempLog.size == 0){
+                currentReadingStartMillis = curr_time;
+            }
+            // TODO - change this to 5 min instead of 15 sec
+            if((curr_time- currentReadingStartMillis )/1000 > 15 || tempLog.size == tempLog.capacity()){
+                Log.e("ANDREI", "Saving current log and clearning log queue");
+                if (saveLog(FlirCameraActivity.getInstance(),true)) {
+                    checkpointJournal();
+                    tempLog.size = 0;
+                    tempLogHistogram.clear();
+                } else {
+                    // Keep the rows, they are only in tempLog and the journal, and try again once the next window is
+                    // over. A full log drops new readings until then.
+                    currentReadingStartMillis = curr_time;
+                }
+            } else{
+                int i = tempLog.size;
+                tempLog.time[i] = curr_time;
+                tempLog.min[i] = (float) guideStats.min;
+                tempLog.max[i] = (float) guideStats.max;
+                tempLog.avg[i] = (float) guideStats.avg;
+                tempLog.count[i] = 1;
+                tempLog.p90[i] = (float) guideStats.p90;
+                tempLog.p95[i] = (float) guideStats.p95;
+                tempLog.size = i + 1;
+                tempLogHistogram.merge(guideStats.histogram);
+                ReadingJournal readingJournal = journal;
+                if (readingJournal != null) {
+                    try {
+                        readingJournal.append(curr_time, tempLog.min[i], tempLog.max[i], tempLog.avg[i], tempLog.p90[i], tempLog.p95[i]);
+                    } catch (IOException e) {
+                        Log.e(TAG, "Could not journal reading: " + e);
+                    }
+                }
             }
         }
+    }
 
-        // Draw statistics to canvas
-        paint.setTextSize(20 * ratiow);
-        paint.setStyle(Paint.Style.FILL);
-        canvas.drawText("Avg: " + avg + " " + thermalImage.getTemperatureUnit().toString().charAt(0), left * ratiow,(top -5) * ratioh,paint);
-        paint.setColor(Color.RED);
-        canvas.drawCircle((int)(mRect.getHotSpot().x*ratiow), (int)(mRect.getHotSpot().y*ratioh), 5 * ratiow, paint);
-        canvas.drawText(max + " " + thermalImage.getTemperatureUnit().toString().charAt(0), mRect.getHotSpot().x * ratiow, (mRect.getHotSpot().y + 20)*ratioh, paint);
-        paint.setColor(Color.BLUE);
-        canvas.drawCircle(mRect.getColdSpot().x*ratiow, mRect.getColdSpot().y*ratioh, 5 * ratiow, paint);
-        canvas.drawText(min+ " " + thermalImage.getTemperatureUnit().toString().charAt(0), mRect.getColdSpot().x * ratiow, (mRect.getColdSpot().y + 20)*ratioh, paint);
+    /**
+     * Find the regions at skin temperature, the only places {@link #detectFace} looks for faces
+     */
+    private void findSkin(PipelineFrame frame) {
+        if (faceDetection && frame.active) {
+            frame.skin.find(frame.matrix);
+        }
     }
 
-    private void drawFaceRectangle(Canvas canvas, Paint paint, ThermalImage thermalImage, Bitmap dcBitmap, Bitmap msxBitmap){
+    /**
+     * Detect a face in the visual image, only in the windows of the skin regions, and compute its statistics
+     */
+    private void detectFace(PipelineFrame frame){
+        TemperatureMatrix matrix = frame.matrix;
+        Bitmap dcBitmap = frame.dcBitmap;
+        SkinRegionFinder skin = frame.skin;
+        if (!faceDetection || dcBitmap == null || skin.count == 0) {
+            return;
+        }
+        long start = System.nanoTime();
         // Calculate Ratios
-        float ratiow = (float) msxBitmap.getWidth() / (float) thermalImage.getWidth();
-        float ratioh = (float) msxBitmap.getHeight() / (float) thermalImage.getHeight();
-        float ratiow2 = (float) dcBitmap.getWidth() / (float) msxBitmap.getWidth();
-        float ratioh2 = (float) dcBitmap.getHeight() / (float) msxBitmap.getHeight();
-
-        // Convert Bitmap
-        Bitmap mFaceBitmap = dcBitmap.copy(Bitmap.Config.RGB_565, true);
-        FaceDetector faceDetector = new FaceDetector(mFaceBitmap.getWidth(), mFaceBitmap.getHeight(), 1);
-        FaceDetector.Face[] faces = new FaceDetector.Face[1];
-
-        // Find Faces
-        int facesFound = faceDetector.findFaces(mFaceBitmap, faces);
-        if(facesFound > 0) {
-            PointF midPoint = new PointF();
-            faces[0].getMidPoint(midPoint);
-            float confidence = faces[0].confidence();
-            if(confidence >= 0.51) {      // At least 51% confidence that this is indeed a face
-                // Calculate Face Detection Square
-                float eyeDistance = faces[0].eyesDistance();
-                float left2 = (midPoint.x - eyeDistance) / ratiow2;
-                if (left2 < 0) {
-                    left2 = 0.0f;
+        float ratiow = (float) frame.imageWidth / (float) matrix.width;
+        float ratioh = (float) frame.imageHeight / (float) matrix.height;
+        float ratiow2 = (float) dcBitmap.getWidth() / (float) frame.imageWidth;
+        float ratioh2 = (float) dcBitmap.getHeight() / (float) frame.imageHeight;
+
+        if (faceWindow == null) {
+            // RGB_565 and an even width, as FaceDetector wants
+            faceWindow = Bitmap.createBitmap(FACE_WINDOW_SIZE, FACE_WINDOW_SIZE, Bitmap.Config.RGB_565);
+            faceCanvas.setBitmap(faceWindow);
+            faceDetector = new FaceDetector(FACE_WINDOW_SIZE, FACE_WINDOW_SIZE, 1);
+        }
+
+        // Find Faces, of several people take the closest one, with the widest eyes
+        float midX = 0;
+        float midY = 0;
+        float eyeDistance = 0;
+        for (int i = 0; i < skin.count; i++) {
+            // Thermal pixels to visual photo pixels
+            faceSource.set(Math.round(skin.left[i] * ratiow * ratiow2), Math.round(skin.top[i] * ratioh * ratioh2),
+                    Math.min(dcBitmap.getWidth(), Math.round(skin.right[i] * ratiow * ratiow2)),
+                    Math.min(dcBitmap.getHeight(), Math.round(skin.bottom[i] * ratioh * ratioh2)));
+            int sourceWidth = faceSource.right - faceSource.left;
+            int sourceHeight = faceSource.bottom - faceSource.top;
+            if (sourceWidth <= 0 || sourceHeight <= 0) {
+                continue;
+            }
+            float scale = (float) FACE_WINDOW_SIZE / Math.max(sourceWidth, sourceHeight);
+            faceTarget.set(0, 0, sourceWidth * scale, sourceHeight * scale);
+            faceWindow.eraseColor(Color.BLACK);
+            faceCanvas.drawBitmap(dcBitmap, faceSource, faceTarget, null);
+            faceWindows++;
+            if (faceDetector.findFaces(faceWindow, faces) > 0 && faces[0].confidence() >= 0.51) {      // At least 51% confidence that this is indeed a face
+                float distance = faces[0].eyesDistance() / scale;
+                if (distance > eyeDistance) {
+                    faces[0].getMidPoint(faceMidPoint);
+                    midX = faceSource.left + faceMidPoint.x / scale;
+                    midY = faceSource.top + faceMidPoint.y / scale;
+                    eyeDistance = distance;
                 }
-                float top2 = (midPoint.y - eyeDistance) / ratioh2;
-                if (top2 < 0) {
-                    top2 = 0.0f;
+            }
+        }
+        faceFrames++;
+        faceNanos += System.nanoTime() - start;
+        if (faceFrames % PHOTO_REPORT_INTERVAL == 0) {
+            Log.d(TAG, "detectFace: " + faceWindows + " windows in " + faceFrames + " frames, "
+                    + (faceNanos / Math.max(1, faceWindows) / 1000) + " us per window");
+        }
+
+        if (eyeDistance > 0) {
+            // Calculate Face Detection Square
+            float left2 = (midX - eyeDistance) / ratiow2;
+            if (left2 < 0) {
+                left2 = 0.0f;
+            }
+            float top2 = (midY - eyeDistance) / ratioh2;
+            if (top2 < 0) {
+                top2 = 0.0f;
+            }
+            float right2 = (midX + eyeDistance) / ratiow2;
+            if (right2 > frame.imageWidth) {
+                right2 = frame.imageWidth;
+            }
+            float bottom2 = (midY + eyeDistance) / ratioh2;
+            if (bottom2 > frame.imageHeight) {
+                bottom2 = frame.imageHeight;
+            }
+            frame.faceFound = true;
+            frame.faceLeft = left2;
+            frame.faceTop = top2;
+            frame.faceRight = right2;
+            frame.faceBottom = bottom2;
+
+            // Calculate Facial Detection Square values for Thermal Image (different resolution)
+            if (frame.face.compute(matrix, frame.sums, left2 / ratiow, top2 / ratioh, (right2 - left2) / ratiow, (bottom2 - top2) / ratioh)) {
+                frame.faceMeasured = true;
+            } else {
+                Log.e(TAG, "Could not calculate Face Detection square in Thermal Image");
+            }
+        }
+        gatedWork(start);
+    }
+
+    /**
+     * Draw the guide and face rectangles with their statistics onto the thermal bitmap
+     */
+    private void drawOverlay(PipelineFrame frame) {
+        float ratiow = (float) frame.imageWidth / (float) frame.matrix.width;
+        float ratioh = (float) frame.imageHeight / (float) frame.matrix.height;
+        overlay.begin(frame.imageWidth, frame.imageHeight, ratiow, CalibrationHandler.scale(frame.unit));
+
+        if (frame.guideWidth <= 0 && frame.guideHeight <= 0) {
+            overlay.hide(OverlayRenderer.GUIDE);
+            overlay.hide(OverlayRenderer.HOT);
+            overlay.hide(OverlayRenderer.COLD);
+        } else {
+            float left = frame.guideX;
+            float top = frame.guideY;
+            overlay.setRect(OverlayRenderer.GUIDE, left * ratiow, top * ratioh, (left+frame.guideWidth)*ratiow, (top+frame.guideHeight)*ratioh, (top -5) * ratioh);
+            RoiStatistics guideStats = frame.guide;
+            if (frame.guideMeasured) {
+                overlay.setValue(OverlayRenderer.GUIDE, guideStats.avg);
+                overlay.setSpot(OverlayRenderer.HOT, (int)(guideStats.hotX*ratiow), (int)(guideStats.hotY*ratioh), (guideStats.hotY + 20)*ratioh);
+                overlay.setValue(OverlayRenderer.HOT, guideStats.max);
+                overlay.setSpot(OverlayRenderer.COLD, guideStats.coldX*ratiow, guideStats.coldY*ratioh, (guideStats.coldY + 20)*ratioh);
+                overlay.setValue(OverlayRenderer.COLD, guideStats.min);
+            } else {
+                overlay.clearValue(OverlayRenderer.GUIDE);
+                overlay.hide(OverlayRenderer.HOT);
+                overlay.hide(OverlayRenderer.COLD);
+            }
+        }
+
+        if (frame.faceFound) {
+            overlay.setRect(OverlayRenderer.FACE, frame.faceLeft, frame.faceTop, frame.faceRight, frame.faceBottom, (frame.faceTop - 5));
+            if (frame.faceMeasured) {
+                overlay.setValue(OverlayRenderer.FACE, frame.face.avg);
+            } else {
+                overlay.clearValue(OverlayRenderer.FACE);
+            }
+        } else {
+            overlay.hide(OverlayRenderer.FACE);
+        }
+        overlay.drawOnto(frame.msxBitmap);
+    }
+
+    private void publishFrame(PipelineFrame frame) {
+        MonitoringServer server = monitoringServer;
+        if (server != null) {
+            server.publish(frame.msxBitmap, frame.matrix.timestamp(), frame.guide, frame.faceMeasured ? frame.face : null);
+        }
+    }
+
+    /**
+     * Add the frame and its face to the {@link SessionStatistics}, and take a snapshot of an alert
+     */
+    private void countFrame(PipelineFrame frame) {
+        sessionStats.frameProcessed();
+        if (frame.faceMeasured && sessionStats.faceMeasured(frame.matrix.timestamp(), frame.face.max)) {
+            Log.d(TAG, "countFrame: alert, face at " + frame.face.max + " K");
+            SnapshotWriter writer = snapshotWriter;
+            if (writer != null) {
+                writer.request("alert", null);
+            }
+        }
+    }
+
+    /**
+     * Hand the finished image to the {@link SnapshotWriter}, which only keeps it when a snapshot is due
+     */
+    private void offerSnapshot(PipelineFrame frame) {
+        SnapshotWriter writer = snapshotWriter;
+        if (writer != null) {
+            writer.offer(frame.msxBitmap, frame.matrix, frame.matrix.timestamp());
+        }
+    }
+
+    /**
+     * Show every fusion mode side by side, the remote and recorded streams keep the selected one
+     */
+    private void composeModes(PipelineFrame frame) {
+        MultiModeRenderer multiView = multiModeRenderer;
+        frame.displayBitmap = frame.msxBitmap;
+        if (multiView != null && frame.modesCaptured) {
+            frame.displayBitmap = multiView.compose(frame.modeBuffers, frame.modeNanos, frame.mode, frame.msxBitmap);
+        }
+    }
+
+    private void displayFrame(PipelineFrame frame) {
+        Log.d(TAG, "adding images to cache");
+        streamDataListener.images(frame.displayBitmap, frame.dcBitmap);
+        frame.delivered = true;
+    }
+
+    /**
+     * Write tempLog to a text log, synced to disk before it returns. The guide stage waits meanwhile.
+     *
+     * @param shouldAppend append to the daily FULL log, or write a new SHORT log
+     * @return true if every row is on disk
+     */
+    static boolean saveLog(Context ctx, boolean shouldAppend) {
+        synchronized (tempLogLock) {
+            long start = System.nanoTime();
+            boolean saved = false;
+            int rows = CameraHandler.tempLog.size;
+            TemperatureScale unit = CalibrationHandler.scale(temperatureUnit);
+
+            try {
+                Date d = new Date(System.currentTimeMillis());
+                String filename;
+                if(shouldAppend){
+                    DateFormat formatter = new SimpleDateFormat("MM-dd-yyyy");
+                    filename = formatter.format(d);
+                    filename+="-FULL";
+                } else{
+                    DateFormat formatter = new SimpleDateFormat("MM-dd-yyyy-HH:mm:ss");
+                    filename = formatter.format(d);
+                    filename+="-SHORT";
                 }
-                float right2 = (midPoint.x + eyeDistance) / ratiow2;
-                if (right2 > canvas.getWidth()) {
-                    right2 = canvas.getWidth();
+                String path = Objects.requireNonNull(ctx.getExternalFilesDir("logs")).getAbsolutePath();
+                File file = new File(path, filename);
+                // A new log is written next to its final name and renamed, so it is never seen half written
+                File target = shouldAppend ? file : new File(path, filename + ".tmp");
+                try (FileOutputStream fos = new FileOutputStream(target, shouldAppend);
+                     Writer out = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+                    if (rows == 0) {
+                        out.write("There are no logs recorded.");
+                    }
+                    // One line buffer for all rows, written straight to the file, times in the local time zone
+                    TemperatureFormatter line = new TemperatureFormatter(160);
+                    TimeZone zone = TimeZone.getDefault();
+                    for (int i = 0; i < rows; i++) {
+                        long time = tempLog.time[i];
+                        line.reset().appendDateTime(time + zone.getOffset(time), ' ')
+                                .append(LOG_MIN).appendTemperature(tempLog.min[i], unit, true)
+                                .append(LOG_MAX).appendTemperature(tempLog.max[i], unit, true)
+                                .append(LOG_AVG).appendTemperature(tempLog.avg[i], unit, true)
+                                .append(LOG_P90).appendTemperature(tempLog.p90[i], unit, true)
+                                .append(LOG_P95).appendTemperature(tempLog.p95[i], unit, true)
+                                .append('\n');
+                        line.writeTo(out);
+                    }
+                    // Percentiles over every pixel of the rows above
+                    if (tempLogHistogram.count() > 0) {
+                        line.reset().append(LOG_WINDOW).append(tempLogHistogram.count()).append(LOG_PIXELS)
+                                .append(LOG_P90).appendTemperature(tempLogHistogram.quantile(0.90), unit, true)
+                                .append(LOG_P95).appendTemperature(tempLogHistogram.quantile(0.95), unit, true)
+                                .append('\n');
+                        line.writeTo(out);
+                    }
+                    out.flush();
+                    fos.getFD().sync();
                 }
-                float bottom2 = (midPoint.y + eyeDistance) / ratioh2;
-                if (bottom2 > canvas.getHeight()) {
-                    bottom2 = canvas.getHeight();
+                if (!shouldAppend && !target.renameTo(file)) {
+                    throw new IOException("Could not rename " + target);
                 }
+                saved = true;
+            } catch (IOException | NullPointerException e) {
+                e.printStackTrace();
+            }
+            logThroughput("saveLog", rows, System.nanoTime() - start);
+            return saved;
+        }
+    }
 
-                // Paint Face Detection Square and Thermal Values to Canvas
-                paint.setColor(Color.MAGENTA);
-                paint.setStyle(Paint.Style.STROKE);
-                canvas.drawRect(left2, top2, right2, bottom2, paint);
-                try {
-                    // Calculate and draw Facial Detection Square values for Thermal Image (different resolution)
-                    thermalImage.getMeasurements().addRectangle((int) (left2 / ratiow), (int) (top2 / ratioh), (int) ((right2 - left2) / ratiow), (int) ((bottom2 - top2) / ratioh));
-                    MeasurementRectangle mRect2 = thermalImage.getMeasurements().getRectangles().get(1);
-                    double avg2 = (Math.round((mRect2.getAverage().value) * 100.0) / 100.0);
-                    paint.setTextSize(20 * ratiow);
-                    paint.setStyle(Paint.Style.FILL);
-                    canvas.drawText("Avg: " + avg2 + " " + thermalImage.getTemperatureUnit().toString().charAt(0), left2, (top2 - 5), paint);
-                } catch (Exception e) {
-                    Log.e(TAG, "Could not calculate Face Detection square in Thermal Image");
-                    e.printStackTrace();
+    /**
+     * Open the journal of tempLog in a directory and replay what a previous run left in it, the replayed readings are
+     * saved with the next rows. Calling it again with the journal already open does nothing.
+     */
+    static void openJournal(File directory) {
+        synchronized (tempLogLock) {
+            if (journal != null || directory == null) {
+                return;
+            }
+            try {
+                ReadingJournal readingJournal = new ReadingJournal(directory, JOURNAL_SYNC_MILLIS);
+                int recovered = readingJournal.recover(tempLog);
+                if (recovered > tempLog.size) {
+                    Log.e(TAG, "openJournal: only " + tempLog.size + " of " + recovered + " journaled readings fit into the log");
                 }
+                journal = readingJournal;
+            } catch (IOException e) {
+                e.printStackTrace();
             }
         }
     }
 
+    /**
+     * Sync and close the journal, what is in it is replayed by the next {@link #openJournal}
+     */
+    static void closeJournal() {
+        synchronized (tempLogLock) {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        }
+    }
 
-    static void saveLog(Context ctx, boolean shouldAppend) {
-        StringBuilder msgLog = new StringBuilder();
-        Date date;
-
-        if (CameraHandler.tempLog.size() != 0) {
-            for (Map.Entry<Long, String> entry : CameraHandler.tempLog.entrySet()) {
-                date = new Date(entry.getKey());
-                msgLog.append(date.toString()).append(": \t ").append(entry.getValue()).append("\n");
+    /**
+     * Empty the journal, called with tempLogLock held once the rows are saved
+     */
+    private static void checkpointJournal() {
+        ReadingJournal readingJournal = journal;
+        if (readingJournal != null) {
+            try {
+                readingJournal.checkpoint();
+            } catch (IOException e) {
+                Log.e(TAG, "Could not checkpoint journal: " + e);
             }
-        } else {
-            msgLog.append("There are no logs recorded.");
         }
+    }
 
-        FileWriter out;
+    /**
+     * Export a time range of one {@link #tempStore} tier next to the text logs
+     *
+     * @param ctx Context used to find the logs directory
+     * @param tier raw readings, 1-second or 1-minute rollups of {@link #tempStore}
+     * @param from first time exported in milliseconds since the epoch, inclusive
+     * @param to end of the range, exclusive
+     * @param format CSV or newline-delimited JSON
+     * @return the exported file, or null if the export failed
+     */
+    @Nullable
+    static File exportLog(Context ctx, RollupTier tier, long from, long to, TemperatureExporter.Format format) {
+        long start = System.nanoTime();
         try {
-            Date d = new Date(System.currentTimeMillis());
-            String filename;
-            if(shouldAppend){
-                DateFormat formatter = new SimpleDateFormat("MM-dd-yyyy");
-                filename = formatter.format(d);
-                filename+="-FULL";
-            } else{
-                DateFormat formatter = new SimpleDateFormat("MM-dd-yyyy-HH:mm:ss");
-                filename = formatter.format(d);
-                filename+="-SHORT";
-            }
+            DateFormat formatter = new SimpleDateFormat("MM-dd-yyyy-HH:mm:ss");
+            String filename = formatter.format(new Date(System.currentTimeMillis()));
+            filename += tier == tempStore.raw ? "-EXPORT-raw" : tier == tempStore.seconds ? "-EXPORT-1s" : "-EXPORT-1m";
+            filename += format == TemperatureExporter.Format.CSV ? ".csv" : ".ndjson";
             String path = Objects.requireNonNull(ctx.getExternalFilesDir("logs")).getAbsolutePath();
-            out = new FileWriter(new File(path, filename),shouldAppend);
-            out.write(msgLog.toString());
-            out.close();
+            File file = new File(path, filename);
+            long rows;
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                rows = new TemperatureExporter().export(tempStore, tier, from, to, format, out);
+            }
+            logThroughput("exportLog " + format, rows, System.nanoTime() - start);
+            return file;
         } catch (IOException | NullPointerException e) {
             e.printStackTrace();
+            return null;
         }
     }
 
+    private static void logThroughput(String what, long rows, long nanos) {
+        double seconds = nanos / 1e9;
+        Log.d(TAG, what + ": " + rows + " rows in " + (nanos / 1000000) + " ms (" + (seconds > 0 ? (long) (rows / seconds) : 0) + " rows/s)");
+    }
+
     static void resetLog() {
-        CameraHandler.tempLog.clear();
+        synchronized (tempLogLock) {
+            CameraHandler.tempLog.size = 0;
+            tempLogHistogram.clear();
+            checkpointJournal();
+        }
+        tempStore.clearRaw();
     }
 
 }
@@ -27,9 +27,17 @@ import com.flir.thermalsdk.live.connectivity.ConnectionStatusListener;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static com.example.flirone.FlirCameraApplication.cameraHandler;
 import static com.example.flirone.FlirCameraApplication.connectedCameraIdentity;
@@ -40,6 +48,33 @@ public class FlirCameraActivity extends AppCompatActivity {
     public static final String CONNECTED = "CONNECTED";
     public static final String DISCONNECTED = "DISCONNECTED";
     public static final String DISCONNECTING = "DISCONNECTING";
+    public static final String RECONNECTING = "RECONNECTING";
+    private static final int MONITORING_PORT = 8080;
+    private static final int MONITORING_MAX_CLIENTS = 8;
+    private static final int RECORDING_KEYFRAME_INTERVAL = 30;
+    private static final long SNAPSHOT_INTERVAL_MILLIS = 60_000;
+    private static final int SNAPSHOT_QUALITY = 90;
+    private static final int SNAPSHOT_THREADS = 2;
+    private static final int SNAPSHOT_QUEUE_SIZE = 8;
+    private static final int SNAPSHOT_SYNC_BATCH = 4;
+    // Motion gating: a coarse grid, the change of a cell's mean that counts as motion, the temperature of a body in view
+    // and how long processing continues after the last change
+    private static final int MOTION_GRID_COLUMNS = 8;
+    private static final int MOTION_GRID_ROWS = 6;
+    private static final double MOTION_SENSITIVITY_KELVIN = 0.3;
+    private static final double MOTION_WARM_KELVIN = TemperatureScale.ZERO_CELSIUS + 32.0;
+    private static final long MOTION_HOLD_MILLIS = 2000;
+    // Stream supervision: silence that counts as a stall, the backoff between reconnect attempts and how long one
+    // attempt waits for the camera to be found and for USB permission
+    private static final long STREAM_STALL_MILLIS = 3000;
+    private static final long RECONNECT_INITIAL_DELAY_MILLIS = 500;
+    private static final long RECONNECT_MAX_DELAY_MILLIS = 30_000;
+    private static final long REDISCOVERY_TIMEOUT_MILLIS = 10_000;
+    private static final long USB_PERMISSION_TIMEOUT_MILLIS = 10_000;
+    // The dashboard is redrawn this often, far below the frame rate
+    private static final long DASHBOARD_REFRESH_MILLIS = 1000;
+    // Frames requested from the stream ahead of the one on screen
+    private static final int DISPLAY_FRAMES_IN_FLIGHT = 2;
 
     public MainActivity.ShowMessage showMessage = message -> Toast.makeText(FlirCameraActivity.this, message, Toast.LENGTH_SHORT).show();
 
@@ -47,8 +82,14 @@ public class FlirCameraActivity extends AppCompatActivity {
     public LinkedBlockingQueue<BitmapFrameBuffer> framesBuffer = new LinkedBlockingQueue<>(21);
 
     public static FusionMode curr_fusion_mode = FusionMode.THERMAL_ONLY;
+    // Reconnect on its own when the stream stalls or the camera is lost
+    private static boolean autoReconnect = true;
+    // The camera the supervisor brings back
+    private volatile Identity supervisedIdentity;
 
     private TextView connectionStatus;
+    private TextView dashboard;
+    private final Runnable dashboardRefresh = this::refreshDashboard;
 
     private ImageView msxImage;
     private ImageView photoImage;
@@ -70,7 +111,14 @@ public class FlirCameraActivity extends AppCompatActivity {
         setContentView(R.layout.flir_emulator_main);
         msxImage = findViewById(R.id.msx_image);
         photoImage = findViewById(R.id.photo_image);
+        CameraHandler.photoVisible = photoImage.getVisibility() == View.VISIBLE;
         connectionStatus = findViewById(R.id.connection_status_text);
+        dashboard = findViewById(R.id.stats_dashboard);
+        dashboard.setOnClickListener(view -> {
+            CameraHandler.sessionStats.reset();
+            refreshDashboard();
+            showMessage.show("Session statistics reset");
+        });
 
         width = 200;
         height = 200;
@@ -81,6 +129,8 @@ public class FlirCameraActivity extends AppCompatActivity {
         String sdkVersionText = getString(R.string.sdk_version_text, ThermalSdkAndroid.getVersion());
         sdkVersionTextView.setText(sdkVersionText);
         instance = this;
+        CameraHandler.tempStore.open(getExternalFilesDir("logs"));
+        CameraHandler.openJournal(getExternalFilesDir("logs"));
 
         // TODO: Set default behavior if getIntent == null: Log error. (not that it ever should, but it will fix the lint error)
         switch (Objects.requireNonNull(getIntent().getAction())) {
@@ -102,6 +152,14 @@ public class FlirCameraActivity extends AppCompatActivity {
         CalibrationHandler.calibrationButtonHidden = true;
     }
 
+    @Override
+    protected void onDestroy() {
+        // Persists the open rollup buckets and the journal, onCreate opens them again
+        CameraHandler.tempStore.close();
+        CameraHandler.closeJournal();
+        super.onDestroy();
+    }
+
     public static FlirCameraActivity getInstance(){
         return instance;
     }
@@ -110,6 +168,7 @@ public class FlirCameraActivity extends AppCompatActivity {
     public boolean onCreateOptionsMenu(Menu menu) {
         FlirCameraActivity.menu = menu;
         getMenuInflater().inflate(R.menu.toolbar1, menu);
+        menu.findItem(R.id.toolbar_auto_reconnect).setChecked(autoReconnect);
         Objects.requireNonNull(getSupportActionBar()).setDisplayShowTitleEnabled(true);
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         getSupportActionBar().setHomeAsUpIndicator(R.drawable.ic_toolbar_back);
@@ -155,6 +214,41 @@ public class FlirCameraActivity extends AppCompatActivity {
                     top = CameraHandler.thermal_height/2 - height/2;
                 }
                 break;
+            case R.id.toolbar_monitoring:
+                toggleMonitoring(item);
+                break;
+            case R.id.toolbar_record:
+                toggleRecording(item);
+                break;
+            case R.id.toolbar_compare:
+                toggleCompare(item);
+                break;
+            case R.id.toolbar_software_fusion:
+                toggleSoftwareFusion(item);
+                break;
+            case R.id.toolbar_drift:
+                toggleDriftCompensation(item);
+                break;
+            case R.id.toolbar_snapshot:
+                snapshotWriter().request("manual", (image, error) -> runOnUiThread(() ->
+                        showMessage.show(image != null ? "Snapshot saved as " + image.getName() : "Snapshot failed, " + error)));
+                break;
+            case R.id.toolbar_auto_snapshot:
+                toggleAutoSnapshot(item);
+                break;
+            case R.id.toolbar_motion_gate:
+                toggleMotionGate(item);
+                break;
+            case R.id.toolbar_auto_reconnect:
+                toggleAutoReconnect(item);
+                break;
+            case R.id.toolbar_dashboard:
+                toggleDashboard(item);
+                break;
+            case R.id.toolbar_face_detection:
+                CameraHandler.faceDetection = !CameraHandler.faceDetection;
+                item.setChecked(CameraHandler.faceDetection);
+                break;
         }
         return super.onOptionsItemSelected(item);
     }
@@ -249,7 +343,357 @@ public class FlirCameraActivity extends AppCompatActivity {
         return super.onSupportNavigateUp();
     }
 
+    /**
+     * Start or stop the remote monitoring server
+     * @param item the menu item, checked while the server runs
+     */
+    private void toggleMonitoring(MenuItem item) {
+        MonitoringServer server = CameraHandler.monitoringServer;
+        if (server != null) {
+            CameraHandler.monitoringServer = null;
+            server.stop();
+            item.setChecked(false);
+            showMessage.show("Remote monitoring stopped");
+            return;
+        }
+        item.setChecked(true);
+        new Thread(() -> {
+            // A new token every time the server starts, whoever watches needs the current one
+            String token = MonitoringServer.newToken();
+            try {
+                // Loopback by default, a kiosk watched from the security desk is configured with its LAN address
+                InetAddress address = InetAddress.getByName(getString(R.string.monitoring_bind_address));
+                MonitoringServer started = new MonitoringServer(address, MONITORING_PORT, token, MONITORING_MAX_CLIENTS);
+                started.start();
+                CameraHandler.monitoringServer = started;
+                runOnUiThread(() -> showMessage.show("Remote monitoring on " + address.getHostAddress() + ":" + MONITORING_PORT
+                        + ", open /?token=" + token));
+            } catch (IOException e) {
+                Log.e(TAG, "Could not start monitoring server: " + e);
+                runOnUiThread(() -> {
+                    item.setChecked(false);
+                    showMessage.show("Could not start remote monitoring: " + e.getMessage());
+                });
+            }
+        }).start();
+    }
+
+    /**
+     * Start or stop recording the temperature matrices to the image storage directory
+     * @param item the menu item, checked while recording
+     */
+    private void toggleRecording(MenuItem item) {
+        FrameRecorder recorder = CameraHandler.frameRecorder;
+        if (recorder != null) {
+            CameraHandler.frameRecorder = null;
+            new Thread(recorder::stop).start();
+            item.setChecked(false);
+            showMessage.show("Recording saved to " + recorder.getFile().getName());
+            return;
+        }
+        DateFormat formatter = new SimpleDateFormat("MM-dd-yyyy-HH:mm:ss");
+        File file = new File(new FileHandler(getApplicationContext()).getImageStoragePath(), formatter.format(new Date()) + FrameCodec.EXTENSION);
+        try {
+            CameraHandler.frameRecorder = new FrameRecorder(file, RECORDING_KEYFRAME_INTERVAL, CalibrationHandler.correction());
+            item.setChecked(true);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not start recording: " + e);
+            showMessage.show("Could not start recording: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Switch between the current fusion mode alone and a grid of every fusion mode
+     * @param item the menu item, checked while the grid is shown
+     */
+    private void toggleCompare(MenuItem item) {
+        MultiModeRenderer renderer = CameraHandler.multiModeRenderer;
+        if (renderer != null) {
+            CameraHandler.multiModeRenderer = null;
+            renderer.stop();
+            item.setChecked(false);
+            return;
+        }
+        CameraHandler.multiModeRenderer = new MultiModeRenderer();
+        item.setChecked(true);
+    }
+
+    /**
+     * Switch between the SDK fusion of the selected mode and {@link SoftwareFusion}
+     * @param item the menu item, checked while fusing in software
+     */
+    private void toggleSoftwareFusion(MenuItem item) {
+        SoftwareFusion fusion = CameraHandler.softwareFusion;
+        if (fusion != null) {
+            CameraHandler.softwareFusion = null;
+            fusion.stop();
+            item.setChecked(false);
+        } else {
+            CameraHandler.softwareFusion = new SoftwareFusion();
+            item.setChecked(true);
+        }
+        updateTitle();
+    }
+
+    /**
+     * Start compensating drift with the guide rectangle, where it is now, as the reference region, or stop
+     * @param item the menu item, checked while compensating
+     */
+    private void toggleDriftCompensation(MenuItem item) {
+        DriftCompensator compensator = CameraHandler.driftCompensator;
+        if (compensator != null) {
+            CameraHandler.driftCompensator = null;
+            compensator.stop();
+            item.setChecked(false);
+            return;
+        }
+        if (width <= 0 || height <= 0) {
+            showMessage.show("Place the guide rectangle on the reference first");
+            return;
+        }
+        // The reference holds whatever it reads now, the guide rectangle can be moved away afterwards
+        CameraHandler.driftCompensator = new DriftCompensator(left, top, width, height, Double.NaN,
+                offset -> CalibrationHandler.driftOffset = offset);
+        item.setChecked(true);
+        showMessage.show("Drift reference set to the guide rectangle");
+    }
+
+    /**
+     * @return the snapshot writer, started when first needed
+     */
+    private SnapshotWriter snapshotWriter() {
+        SnapshotWriter writer = CameraHandler.snapshotWriter;
+        if (writer == null) {
+            File directory = new File(new FileHandler(getApplicationContext()).getImageStoragePath(), SnapshotWriter.DIRECTORY);
+            writer = new SnapshotWriter(directory, Bitmap.CompressFormat.JPEG,
+                    SNAPSHOT_QUALITY, SNAPSHOT_THREADS, SNAPSHOT_QUEUE_SIZE, SnapshotWriter.Overflow.DROP_OLDEST, SNAPSHOT_SYNC_BATCH);
+            CameraHandler.snapshotWriter = writer;
+        }
+        return writer;
+    }
+
+    /**
+     * Start or stop taking a snapshot every {@link #SNAPSHOT_INTERVAL_MILLIS}
+     * @param item the menu item, checked while snapshots are taken
+     */
+    private void toggleAutoSnapshot(MenuItem item) {
+        SnapshotWriter writer = snapshotWriter();
+        boolean on = writer.getInterval() == 0;
+        writer.setInterval(on ? SNAPSHOT_INTERVAL_MILLIS : 0);
+        item.setChecked(on);
+    }
+
+    /**
+     * Start or stop idling the expensive stages while the scene is static
+     * @param item the menu item, checked while gating
+     */
+    private void toggleMotionGate(MenuItem item) {
+        MotionGate gate = CameraHandler.motionGate;
+        if (gate != null) {
+            CameraHandler.motionGate = null;
+            Log.d(TAG, "toggleMotionGate: " + gate);
+            item.setChecked(false);
+            return;
+        }
+        CameraHandler.motionGate = new MotionGate(MOTION_GRID_COLUMNS, MOTION_GRID_ROWS, MOTION_SENSITIVITY_KELVIN,
+                MOTION_WARM_KELVIN, MOTION_HOLD_MILLIS);
+        item.setChecked(true);
+    }
+
+    /**
+     * Turn reconnecting on its own on or off, for the camera connected now and the next ones
+     * @param item the menu item, checked while it is on
+     */
+    private void toggleAutoReconnect(MenuItem item) {
+        autoReconnect = !autoReconnect;
+        item.setChecked(autoReconnect);
+        Identity connected = connectedCameraIdentity;
+        if (!autoReconnect) {
+            stopSupervisingStream();
+        } else if (connected != null) {
+            superviseStream(connected);
+        }
+    }
+
+    /**
+     * Watch the stream of a camera that was just connected, and bring it back when it stalls or is lost
+     * @param identity the camera
+     */
+    private void superviseStream(Identity identity) {
+        supervisedIdentity = identity;
+        if (autoReconnect && CameraHandler.streamSupervisor == null) {
+            CameraHandler.streamSupervisor = new StreamSupervisor(reconnector, supervisorListener, STREAM_STALL_MILLIS,
+                    RECONNECT_INITIAL_DELAY_MILLIS, RECONNECT_MAX_DELAY_MILLIS);
+        }
+    }
+
+    private void stopSupervisingStream() {
+        StreamSupervisor supervisor = CameraHandler.streamSupervisor;
+        if (supervisor != null) {
+            CameraHandler.streamSupervisor = null;
+            supervisor.stop();
+        }
+    }
+
+    /**
+     * Reconnects for the {@link StreamSupervisor}, on its thread. The pipeline stays up in between, so the stream resumes
+     * with its buffers warm.
+     */
+    private final StreamSupervisor.Connector reconnector = new StreamSupervisor.Connector() {
+        @Override
+        public void disconnect() {
+            cameraHandler.dropConnection();
+        }
+
+        @Override
+        public void connect() throws Exception {
+            Identity identity = cameraHandler.rediscover(supervisedIdentity, REDISCOVERY_TIMEOUT_MILLIS);
+            if (identity == null) {
+                throw new IOException("Camera not found");
+            }
+            if (UsbPermissionHandler.isFlirOne(identity)) {
+                awaitUsbPermission(identity);
+            }
+            cameraHandler.connectCamera(identity, connectionStatusListener);
+            connectedCameraIdentity = identity;
+            supervisedIdentity = identity;
+            runOnUiThread(() -> {
+                cameraHandler.startStream(streamDataListener);
+                cameraHandler.getFrameDemand().request(DISPLAY_FRAMES_IN_FLIGHT);
+            });
+        }
+    };
+
+    /**
+     * Ask for USB permission for a camera that came back and wait for the answer
+     * @throws IOException if it was denied or didn't come in time
+     */
+    private void awaitUsbPermission(Identity identity) throws IOException, InterruptedException {
+        CountDownLatch answered = new CountDownLatch(1);
+        boolean[] granted = new boolean[1];
+        usbPermissionHandler.requestFlirOnePermisson(identity, this, new UsbPermissionHandler.UsbPermissionListener() {
+            @Override
+            public void permissionGranted(@NotNull Identity identity) {
+                granted[0] = true;
+                answered.countDown();
+            }
+
+            @Override
+            public void permissionDenied(@NotNull Identity identity) {
+                answered.countDown();
+            }
+
+            @Override
+            public void error(ErrorType errorType, Identity identity) {
+                Log.e(TAG, "awaitUsbPermission: " + errorType);
+                answered.countDown();
+            }
+        });
+        if (!answered.await(USB_PERMISSION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) || !granted[0]) {
+            throw new IOException("No USB permission for " + identity);
+        }
+    }
+
+    private final StreamSupervisor.Listener supervisorListener = new StreamSupervisor.Listener() {
+        @Override
+        public void recovering(int attempt, long delayMillis, String reason) {
+            runOnUiThread(() -> updateConnectionText(supervisedIdentity, RECONNECTING + (attempt > 0 ? " (attempt " + (attempt + 1) + ")" : "")));
+        }
+
+        @Override
+        public void recovered(long recoveryMillis) {
+            runOnUiThread(() -> {
+                updateConnectionText(supervisedIdentity, CONNECTED);
+                showMessage.show("Reconnected in " + recoveryMillis + " ms");
+            });
+        }
+    };
+
+    /**
+     * Show or hide the session statistics
+     * @param item the menu item, checked while they are shown
+     */
+    private void toggleDashboard(MenuItem item) {
+        if (dashboard.getVisibility() == View.VISIBLE) {
+            dashboard.removeCallbacks(dashboardRefresh);
+            dashboard.setVisibility(View.GONE);
+            item.setChecked(false);
+            return;
+        }
+        dashboard.setVisibility(View.VISIBLE);
+        item.setChecked(true);
+        refreshDashboard();
+    }
+
+    /**
+     * Show the current session statistics and schedule the next refresh, while the dashboard is visible
+     */
+    private void refreshDashboard() {
+        if (dashboard.getVisibility() != View.VISIBLE) {
+            return;
+        }
+        SessionStatistics stats = CameraHandler.sessionStats;
+        TemperatureScale scale = CalibrationHandler.scale(CameraHandler.getTemperatureUnit());
+        long minutes = (System.currentTimeMillis() - stats.getStartMillis()) / 60000;
+        dashboard.setText(String.format(Locale.US,
+                "Session %d:%02d h\nScreened %d, alerts %d\nMean %s, peak %s, P95 %s\nFrames %d processed, %d dropped",
+                minutes / 60, minutes % 60, stats.getPeopleScreened(), stats.getAlerts(),
+                formatTemperature(stats.getMeanKelvin(), scale), formatTemperature(stats.getPeakKelvin(), scale),
+                formatTemperature(stats.getQuantileKelvin(0.95), scale), stats.getFramesProcessed(), stats.getFramesDropped()));
+        StreamSupervisor supervisor = CameraHandler.streamSupervisor;
+        if (supervisor != null && supervisor.getRecoveries() > 0) {
+            dashboard.append(String.format(Locale.US, "\nReconnected %d times, last in %.1f s, slowest %.1f s",
+                    supervisor.getRecoveries(), supervisor.getLastRecoveryMillis() / 1000.0, supervisor.getMaxRecoveryMillis() / 1000.0));
+        }
+        MotionGate gate = CameraHandler.motionGate;
+        if (gate != null) {
+            dashboard.append(String.format(Locale.US, "\nIdle %d%%, saved %d s of processing",
+                    Math.round(gate.getIdleRatio() * 100), gate.getSavedMillis() / 1000));
+        }
+        dashboard.removeCallbacks(dashboardRefresh);
+        dashboard.postDelayed(dashboardRefresh, DASHBOARD_REFRESH_MILLIS);
+    }
+
+    private static String formatTemperature(double kelvin, TemperatureScale scale) {
+        return Double.isNaN(kelvin) ? "-" : String.format(Locale.US, "%.1f %c", scale.fromKelvin(kelvin), scale.suffix);
+    }
+
     public void onClickDisconnectFlirEmulator() {
+        MonitoringServer server = CameraHandler.monitoringServer;
+        if (server != null) {
+            CameraHandler.monitoringServer = null;
+            server.stop();
+        }
+        FrameRecorder recorder = CameraHandler.frameRecorder;
+        if (recorder != null) {
+            CameraHandler.frameRecorder = null;
+            new Thread(recorder::stop).start();
+        }
+        MultiModeRenderer renderer = CameraHandler.multiModeRenderer;
+        if (renderer != null) {
+            CameraHandler.multiModeRenderer = null;
+            renderer.stop();
+        }
+        SoftwareFusion fusion = CameraHandler.softwareFusion;
+        if (fusion != null) {
+            CameraHandler.softwareFusion = null;
+            fusion.stop();
+        }
+        DriftCompensator compensator = CameraHandler.driftCompensator;
+        if (compensator != null) {
+            CameraHandler.driftCompensator = null;
+            compensator.stop();
+        }
+        MotionGate gate = CameraHandler.motionGate;
+        if (gate != null) {
+            CameraHandler.motionGate = null;
+            Log.d(TAG, "disconnect: motion gate " + gate);
+        }
+        SnapshotWriter writer = CameraHandler.snapshotWriter;
+        if (writer != null) {
+            CameraHandler.snapshotWriter = null;
+            new Thread(writer::stop).start();
+        }
         disconnectCamera();
         finish();
     }
@@ -262,6 +706,7 @@ public class FlirCameraActivity extends AppCompatActivity {
             photoImage.setVisibility(View.INVISIBLE);
             msxImage.setVisibility(View.VISIBLE);
         }
+        CameraHandler.photoVisible = photoImage.getVisibility() == View.VISIBLE;
     }
 
     public void switchFilter() {
@@ -287,29 +732,29 @@ public class FlirCameraActivity extends AppCompatActivity {
         }
     }
 
-    public void updateTitle(){
-        String title = "";
-
-        switch (curr_fusion_mode) {
+    /**
+     * @return the name of a fusion mode as shown in the title and the mode comparison grid
+     */
+    static String modeTitle(FusionMode mode) {
+        switch (mode) {
             case THERMAL_ONLY:
-                title = "Thermal Only";
-                break;
+                return "Thermal Only";
             case BLENDING:
-                title = "Blending";
-                break;
+                return "Blending";
             case MSX:
-                title = "MSX";
-                break;
+                return "MSX";
             case THERMAL_FUSION:
-                title = "Thermal Fusion";
-                break;
+                return "Thermal Fusion";
             case PICTURE_IN_PICTURE:
-                title = "Picture in Picture";
-                break;
+                return "Picture in Picture";
             case COLOR_NIGHT_VISION:
-                title = "Night Vision";
-                break;
+                return "Night Vision";
         }
+        return "";
+    }
+
+    public void updateTitle(){
+        String title = CameraHandler.softwareFusion != null ? "Software MSX" : modeTitle(curr_fusion_mode);
 
         title += " | ";
 
@@ -330,6 +775,8 @@ public class FlirCameraActivity extends AppCompatActivity {
      * Disconnect to a camera
      */
     private void disconnectCamera() {
+        stopSupervisingStream();
+        Log.d(TAG, "disconnect: frames " + cameraHandler.getFrameDemand());
         updateConnectionText(connectedCameraIdentity, DISCONNECTING);
         connectedCameraIdentity = null;
         Log.d(TAG, "disconnect: Called with: connectedCameraIdentity = [" + connectedCameraIdentity + "]");
@@ -379,6 +826,8 @@ public class FlirCameraActivity extends AppCompatActivity {
                 runOnUiThread(() -> {
                     updateConnectionText(identity, CONNECTED);
                     cameraHandler.startStream(streamDataListener);
+                    cameraHandler.getFrameDemand().request(DISPLAY_FRAMES_IN_FLIGHT);
+                    superviseStream(identity);
                 });
             } catch (IOException e) {
                 runOnUiThread(() -> {
@@ -405,6 +854,10 @@ public class FlirCameraActivity extends AppCompatActivity {
      */
     public ConnectionStatusListener connectionStatusListener = errorCode -> {
         Log.d(TAG, "onDisconnected: errorCode:" + errorCode);
+        StreamSupervisor supervisor = CameraHandler.streamSupervisor;
+        if (supervisor != null) {
+            supervisor.connectionLost("disconnected, " + errorCode);
+        }
         runOnUiThread(() -> updateConnectionText(connectedCameraIdentity, DISCONNECTED));
     };
 
@@ -415,18 +868,20 @@ public class FlirCameraActivity extends AppCompatActivity {
 
             runOnUiThread(() -> {
                 msxImage.setImageBitmap(dataHolder.msxBitmap);
-                photoImage.setImageBitmap(dataHolder.dcBitmap);
+                if (dataHolder.dcBitmap != null) {
+                    photoImage.setImageBitmap(dataHolder.dcBitmap);
+                }
             });
         }
 
         @Override
         public void images(Bitmap msxBitmap, Bitmap dcBitmap) {
-
-            try {
-                framesBuffer.put(new BitmapFrameBuffer(msxBitmap, dcBitmap));
-            } catch (InterruptedException e) {
-                //if interrupted while waiting for adding a new item in the queue
-                Log.e(TAG, "images(), unable to add incoming images to frames buffer, exception:" + e);
+            FrameDemand demand = cameraHandler.getFrameDemand();
+            if (!framesBuffer.offer(new BitmapFrameBuffer(msxBitmap, dcBitmap))) {
+                Log.e(TAG, "images(), frames buffer full, dropping frame: " + demand);
+                demand.drop(FrameDemand.DISPLAY);
+                CameraHandler.sessionStats.frameDropped();
+                return;
             }
 
             runOnUiThread(() -> {
@@ -434,8 +889,13 @@ public class FlirCameraActivity extends AppCompatActivity {
                 BitmapFrameBuffer poll = framesBuffer.poll();
                 if (poll != null) {
                     msxImage.setImageBitmap(poll.msxBitmap);
-                    photoImage.setImageBitmap(poll.dcBitmap);
+                    // No photo is decoded while it is hidden, keep the last one
+                    if (poll.dcBitmap != null) {
+                        photoImage.setImageBitmap(poll.dcBitmap);
+                    }
                 }
+                // Shown, ready for the next one
+                demand.request(1);
             });
 
         }
@@ -6,5 +6,19 @@ import com.flir.thermalsdk.live.Identity;
 
 public class FlirCameraApplication extends Application {
     public static CameraHandler cameraHandler;
-    public static Identity connectedCameraIdentity;
+    // Written by the stream supervisor's thread when it reconnects, read on the UI thread
+    public static volatile Identity connectedCameraIdentity;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // The core logs through its own Log, send it to the device log
+        Log.setSink((error, tag, message) -> {
+            if (error) {
+                android.util.Log.e(tag, message);
+            } else {
+                android.util.Log.d(tag, message);
+            }
+        });
+    }
 }
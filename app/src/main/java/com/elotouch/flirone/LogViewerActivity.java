@@ -0,0 +1,188 @@
+package com.example.flirone;
+
+import android.app.TimePickerDialog;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.File;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Paged view of the temperature history kept in {@link CameraHandler#tempStore}.
+ * Only the rows on screen are formatted, the rest stay in the store and are loaded a page at a time by {@link LogPageReader}.
+ */
+public class LogViewerActivity extends AppCompatActivity {
+    private static final char[] MIN = "  Min: ".toCharArray();
+    private static final char[] MAX = "  Max: ".toCharArray();
+    private static final char[] AVG = "  Avg: ".toCharArray();
+
+    private LogPageReader reader;
+    private LogAdapter adapter;
+    private ListView list;
+    private TextView count;
+    private EditText threshold;
+    private Button tier;
+    // Exports start at the time last jumped to
+    private long exportFrom = Long.MIN_VALUE;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_log_viewer);
+        Objects.requireNonNull(getSupportActionBar()).setDisplayHomeAsUpEnabled(true);
+        getSupportActionBar().setHomeAsUpIndicator(R.drawable.ic_toolbar_back);
+
+        list = findViewById(R.id.log_list);
+        count = findViewById(R.id.log_count);
+        threshold = findViewById(R.id.log_threshold_value);
+        tier = findViewById(R.id.log_tier);
+        // The threshold is typed in the unit the rows are shown in
+        threshold.setHint(getString(R.string.log_threshold, unit().suffix));
+
+        reader = new LogPageReader(CameraHandler.tempStore, CameraHandler.tempStore.raw);
+        adapter = new LogAdapter();
+        list.setAdapter(adapter);
+        refresh();
+    }
+
+    @Override
+    public boolean onSupportNavigateUp() {
+        finish();
+        return super.onSupportNavigateUp();
+    }
+
+    private void refresh() {
+        reader.refresh();
+        count.setText(getString(R.string.log_count_text, reader.size()));
+        adapter.notifyDataSetChanged();
+    }
+
+    public void applyFilter(View v) {
+        String text = threshold.getText().toString();
+        try {
+            reader.setThreshold(text.isEmpty() ? -Float.MAX_VALUE : (float) unit().toKelvin(Double.parseDouble(text)));
+        } catch (NumberFormatException e) {
+            Toast.makeText(this, "Invalid threshold", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        refresh();
+    }
+
+    private static TemperatureScale unit() {
+        return CalibrationHandler.scale(CameraHandler.getTemperatureUnit());
+    }
+
+    public void jumpToTime(View v) {
+        Calendar now = Calendar.getInstance();
+        new TimePickerDialog(this, (view, hourOfDay, minute) -> {
+            Calendar target = Calendar.getInstance();
+            target.set(Calendar.HOUR_OF_DAY, hourOfDay);
+            target.set(Calendar.MINUTE, minute);
+            target.set(Calendar.SECOND, 0);
+            target.set(Calendar.MILLISECOND, 0);
+            // A time later than now means yesterday
+            if (target.after(now)) {
+                target.add(Calendar.DAY_OF_MONTH, -1);
+            }
+            exportFrom = target.getTimeInMillis();
+            list.setSelection(reader.positionOf(exportFrom));
+        }, now.get(Calendar.HOUR_OF_DAY), now.get(Calendar.MINUTE), true).show();
+    }
+
+    public void switchTier(View v) {
+        TimeSeriesStore store = CameraHandler.tempStore;
+        if (reader.getTier() == store.raw) {
+            reader.setTier(store.seconds);
+            tier.setText(R.string.log_tier_seconds);
+        } else if (reader.getTier() == store.seconds) {
+            reader.setTier(store.minutes);
+            tier.setText(R.string.log_tier_minutes);
+        } else {
+            reader.setTier(store.raw);
+            tier.setText(R.string.log_tier_raw);
+        }
+        refresh();
+    }
+
+    public void resetLog(View v) {
+        CameraHandler.resetLog();
+        refresh();
+    }
+
+    /**
+     * Save the live log, and export the tier on screen from the time last jumped to, or its oldest entry, up to now
+     */
+    public void saveLog(View v) {
+        CameraHandler.saveLog(this, false);
+        RollupTier exported = reader.getTier();
+        long from = exportFrom;
+        long to = System.currentTimeMillis() + 1;
+        new Thread(() -> {
+            File csv = CameraHandler.exportLog(this, exported, from, to, TemperatureExporter.Format.CSV);
+            File json = CameraHandler.exportLog(this, exported, from, to, TemperatureExporter.Format.NDJSON);
+            String msg = csv != null && json != null ? "Exported " + csv.getName() + " and " + json.getName() : "Export failed";
+            runOnUiThread(() -> Toast.makeText(this, msg, Toast.LENGTH_SHORT).show());
+        }).start();
+    }
+
+    private class LogAdapter extends BaseAdapter {
+        private final DateFormat timeFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS");
+        private final Date date = new Date();
+        private final TemperatureFormatter line = new TemperatureFormatter(80);
+
+        @Override
+        public int getCount() {
+            return reader.size();
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return null;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            TextView row = (TextView) convertView;
+            if (row == null) {
+                row = (TextView) LayoutInflater.from(parent.getContext()).inflate(R.layout.log_row, parent, false);
+            }
+            ReadingBatch page = reader.page(position);
+            int i = position % LogPageReader.PAGE_SIZE;
+            if (i >= page.size) {
+                // Expired since the last refresh
+                row.setText("");
+                return row;
+            }
+            TemperatureScale unit = unit();
+            date.setTime(page.time[i]);
+            line.reset().append(timeFormat.format(date))
+                    .append(MIN).appendTemperature(page.min[i], unit, true)
+                    .append(MAX).appendTemperature(page.max[i], unit, true)
+                    .append(AVG).appendTemperature(page.avg[i], unit, true);
+            if (page.count[i] > 1) {
+                line.append("  (").append(page.count[i]).append(')');
+            }
+            row.setText(line.chars(), 0, line.length());
+            return row;
+        }
+    }
+}
@@ -0,0 +1,611 @@
+package com.example.flirone;
+
+import android.graphics.Bitmap;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small embedded HTTP/WebSocket server so a security desk can watch the kiosk remotely.
+ * <ul>
+ * <li>{@code GET /} a page showing the stream and live statistics</li>
+ * <li>{@code GET /stream} the processed thermal frames as MJPEG</li>
+ * <li>{@code GET /stats} the statistics of the latest frame as JSON</li>
+ * <li>{@code GET /ws} a WebSocket pushing the statistics of every frame as JSON text messages</li>
+ * </ul>
+ * Each frame is JPEG encoded once, on a dedicated encoder thread, into a {@link SharedFrame} that every client
+ * references. Every client has a single slot for the next frame: when a slow client hasn't sent the previous frame
+ * yet, it is dropped and replaced by the newer one, so a slow client only ever falls behind by one frame and never
+ * holds up the stream thread or the other clients.
+ * <p>
+ * Every request must carry the access token, as {@code ?token=} or an {@code Authorization: Bearer} header. The
+ * server listens on a single address, loopback unless told otherwise, and doesn't allow cross-origin requests. At most {@code maxClients} connections are served at once, on a fixed
+ * pool of threads; more are turned away with 503. A streaming client has a writer and a reader thread: the reader
+ * answers WebSocket pings, completes the close handshake and notices right away when a client goes away.
+ */
+class MonitoringServer {
+    private static final String TAG = "MonitoringServer";
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final String BOUNDARY = "thermalframe";
+    private static final int JPEG_QUALITY = 80;
+    private static final String INDEX = "<!DOCTYPE html><html><head><title>FLIR ONE</title></head>"
+            + "<body style=\"background:#000;color:#fff;font-family:sans-serif\">"
+            + "<img src=\"/stream?token=%1$s\" style=\"max-height:80vh\"><pre id=\"stats\"></pre><script>"
+            + "var ws=new WebSocket('ws://'+location.host+'/ws?token=%1$s');"
+            + "ws.onmessage=function(e){document.getElementById('stats').textContent=e.data;};"
+            + "</script></body></html>";
+
+    // Time a client has to send its request, and to finish a WebSocket frame once it started one
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+    // Largest message a WebSocket client may send, the page never sends any
+    private static final int MAX_MESSAGE_BYTES = 4096;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+    private static final int CLOSE_NORMAL = 1000;
+    private static final int CLOSE_PROTOCOL_ERROR = 1002;
+    private static final int CLOSE_TOO_BIG = 1009;
+
+    private final InetAddress bindAddress;
+    private final int port;
+    private final byte[] token;
+    private final int maxClients;
+    // A connection holds a slot from accept to close
+    private final Semaphore slots;
+    // Request handler or stream writer, and stream reader, for every slot
+    private final ExecutorService handlers;
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+    private final ArrayBlockingQueue<SharedFrame> framePool = new ArrayBlockingQueue<>(4);
+    private final ExecutorService encoder = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean encoding = new AtomicBoolean();
+    private volatile ServerSocket serverSocket;
+    private volatile byte[] latestStats = "{}".getBytes(StandardCharsets.UTF_8);
+    private long sequence;
+
+    // Metrics
+    final AtomicLong framesEncoded = new AtomicLong();
+    final AtomicLong framesSkipped = new AtomicLong();
+    final AtomicLong framesDropped = new AtomicLong();
+
+    /**
+     * @param bindAddress address to listen on, null for loopback only
+     * @param token       access token every request must carry, see {@link #newToken}
+     * @param maxClients  connections served at once
+     */
+    MonitoringServer(InetAddress bindAddress, int port, String token, int maxClients) {
+        this.bindAddress = bindAddress != null ? bindAddress : InetAddress.getLoopbackAddress();
+        this.port = port;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.maxClients = maxClients;
+        slots = new Semaphore(maxClients);
+        handlers = Executors.newFixedThreadPool(2 * maxClients, runnable -> {
+            Thread thread = new Thread(runnable, TAG + "-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return a random access token, to be shown to whoever may watch
+     */
+    static String newToken() {
+        byte[] bytes = new byte[8];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Start listening
+     */
+    void start() throws IOException {
+        serverSocket = new ServerSocket(port, 50, bindAddress);
+        Thread acceptor = new Thread(this::acceptLoop, TAG);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        Log.d(TAG, "Listening on " + bindAddress.getHostAddress() + ", port " + port + ", up to " + maxClients + " clients");
+    }
+
+    /**
+     * Close the listening socket and every client connection
+     */
+    void stop() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Client client : clients) {
+            client.close();
+        }
+        encoder.shutdown();
+        handlers.shutdownNow();
+    }
+
+    /**
+     * @return the port listened on, the one the system picked once started if 0 was asked for
+     */
+    int getPort() {
+        ServerSocket socket = serverSocket;
+        return socket != null ? socket.getLocalPort() : port;
+    }
+
+    int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Fan a processed frame out to the connected clients. Called on the stream thread, never blocks:
+     * if the encoder is still busy with the previous frame this one is skipped.
+     *
+     * @param bitmap frame with the overlay drawn, must not be modified afterwards
+     * @param time   time the frame was received
+     * @param guide  guide rectangle statistics of the frame
+     * @param face   face rectangle statistics of the frame, or null if no face was measured
+     */
+    void publish(Bitmap bitmap, long time, RoiStatistics guide, RoiStatistics face) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        if (!encoding.compareAndSet(false, true)) {
+            framesSkipped.incrementAndGet();
+            return;
+        }
+        long seq = ++sequence;
+        // The statistics objects are reused by the next frame, format them now
+        String stats = "{\"seq\":" + seq + ",\"time\":" + time
+                + ",\"min_c\":" + celsius(guide.min) + ",\"max_c\":" + celsius(guide.max) + ",\"avg_c\":" + celsius(guide.avg)
+                + ",\"face_avg_c\":" + (face != null ? String.valueOf(celsius(face.avg)) : "null")
+                + ",\"clients\":" + clients.size() + ",\"dropped\":" + framesDropped.get() + "}";
+        try {
+            encoder.execute(() -> encode(bitmap, seq, stats));
+        } catch (RejectedExecutionException e) {
+            // Stopped
+            encoding.set(false);
+        }
+    }
+
+    private void encode(Bitmap bitmap, long seq, String stats) {
+        SharedFrame frame = SharedFrame.obtain(framePool, seq);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, frame.jpeg);
+            frame.stats = stats.getBytes(StandardCharsets.UTF_8);
+            latestStats = frame.stats;
+            framesEncoded.incrementAndGet();
+            for (Client client : clients) {
+                client.offer(frame);
+            }
+        } finally {
+            frame.release();
+            encoding.set(false);
+        }
+    }
+
+    private static double celsius(double kelvin) {
+        return Math.round(CalibrationHandler.kToC(kelvin) * 100.0) / 100.0;
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    Log.e(TAG, "accept failed: " + e);
+                }
+                continue;
+            }
+            if (!slots.tryAcquire()) {
+                Log.d(TAG, "Turning away " + socket.getInetAddress() + ", " + maxClients + " clients connected");
+                reject(socket);
+                continue;
+            }
+            try {
+                handlers.execute(() -> {
+                    try {
+                        handle(socket);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Stopped
+                slots.release();
+                reject(socket);
+            }
+        }
+    }
+
+    private static void reject(Socket socket) {
+        try (Socket s = socket) {
+            s.setSoTimeout(READ_TIMEOUT_MILLIS);
+            writeResponse(s.getOutputStream(), "503 Service Unavailable", "text/plain", "Too many clients".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.d(TAG, "reject: " + e);
+        }
+    }
+
+    private void handle(Socket socket) {
+        Client client = null;
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            // A client that doesn't finish its request in time is dropped, it holds a slot
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            InputStream input = socket.getInputStream();
+            String requestLine = readLine(input);
+            String webSocketKey = null;
+            String authorization = null;
+            String line;
+            while ((line = readLine(input)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon <= 0) {
+                    continue;
+                }
+                String name = line.substring(0, colon).trim();
+                if (name.equalsIgnoreCase("Sec-WebSocket-Key")) {
+                    webSocketKey = line.substring(colon + 1).trim();
+                } else if (name.equalsIgnoreCase("Authorization")) {
+                    authorization = line.substring(colon + 1).trim();
+                }
+            }
+            if (requestLine == null) {
+                return;
+            }
+            String[] parts = requestLine.split(" ");
+            String target = parts.length > 1 ? parts[1] : "/";
+            int query = target.indexOf('?');
+            String path = query >= 0 ? target.substring(0, query) : target;
+            OutputStream out = socket.getOutputStream();
+            if (!authorized(query >= 0 ? target.substring(query + 1) : "", authorization)) {
+                writeResponse(out, "401 Unauthorized", "text/plain", "Access token missing or wrong".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            switch (path) {
+                case "/":
+                    String index = String.format(INDEX, new String(token, StandardCharsets.UTF_8));
+                    writeResponse(out, "200 OK", "text/html", index.getBytes(StandardCharsets.UTF_8));
+                    break;
+                case "/stats":
+                    writeResponse(out, "200 OK", "application/json", latestStats);
+                    break;
+                case "/stream":
+                    out.write(("HTTP/1.1 200 OK\r\nContent-Type: multipart/x-mixed-replace; boundary=" + BOUNDARY
+                            + "\r\nCache-Control: no-cache\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    client = new Client(socket);
+                    clients.add(client);
+                    listen(client, false);
+                    streamMjpeg(client, out);
+                    break;
+                case "/ws":
+                    if (webSocketKey == null) {
+                        writeResponse(out, "400 Bad Request", "text/plain", "WebSocket upgrade expected".getBytes(StandardCharsets.UTF_8));
+                        break;
+                    }
+                    out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Accept: "
+                            + acceptKey(webSocketKey) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    client = new Client(socket);
+                    clients.add(client);
+                    listen(client, true);
+                    streamWebSocket(client, out);
+                    break;
+                default:
+                    writeResponse(out, "404 Not Found", "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+                    break;
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "client gone: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (client != null) {
+                clients.remove(client);
+                client.close();
+            } else {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the query or the Authorization header carries the token
+     */
+    private boolean authorized(String query, String authorization) {
+        String given = null;
+        if (authorization != null && authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            given = authorization.substring(7).trim();
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("token=")) {
+                given = parameter.substring(6);
+            }
+        }
+        // Constant time, so the token can't be guessed a character at a time
+        return given != null && MessageDigest.isEqual(token, given.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read a header line byte by byte, so nothing after the headers is buffered away from the stream reader
+     *
+     * @return the line without its line break, or null at the end of the stream
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n') {
+                int end = line.length();
+                return end > 0 && line.charAt(end - 1) == '\r' ? line.substring(0, end - 1) : line.toString();
+            }
+            if (line.length() >= MAX_MESSAGE_BYTES) {
+                throw new IOException("Header line too long");
+            }
+            line.append((char) b);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    /**
+     * Read what a streaming client sends on a second thread, until it goes away
+     *
+     * @param webSocket whether to answer WebSocket frames, anything an MJPEG client sends is ignored
+     */
+    private void listen(Client client, boolean webSocket) throws IOException {
+        client.socket.setSoTimeout(0);
+        try {
+            handlers.execute(() -> {
+                try {
+                    if (webSocket) {
+                        readWebSocket(client);
+                    } else {
+                        InputStream in = client.socket.getInputStream();
+                        while (in.read() >= 0) {
+                            // Nothing expected
+                        }
+                    }
+                } catch (IOException e) {
+                    if (!client.closed) {
+                        Log.d(TAG, "client gone: " + e);
+                    }
+                } finally {
+                    client.close();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Stopped
+            client.close();
+        }
+    }
+
+    /**
+     * Answer pings and the close handshake of a WebSocket client, other messages are read and dropped
+     */
+    private void readWebSocket(Client client) throws IOException {
+        DataInputStream in = new DataInputStream(client.socket.getInputStream());
+        byte[] mask = new byte[4];
+        byte[] payload = new byte[MAX_MESSAGE_BYTES];
+        while (!client.closed) {
+            int first;
+            try {
+                first = in.readUnsignedByte();
+            } catch (EOFException e) {
+                // Gone without a close frame
+                return;
+            }
+            // The rest of a frame has to follow quickly
+            client.socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            int opcode = first & 0x0F;
+            int second = in.readUnsignedByte();
+            long length = second & 0x7F;
+            if (length == 126) {
+                length = in.readUnsignedShort();
+            } else if (length == 127) {
+                length = in.readLong();
+            }
+            if ((second & 0x80) == 0) {
+                // Client frames must be masked
+                client.closeWebSocket(CLOSE_PROTOCOL_ERROR);
+                return;
+            }
+            if (length < 0 || length > MAX_MESSAGE_BYTES || (opcode >= OPCODE_CLOSE && length > 125)) {
+                client.closeWebSocket(CLOSE_TOO_BIG);
+                return;
+            }
+            in.readFully(mask);
+            int n = (int) length;
+            in.readFully(payload, 0, n);
+            for (int i = 0; i < n; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+            client.socket.setSoTimeout(0);
+
+            switch (opcode) {
+                case OPCODE_CLOSE:
+                    // Echo the status code, then the connection is done
+                    int code = n >= 2 ? ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF) : CLOSE_NORMAL;
+                    client.closeWebSocket(code);
+                    return;
+                case OPCODE_PING:
+                    client.writeFrame(OPCODE_PONG, payload, n);
+                    break;
+                default:
+                    // Pongs, and messages the page never sends
+                    break;
+            }
+        }
+    }
+
+    private void streamMjpeg(Client client, OutputStream out) throws IOException, InterruptedException {
+        byte[] crlf = {'\r', '\n'};
+        SharedFrame frame;
+        while ((frame = client.take()) != null) {
+            try {
+                out.write(("--" + BOUNDARY + "\r\nContent-Type: image/jpeg\r\nContent-Length: " + frame.jpeg.size() + "\r\n\r\n")
+                        .getBytes(StandardCharsets.ISO_8859_1));
+                out.write(frame.jpeg.array(), 0, frame.jpeg.size());
+                out.write(crlf);
+                out.flush();
+            } finally {
+                frame.release();
+            }
+        }
+    }
+
+    private void streamWebSocket(Client client, OutputStream out) throws IOException, InterruptedException {
+        SharedFrame frame;
+        while ((frame = client.take()) != null) {
+            try {
+                byte[] payload = frame.stats;
+                client.writeFrame(0x1, payload, payload.length);
+            } finally {
+                frame.release();
+            }
+        }
+    }
+
+    private static void writeResponse(OutputStream out, String status, String contentType, byte[] body) throws IOException {
+        out.write(("HTTP/1.1 " + status + "\r\nContent-Type: " + contentType + "\r\nContent-Length: " + body.length
+                + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        out.flush();
+    }
+
+    private static String acceptKey(String key) throws IOException {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.encodeToString(digest, Base64.NO_WRAP);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * A connected subscriber with a single slot for the next frame to send
+     */
+    private class Client {
+        private final Socket socket;
+        private SharedFrame pending;
+        volatile boolean closed;
+        // WebSocket frames come from the writer and the reader thread, one at a time
+        private final Object writeLock = new Object();
+        private final byte[] header = new byte[10];
+
+        Client(Socket socket) {
+            this.socket = socket;
+        }
+
+        /**
+         * Send an unmasked, final WebSocket frame
+         */
+        void writeFrame(int opcode, byte[] payload, int length) throws IOException {
+            synchronized (writeLock) {
+                int n = 0;
+                header[n++] = (byte) (0x80 | opcode);
+                if (length < 126) {
+                    header[n++] = (byte) length;
+                } else if (length < 65536) {
+                    header[n++] = 126;
+                    header[n++] = (byte) (length >> 8);
+                    header[n++] = (byte) length;
+                } else {
+                    header[n++] = 127;
+                    for (int shift = 56; shift >= 0; shift -= 8) {
+                        header[n++] = (byte) ((long) length >> shift);
+                    }
+                }
+                OutputStream out = socket.getOutputStream();
+                out.write(header, 0, n);
+                out.write(payload, 0, length);
+                out.flush();
+            }
+        }
+
+        /**
+         * Send a close frame with a status code and close the connection
+         */
+        void closeWebSocket(int code) {
+            try {
+                writeFrame(OPCODE_CLOSE, new byte[]{(byte) (code >> 8), (byte) code}, 2);
+            } catch (IOException e) {
+                Log.d(TAG, "closeWebSocket: " + e);
+            }
+            close();
+        }
+
+        synchronized void offer(SharedFrame frame) {
+            if (closed) {
+                return;
+            }
+            if (pending != null) {
+                // Still busy sending an older frame, replace it
+                pending.release();
+                framesDropped.incrementAndGet();
+            }
+            pending = frame.retain();
+            notifyAll();
+        }
+
+        /**
+         * Wait for the next frame
+         *
+         * @return the frame, holding a reference the caller must release, or null once the client is closed
+         */
+        synchronized SharedFrame take() throws InterruptedException {
+            while (pending == null && !closed) {
+                wait();
+            }
+            if (closed) {
+                return null;
+            }
+            SharedFrame frame = pending;
+            pending = null;
+            return frame;
+        }
+
+        synchronized void close() {
+            closed = true;
+            if (pending != null) {
+                pending.release();
+                pending = null;
+            }
+            notifyAll();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.d(TAG, "close: " + e);
+            }
+        }
+    }
+}
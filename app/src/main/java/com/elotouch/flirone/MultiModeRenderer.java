@@ -0,0 +1,217 @@
+package com.example.flirone;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.flir.thermalsdk.androidsdk.image.BitmapAndroid;
+import com.flir.thermalsdk.image.JavaImageBuffer;
+import com.flir.thermalsdk.image.ThermalImage;
+import com.flir.thermalsdk.image.fusion.Fusion;
+import com.flir.thermalsdk.image.fusion.FusionMode;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders one ThermalImage in every fusion mode and lays the results out side by side in a grid.
+ * <p>
+ * The ThermalImage is only valid inside the camera callback and its fusion mode is shared state, so the SDK renders the
+ * extra modes one after the other on the camera thread in {@link #capture}. Later, off the camera thread,
+ * {@link #compose} hands the conversion of every mode to a Bitmap, its scaling into its tile and labelling to a worker
+ * pool. The tile of the mode already on screen reuses the frame that was rendered for it, with its overlay.
+ * <p>
+ * Every tile is labelled with the mode and, for the extra modes, what rendering it added to the frame. A summary is
+ * logged every {@link #REPORT_INTERVAL} frames. Grids are cycled through a few buffers so the one on screen isn't
+ * drawn into.
+ */
+class MultiModeRenderer {
+    private static final String TAG = "MultiModeRenderer";
+    static final FusionMode[] MODES = FusionMode.values();
+    private static final int COLUMNS = 3;
+    private static final int BUFFERS = 3;
+    private static final int REPORT_INTERVAL = 30;
+
+    /**
+     * One cell of the grid, converted and drawn on a worker
+     */
+    private static class Tile implements Callable<Void> {
+        final FusionMode mode;
+        final String title;
+        final Canvas canvas = new Canvas();
+        final Rect bounds = new Rect();
+        final Paint label = new Paint(Paint.ANTI_ALIAS_FLAG);
+        final TemperatureFormatter text = new TemperatureFormatter(32);
+
+        Bitmap grid;
+        Bitmap frame;
+        JavaImageBuffer buffer;
+        long renderNanos;
+        long convertNanos;
+        // Smoothed cost of the mode as an extra, in nanoseconds
+        long averageNanos;
+        boolean extra;
+        Future<Void> pending;
+
+        Tile(FusionMode mode) {
+            this.mode = mode;
+            this.title = FlirCameraActivity.modeTitle(mode);
+            label.setColor(Color.WHITE);
+            label.setStyle(Paint.Style.FILL);
+        }
+
+        @Override
+        public Void call() {
+            long start = System.nanoTime();
+            Bitmap source = frame != null ? frame : BitmapAndroid.createBitmap(buffer).getBitMap();
+            canvas.setBitmap(grid);
+            canvas.drawBitmap(source, null, bounds, null);
+            text.reset().append(title);
+            if (frame == null) {
+                convertNanos = System.nanoTime() - start;
+                long cost = renderNanos + convertNanos;
+                averageNanos = averageNanos == 0 ? cost : (averageNanos * 7 + cost) / 8;
+                text.append(" +").append(averageNanos / 1000000).append(" ms");
+            }
+            canvas.drawText(text.chars(), 0, text.length(), bounds.left + 4, bounds.bottom - 6, label);
+            canvas.setBitmap(null);
+            frame = null;
+            buffer = null;
+            return null;
+        }
+    }
+
+    private final ExecutorService pool;
+    private final Tile[] tiles = new Tile[MODES.length];
+    private final Bitmap[] grids = new Bitmap[BUFFERS];
+    private int nextGrid;
+    private int frames;
+    private long frameNanos;
+
+    MultiModeRenderer() {
+        pool = Executors.newFixedThreadPool(Math.max(1, Math.min(MODES.length, Runtime.getRuntime().availableProcessors() - 1)));
+        for (int i = 0; i < MODES.length; i++) {
+            tiles[i] = new Tile(MODES[i]);
+        }
+    }
+
+    /**
+     * Render every mode but the current one, on the camera thread
+     *
+     * @param image   the image of the current frame, its fusion mode is restored before returning
+     * @param current the mode the frame was already rendered in
+     * @param buffers receives the rendered image of every mode, indexed like {@link #MODES}
+     * @param nanos   receives how long the SDK took to render each mode
+     */
+    void capture(ThermalImage image, FusionMode current, JavaImageBuffer[] buffers, long[] nanos) {
+        Fusion fusion = image.getFusion();
+        if (fusion == null) {
+            return;
+        }
+        try {
+            for (int i = 0; i < MODES.length; i++) {
+                if (MODES[i] == current) {
+                    buffers[i] = null;
+                    continue;
+                }
+                long start = System.nanoTime();
+                fusion.setFusionMode(MODES[i]);
+                buffers[i] = image.getImage();
+                nanos[i] = System.nanoTime() - start;
+            }
+        } finally {
+            fusion.setFusionMode(current);
+        }
+    }
+
+    /**
+     * Lay the captured modes and the current frame out in the next grid
+     *
+     * @param buffers the modes from {@link #capture}
+     * @param nanos   their render times
+     * @param current the mode of the frame
+     * @param frame   the frame rendered in that mode
+     * @return the grid, or the frame if no modes were captured
+     */
+    Bitmap compose(JavaImageBuffer[] buffers, long[] nanos, FusionMode current, Bitmap frame) {
+        long start = System.nanoTime();
+        Bitmap grid = grid(frame.getWidth(), frame.getHeight());
+        try {
+            for (int i = 0; i < tiles.length; i++) {
+                Tile tile = tiles[i];
+                tile.grid = grid;
+                tile.extra = tile.mode != current;
+                if (!tile.extra) {
+                    tile.frame = frame;
+                } else if (buffers[i] == null) {
+                    // The image had no fusion
+                    return frame;
+                } else {
+                    tile.buffer = buffers[i];
+                    tile.renderNanos = nanos[i];
+                }
+            }
+            for (Tile tile : tiles) {
+                tile.pending = pool.submit(tile);
+            }
+            for (Tile tile : tiles) {
+                tile.pending.get();
+                tile.pending = null;
+            }
+        } catch (ExecutionException | InterruptedException e) {
+            e.printStackTrace();
+            return frame;
+        }
+
+        frameNanos += System.nanoTime() - start;
+        if (++frames % REPORT_INTERVAL == 0) {
+            report();
+        }
+        return grid;
+    }
+
+    /**
+     * Stop the workers, a grid being rendered is finished first
+     */
+    void stop() {
+        pool.shutdown();
+    }
+
+    private Bitmap grid(int tileWidth, int tileHeight) {
+        int rows = (MODES.length + COLUMNS - 1) / COLUMNS;
+        int width = tileWidth / 2 * COLUMNS;
+        int height = tileHeight / 2 * rows;
+        Bitmap grid = grids[nextGrid];
+        if (grid == null || grid.getWidth() != width || grid.getHeight() != height) {
+            grid = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            grids[nextGrid] = grid;
+            for (int i = 0; i < tiles.length; i++) {
+                int left = i % COLUMNS * tileWidth / 2;
+                int top = i / COLUMNS * tileHeight / 2;
+                tiles[i].bounds.set(left, top, left + tileWidth / 2, top + tileHeight / 2);
+                tiles[i].label.setTextSize(tileHeight / 16f);
+            }
+        }
+        nextGrid = (nextGrid + 1) % BUFFERS;
+        return grid;
+    }
+
+    private void report() {
+        StringBuilder line = new StringBuilder("render: ").append(MODES.length).append(" modes in ")
+                .append(frameNanos / REPORT_INTERVAL / 1000000).append(" ms per grid;");
+        for (Tile tile : tiles) {
+            if (!tile.extra) {
+                continue;
+            }
+            line.append(' ').append(tile.title).append(" +").append(tile.averageNanos / 1000000).append(" ms");
+        }
+        Log.d(TAG, line.toString());
+        frameNanos = 0;
+    }
+}
@@ -0,0 +1,294 @@
+package com.example.flirone;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.RectF;
+
+
+/**
+ * Retained renderer for the measurement overlay drawn on top of every thermal frame.
+ * <p>
+ * The guide rectangle, its hot and cold spots and the face rectangle are kept as elements on a transparent overlay
+ * bitmap that lives across frames. Each frame the caller updates the elements; only those whose position or displayed
+ * value changed mark their old and new bounds dirty, only the dirty region is cleared and redrawn, and the overlay is
+ * then composited onto the frame. Paints, the canvases and the text buffers are created once, so a frame whose overlay
+ * size doesn't change allocates nothing.
+ * <p>
+ * Values are compared in hundredths of the display unit, so a label is only formatted again when the text it shows
+ * changes.
+ */
+class OverlayRenderer {
+    static final int GUIDE = 0;
+    static final int HOT = 1;
+    static final int COLD = 2;
+    static final int FACE = 3;
+    private static final int ELEMENTS = 4;
+
+    private static final char[] AVG_PREFIX = {'A', 'v', 'g', ':', ' '};
+
+    /**
+     * One overlay element: an optional rectangle or spot, and a temperature label
+     */
+    private static class Element {
+        final Paint shape;
+        final Paint text;
+        final boolean spot;
+        final boolean prefix;
+        final char[] label = new char[32];
+        final RectF bounds = new RectF();
+
+        boolean visible;
+        boolean changed;
+        boolean hasValue;
+        float x0, y0, x1, y1;
+        float labelX, labelY;
+        long value;
+        int length;
+
+        Element(Paint shape, Paint text, boolean spot, boolean prefix) {
+            this.shape = shape;
+            this.text = text;
+            this.spot = spot;
+            this.prefix = prefix;
+        }
+    }
+
+    private final Paint guidePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint guideText = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint hotPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint coldPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint facePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint faceText = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Element[] elements = new Element[ELEMENTS];
+
+    private Bitmap overlay;
+    private final Canvas overlayCanvas = new Canvas();
+    private final Canvas frameCanvas = new Canvas();
+    private final RectF dirty = new RectF();
+    private float scale;
+    private TemperatureScale unit;
+
+    OverlayRenderer() {
+        guidePaint.setColor(Color.GREEN);
+        guidePaint.setStyle(Paint.Style.STROKE);
+        guideText.setColor(Color.GREEN);
+        guideText.setStyle(Paint.Style.FILL);
+        hotPaint.setColor(Color.RED);
+        hotPaint.setStyle(Paint.Style.FILL);
+        coldPaint.setColor(Color.BLUE);
+        coldPaint.setStyle(Paint.Style.FILL);
+        facePaint.setColor(Color.MAGENTA);
+        facePaint.setStyle(Paint.Style.STROKE);
+        faceText.setColor(Color.MAGENTA);
+        faceText.setStyle(Paint.Style.FILL);
+
+        elements[GUIDE] = new Element(guidePaint, guideText, false, true);
+        elements[HOT] = new Element(hotPaint, hotPaint, true, false);
+        elements[COLD] = new Element(coldPaint, coldPaint, true, false);
+        elements[FACE] = new Element(facePaint, faceText, false, true);
+    }
+
+    /**
+     * Start a frame
+     *
+     * @param width  width of the frame bitmap the overlay is drawn onto
+     * @param height height of the frame bitmap
+     * @param scale  frame pixels per thermal pixel, used for line widths and text sizes
+     * @param unit   unit the labels are shown in
+     */
+    void begin(int width, int height, float scale, TemperatureScale unit) {
+        if (overlay == null || overlay.getWidth() != width || overlay.getHeight() != height) {
+            if (overlay != null) {
+                overlay.recycle();
+            }
+            overlay = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            overlayCanvas.setBitmap(overlay);
+            invalidate();
+        }
+        if (scale != this.scale) {
+            this.scale = scale;
+            guidePaint.setStrokeWidth(2 * scale);
+            facePaint.setStrokeWidth(2 * scale);
+            guideText.setTextSize(20 * scale);
+            hotPaint.setTextSize(20 * scale);
+            coldPaint.setTextSize(20 * scale);
+            faceText.setTextSize(20 * scale);
+            invalidate();
+        }
+        if (unit != this.unit) {
+            this.unit = unit;
+            invalidate();
+        }
+    }
+
+    /**
+     * Place a rectangle element, its label is drawn above its top left corner
+     *
+     * @param id     {@link #GUIDE} or {@link #FACE}
+     * @param labelY baseline of the label
+     */
+    void setRect(int id, float left, float top, float right, float bottom, float labelY) {
+        update(elements[id], left, top, right, bottom, left, labelY);
+    }
+
+    /**
+     * Place a hot or cold spot, its label is drawn below it
+     *
+     * @param id     {@link #HOT} or {@link #COLD}
+     * @param labelY baseline of the label
+     */
+    void setSpot(int id, float x, float y, float labelY) {
+        float radius = 5 * scale;
+        update(elements[id], x - radius, y - radius, x + radius, y + radius, x, labelY);
+    }
+
+    /**
+     * Set the temperature shown by an element's label
+     *
+     * @param kelvin temperature in Kelvin
+     */
+    void setValue(int id, double kelvin) {
+        Element element = elements[id];
+        long value = TemperatureFormatter.hundredths(kelvin, unit);
+        if (!element.hasValue || value != element.value) {
+            element.value = value;
+            element.hasValue = true;
+            element.changed = true;
+        }
+    }
+
+    /**
+     * Hide an element's label, the shape stays visible
+     */
+    void clearValue(int id) {
+        Element element = elements[id];
+        if (element.hasValue) {
+            element.hasValue = false;
+            element.changed = true;
+        }
+    }
+
+    /**
+     * Hide an element until it is placed again
+     */
+    void hide(int id) {
+        Element element = elements[id];
+        if (element.visible) {
+            element.visible = false;
+            element.hasValue = false;
+            element.changed = true;
+        }
+    }
+
+    /**
+     * Redraw the changed parts of the overlay and composite it onto the frame
+     *
+     * @param frame mutable frame bitmap, the same size passed to {@link #begin}
+     */
+    void drawOnto(Bitmap frame) {
+        dirty.setEmpty();
+        for (Element element : elements) {
+            if (element.changed) {
+                // Old bounds, then new
+                if (!element.bounds.isEmpty()) {
+                    dirty.union(element.bounds);
+                }
+                measure(element);
+                if (element.visible) {
+                    dirty.union(element.bounds);
+                }
+            }
+        }
+        if (!dirty.isEmpty()) {
+            overlayCanvas.save();
+            overlayCanvas.clipRect(dirty);
+            overlayCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            for (Element element : elements) {
+                // Unchanged elements overlapping the cleared region are redrawn too
+                if (element.visible && element.bounds.intersects(dirty.left, dirty.top, dirty.right, dirty.bottom)) {
+                    draw(element);
+                }
+                element.changed = false;
+            }
+            overlayCanvas.restore();
+        }
+        frameCanvas.setBitmap(frame);
+        frameCanvas.drawBitmap(overlay, 0, 0, null);
+        frameCanvas.setBitmap(null);
+    }
+
+    private void invalidate() {
+        for (Element element : elements) {
+            element.changed = true;
+        }
+    }
+
+    private void update(Element element, float x0, float y0, float x1, float y1, float labelX, float labelY) {
+        if (element.visible && x0 == element.x0 && y0 == element.y0 && x1 == element.x1 && y1 == element.y1
+                && labelX == element.labelX && labelY == element.labelY) {
+            return;
+        }
+        element.visible = true;
+        element.x0 = x0;
+        element.y0 = y0;
+        element.x1 = x1;
+        element.y1 = y1;
+        element.labelX = labelX;
+        element.labelY = labelY;
+        element.changed = true;
+    }
+
+    /**
+     * Format the label and work out the bounds the element covers
+     */
+    private void measure(Element element) {
+        if (!element.visible) {
+            element.bounds.setEmpty();
+            return;
+        }
+        element.bounds.set(element.x0, element.y0, element.x1, element.y1);
+        element.length = 0;
+        if (element.hasValue) {
+            element.length = format(element);
+            float width = element.text.measureText(element.label, 0, element.length);
+            element.bounds.union(element.labelX, element.labelY + element.text.ascent(),
+                    element.labelX + width, element.labelY + element.text.descent());
+        }
+        // Room for the stroke and anti-aliasing
+        float pad = 2 * scale + 1;
+        element.bounds.inset(-pad, -pad);
+    }
+
+    private void draw(Element element) {
+        if (element.spot) {
+            float radius = (element.x1 - element.x0) / 2;
+            overlayCanvas.drawCircle(element.x0 + radius, element.y0 + radius, radius, element.shape);
+        } else {
+            overlayCanvas.drawRect(element.x0, element.y0, element.x1, element.y1, element.shape);
+        }
+        if (element.length > 0) {
+            overlayCanvas.drawText(element.label, 0, element.length, element.labelX, element.labelY, element.text);
+        }
+    }
+
+    /**
+     * Write the label, e.g. "Avg: 36.62 C", into the element's buffer
+     *
+     * @return the number of chars written
+     */
+    private int format(Element element) {
+        char[] label = element.label;
+        int n = 0;
+        if (element.prefix) {
+            System.arraycopy(AVG_PREFIX, 0, label, 0, AVG_PREFIX.length);
+            n = AVG_PREFIX.length;
+        }
+        n = TemperatureFormatter.putHundredths(element.value, label, n);
+        label[n++] = ' ';
+        label[n++] = TemperatureFormatter.suffix(unit);
+        return n;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.flirone;
+
+import android.graphics.Bitmap;
+
+import com.flir.thermalsdk.image.JavaImageBuffer;
+import com.flir.thermalsdk.image.TemperatureUnit;
+import com.flir.thermalsdk.image.ThermalImage;
+import com.flir.thermalsdk.image.fusion.FusionMode;
+
+/**
+ * Everything the stages of a {@link FramePipeline} know about one camera frame.
+ * <p>
+ * Stages declare which of the slots below they read and write, and the pipeline orders them by those declarations.
+ * A stage may only touch the fields of the slots it declared. Frames are pooled by the pipeline and reused, so no
+ * stage may keep a reference to one after it returns.
+ */
+class PipelineFrame extends StagedFrame {
+    // The ThermalImage, only valid while the camera stages run
+    static final int THERMAL = 1;
+    static final int MATRIX = 1 << 1;
+    // msxBitmap, written again by every stage that draws on it
+    static final int IMAGE = 1 << 2;
+    static final int PHOTO = 1 << 3;
+    static final int GUIDE = 1 << 4;
+    static final int FACE = 1 << 5;
+    static final int MODES = 1 << 6;
+    // The bitmap to show in place of msxBitmap
+    static final int DISPLAY = 1 << 7;
+    // Summed-area table of the matrix
+    static final int SUMS = 1 << 8;
+    // Whether the scene changed enough for the expensive stages
+    static final int MOTION = 1 << 9;
+    // Skin temperature regions, where faces are looked for
+    static final int SKIN = 1 << 10;
+
+    ThermalImage thermalImage;
+    TemperatureMatrix matrix;
+    // False while the MotionGate idles the pipeline, no photo is decoded and no face looked for
+    boolean active;
+    // Drift offset added to the matrix as it was read
+    float driftOffset;
+    FusionMode mode;
+    TemperatureUnit unit;
+    Bitmap msxBitmap;
+    // Visual photo, null when nothing needed it for this frame
+    Bitmap dcBitmap;
+    Bitmap displayBitmap;
+    // Size of msxBitmap, for stages that don't wait for the stages drawing on it
+    int imageWidth, imageHeight;
+
+    final SummedAreaTable sums = new SummedAreaTable();
+    final SkinRegionFinder skin = new SkinRegionFinder(MAX_FACE_WINDOWS, MIN_SKIN_BLOCKS);
+
+    // Guide rectangle in thermal pixels, fractional, empty when it is switched off
+    float guideX, guideY, guideWidth, guideHeight;
+    boolean guideMeasured;
+    final RoiStatistics guide = new RoiStatistics();
+
+    // Face rectangle in msxBitmap pixels
+    boolean faceFound;
+    boolean faceMeasured;
+    float faceLeft, faceTop, faceRight, faceBottom;
+    final RoiStatistics face = new RoiStatistics();
+
+    // Other fusion modes rendered for the comparison grid, null while it is off
+    boolean modesCaptured;
+    JavaImageBuffer[] modeBuffers;
+    long[] modeNanos;
+
+    boolean delivered;
+
+    // Most people looked for in one frame, and the smallest skin region, in blocks, that may be one
+    private static final int MAX_FACE_WINDOWS = 4;
+    private static final int MIN_SKIN_BLOCKS = 6;
+
+    PipelineFrame(int stages) {
+        super(stages);
+        guide.histogram = new TemperatureHistogram();
+        face.histogram = new TemperatureHistogram();
+    }
+
+    @Override
+    void cameraStagesDone() {
+        // Nothing may use the image once the camera callback returns
+        thermalImage = null;
+    }
+
+    @Override
+    void reset(long sequence) {
+        super.reset(sequence);
+        thermalImage = null;
+        matrix = null;
+        active = true;
+        msxBitmap = null;
+        dcBitmap = null;
+        displayBitmap = null;
+        guideWidth = 0;
+        guideHeight = 0;
+        guideMeasured = false;
+        skin.count = 0;
+        faceFound = false;
+        faceMeasured = false;
+        modesCaptured = false;
+        delivered = false;
+        if (modeBuffers != null) {
+            for (int i = 0; i < modeBuffers.length; i++) {
+                modeBuffers[i] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.flirone;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An encoded frame and its statistics, encoded once and shared by every client of the {@link MonitoringServer}.
+ * <p>
+ * Reference counted like {@link TemperatureMatrix}: every subscriber holding the frame owns a reference, and the last
+ * {@link #release()} puts the frame and its buffers back into the pool it came from.
+ */
+class SharedFrame {
+    long sequence;
+    final Buffer jpeg = new Buffer(64 * 1024);
+    byte[] stats;
+
+    private final ArrayBlockingQueue<SharedFrame> pool;
+    private final AtomicInteger refCount = new AtomicInteger();
+
+    /**
+     * Growable byte buffer that exposes its backing array, so the encoded bytes are written out without copying
+     */
+    static class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private SharedFrame(ArrayBlockingQueue<SharedFrame> pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Take a frame from the pool, or allocate one if it is empty
+     *
+     * @return an empty frame holding one reference
+     */
+    static SharedFrame obtain(ArrayBlockingQueue<SharedFrame> pool, long sequence) {
+        SharedFrame frame = pool.poll();
+        if (frame == null) {
+            frame = new SharedFrame(pool);
+        }
+        frame.sequence = sequence;
+        frame.jpeg.reset();
+        frame.stats = null;
+        frame.refCount.set(1);
+        return frame;
+    }
+
+    SharedFrame retain() {
+        refCount.incrementAndGet();
+        return this;
+    }
+
+    void release() {
+        if (refCount.decrementAndGet() == 0) {
+            pool.offer(this);
+        }
+    }
+}
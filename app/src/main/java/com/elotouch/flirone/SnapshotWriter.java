@@ -0,0 +1,385 @@
+package com.example.flirone;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves snapshots of the stream, the image as PNG or JPEG and the temperatures as a one-frame {@link FrameCodec}
+ * sidecar, on a pool of background encoder threads.
+ * <p>
+ * A snapshot is taken when one is {@link #request requested}, e.g. from the menu or by an alert, or every
+ * {@link #setInterval interval}. {@link #offer} is called for every frame on a pipeline thread; it only checks whether a
+ * snapshot is due, and if so retains the matrix and queues the frame. It never blocks: when the queue is full the
+ * {@link Overflow} policy decides which snapshot is dropped.
+ * <p>
+ * Files are written under a temporary name, synced in batches of {@code syncBatch} snapshots or when the queue runs empty,
+ * and only then renamed, so a crash never leaves a half written snapshot behind. A {@link Listener} given with a request
+ * learns once the snapshot is on disk under its final name, or why it isn't.
+ */
+class SnapshotWriter {
+    private static final String TAG = "SnapshotWriter";
+    private static final String TMP_SUFFIX = ".tmp";
+    // Subdirectory of the image storage, snapshots aren't radiometric images and stay out of BatchProcessor's way
+    static final String DIRECTORY = "snapshots";
+
+    enum Overflow {
+        // Keep what is queued, drop the new snapshot
+        DROP_NEWEST,
+        // Make room by dropping the oldest queued snapshot
+        DROP_OLDEST
+    }
+
+    interface Listener {
+        /**
+         * A requested snapshot is done, called on an encoder thread
+         *
+         * @param image the image file, null if the snapshot failed
+         * @param error why it failed, null if it is on disk
+         */
+        void done(File image, String error);
+    }
+
+    /**
+     * A snapshot asked for with {@link #request}
+     */
+    private static class Request {
+        final String reason;
+        final Listener listener;
+
+        Request(String reason, Listener listener) {
+            this.reason = reason;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * A frame waiting to be encoded
+     */
+    private static class Snapshot {
+        final Bitmap bitmap;
+        final TemperatureMatrix matrix;
+        final long time;
+        final String reason;
+        final Listener listener;
+        // The calibration the temperatures were taken with
+        final RadiometricCorrection correction = CalibrationHandler.correction();
+        File image;
+        String error;
+
+        Snapshot(Bitmap bitmap, TemperatureMatrix matrix, long time, String reason, Listener listener) {
+            this.bitmap = bitmap;
+            this.matrix = matrix;
+            this.time = time;
+            this.reason = reason;
+            this.listener = listener;
+        }
+    }
+
+    private final File directory;
+    private final Bitmap.CompressFormat format;
+    private final int quality;
+    private final Overflow overflow;
+    private final int syncBatch;
+    private final ArrayBlockingQueue<Snapshot> queue;
+    private final Thread[] encoders;
+    private volatile boolean running = true;
+
+    private volatile Request requested;
+    private volatile long intervalMillis;
+    private long lastMillis;
+
+    final AtomicLong encoded = new AtomicLong();
+    final AtomicLong written = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+
+    /**
+     * Start the encoder threads
+     *
+     * @param directory where snapshots are written, created if needed, e.g. {@link #DIRECTORY} in
+     *                  {@link FileHandler#getImageStoragePath()}
+     * @param format    PNG or JPEG
+     * @param quality   JPEG quality, 0 to 100
+     * @param threads   number of encoder threads
+     * @param queueSize snapshots that can wait to be encoded
+     * @param syncBatch snapshots written before their files are synced together
+     */
+    SnapshotWriter(File directory, Bitmap.CompressFormat format, int quality, int threads, int queueSize, Overflow overflow, int syncBatch) {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create " + directory);
+        }
+        this.format = format;
+        this.quality = quality;
+        this.overflow = overflow;
+        this.syncBatch = Math.max(1, syncBatch);
+        queue = new ArrayBlockingQueue<>(queueSize);
+        encoders = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            encoders[i] = new Thread(this::encodeLoop, TAG + "-" + i);
+            encoders[i].start();
+        }
+    }
+
+    /**
+     * Take a snapshot of the next frame
+     *
+     * @param reason   why, ends up in the file names
+     * @param listener told when the snapshot is on disk or failed, or null
+     */
+    void request(String reason, Listener listener) {
+        Request replaced = requested;
+        requested = new Request(reason, listener);
+        if (replaced != null) {
+            // Both would be of the same frame
+            notify(replaced.listener, null, "replaced by a newer request");
+        }
+    }
+
+    /**
+     * @param millis time between automatic snapshots, 0 for none
+     */
+    void setInterval(long millis) {
+        intervalMillis = millis;
+    }
+
+    long getInterval() {
+        return intervalMillis;
+    }
+
+    /**
+     * Queue the frame if a snapshot is due, called for every frame
+     *
+     * @param bitmap image to save, must not be changed afterwards
+     * @param matrix temperatures of the frame, retained while queued
+     * @param time   time of the frame, in milliseconds
+     */
+    void offer(Bitmap bitmap, TemperatureMatrix matrix, long time) {
+        Request request = requested;
+        String reason;
+        Listener listener = null;
+        if (request != null) {
+            requested = null;
+            reason = request.reason;
+            listener = request.listener;
+        } else if (intervalMillis > 0 && time - lastMillis >= intervalMillis) {
+            reason = "timer";
+        } else {
+            return;
+        }
+        lastMillis = time;
+        if (!running) {
+            notify(listener, null, "snapshots stopped");
+            return;
+        }
+        matrix.retain();
+        Snapshot snapshot = new Snapshot(bitmap, matrix, time, reason, listener);
+        while (!queue.offer(snapshot)) {
+            Snapshot victim = overflow == Overflow.DROP_OLDEST ? queue.poll() : snapshot;
+            if (victim != null) {
+                victim.matrix.release();
+                dropped.incrementAndGet();
+                notify(victim.listener, null, "dropped, too many snapshots queued");
+            }
+            if (victim == snapshot) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Encode what is still queued, sync it and stop the encoder threads
+     */
+    void stop() {
+        running = false;
+        Request request = requested;
+        if (request != null) {
+            requested = null;
+            notify(request.listener, null, "snapshots stopped");
+        }
+        for (Thread encoder : encoders) {
+            try {
+                encoder.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Log.d(TAG, "stop: " + this);
+    }
+
+    @Override
+    public String toString() {
+        long count = encoded.get();
+        return written.get() + " snapshots written, " + (count > 0 ? encodeNanos.get() / count / 1000000 : 0) + " ms each, "
+                + dropped.get() + " dropped, " + failed.get() + " failed, " + queue.size() + " queued";
+    }
+
+    private void encodeLoop() {
+        // Files written but not yet synced, with their streams still open and the snapshots they belong to
+        List<FileOutputStream> streams = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        List<Snapshot> owners = new ArrayList<>();
+        DateFormat formatter = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.US);
+        try {
+            while (running || !queue.isEmpty()) {
+                Snapshot snapshot = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (snapshot == null) {
+                    // Idle, don't keep files waiting for a full batch
+                    sync(streams, files, owners);
+                    continue;
+                }
+                long start = System.nanoTime();
+                String name = "snapshot-" + formatter.format(new Date(snapshot.time)) + "-" + snapshot.reason;
+                int mark = streams.size();
+                try {
+                    snapshot.image = new File(directory, name + (format == Bitmap.CompressFormat.PNG ? ".png" : ".jpg"));
+                    FileOutputStream imageOut = open(snapshot.image, snapshot, streams, files, owners);
+                    BufferedOutputStream out = new BufferedOutputStream(imageOut, 64 * 1024);
+                    if (!snapshot.bitmap.compress(format, quality, out)) {
+                        throw new IOException("Could not encode the image");
+                    }
+                    out.flush();
+
+                    FileOutputStream sidecarOut = open(new File(directory, name + FrameCodec.EXTENSION), snapshot, streams, files, owners);
+                    FrameEncoder encoder = new FrameEncoder(new BufferedOutputStream(sidecarOut, 64 * 1024), 1, snapshot.correction);
+                    encoder.write(snapshot.matrix);
+                    encoder.flush();
+                    encoded.incrementAndGet();
+                    encodeNanos.addAndGet(System.nanoTime() - start);
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not write " + name + ": " + e);
+                    discard(streams, files, owners, mark);
+                    snapshot.error = "could not write " + name + ": " + e.getMessage();
+                    complete(snapshot);
+                } finally {
+                    snapshot.matrix.release();
+                }
+                if (files.size() >= syncBatch * 2) {
+                    sync(streams, files, owners);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sync(streams, files, owners);
+            Snapshot snapshot;
+            while ((snapshot = queue.poll()) != null) {
+                snapshot.matrix.release();
+                notify(snapshot.listener, null, "snapshots stopped");
+            }
+        }
+    }
+
+    private static FileOutputStream open(File file, Snapshot owner, List<FileOutputStream> streams, List<File> files,
+                                         List<Snapshot> owners) throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(file.getPath() + TMP_SUFFIX));
+        streams.add(out);
+        files.add(file);
+        owners.add(owner);
+        return out;
+    }
+
+    /**
+     * Close and delete the files opened from an index on
+     */
+    private static void discard(List<FileOutputStream> streams, List<File> files, List<Snapshot> owners, int from) {
+        while (streams.size() > from) {
+            int last = streams.size() - 1;
+            try {
+                streams.remove(last).close();
+            } catch (IOException e) {
+                Log.e(TAG, "Could not close " + files.get(last) + ": " + e);
+            }
+            new File(files.remove(last).getPath() + TMP_SUFFIX).delete();
+            owners.remove(last);
+        }
+    }
+
+    /**
+     * Sync and close the files written so far, give them their final names and tell the listeners how it went
+     */
+    private void sync(List<FileOutputStream> streams, List<File> files, List<Snapshot> owners) {
+        // Sync everything first, a snapshot is only renamed once all of its files are on disk
+        for (int i = 0; i < streams.size(); i++) {
+            File file = files.get(i);
+            Snapshot owner = owners.get(i);
+            try (FileOutputStream out = streams.get(i)) {
+                out.getFD().sync();
+            } catch (IOException e) {
+                Log.e(TAG, "Could not sync " + file + ": " + e);
+                if (owner.error == null) {
+                    owner.error = "could not sync " + file.getName() + ": " + e.getMessage();
+                }
+            }
+        }
+        // The files of a snapshot are next to each other
+        int first = 0;
+        for (int i = 0; i < owners.size(); i++) {
+            if (i + 1 == owners.size() || owners.get(i + 1) != owners.get(i)) {
+                publish(files.subList(first, i + 1), owners.get(i));
+                complete(owners.get(i));
+                first = i + 1;
+            }
+        }
+        streams.clear();
+        files.clear();
+        owners.clear();
+    }
+
+    /**
+     * Rename the synced files of a snapshot to their final names, all of them or none: if one of them failed, the
+     * others are deleted too, renamed or not
+     */
+    private static void publish(List<File> files, Snapshot owner) {
+        int renamed = 0;
+        while (owner.error == null && renamed < files.size()) {
+            File file = files.get(renamed);
+            File tmp = new File(file.getPath() + TMP_SUFFIX);
+            if (tmp.renameTo(file)) {
+                renamed++;
+            } else {
+                Log.e(TAG, "Could not rename " + tmp);
+                owner.error = "could not rename " + tmp.getName();
+            }
+        }
+        if (owner.error != null) {
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                (i < renamed ? file : new File(file.getPath() + TMP_SUFFIX)).delete();
+            }
+        }
+    }
+
+    /**
+     * Count a snapshot whose files are synced or given up on and tell its listener
+     */
+    private void complete(Snapshot snapshot) {
+        if (snapshot.error == null) {
+            written.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+        notify(snapshot.listener, snapshot.error == null ? snapshot.image : null, snapshot.error);
+    }
+
+    private static void notify(Listener listener, File image, String error) {
+        if (listener != null) {
+            listener.done(image, error);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.flirone;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The HTTP side of the server on localhost. Frames need android.graphics.Bitmap, which only exists on a device, so the
+ * MJPEG and WebSocket fan-out isn't covered here.
+ */
+public class MonitoringServerTest {
+    private static final String TOKEN = "0123456789abcdef";
+
+    private MonitoringServer server;
+
+    @Before
+    public void start() throws IOException {
+        server = new MonitoringServer(null, 0, TOKEN, 1);
+        server.start();
+    }
+
+    @After
+    public void stop() {
+        server.stop();
+    }
+
+    @Test
+    public void rejectsRequestsWithoutTheToken() throws IOException {
+        assertTrue(get("/stats", null).startsWith("HTTP/1.1 401 "));
+        assertTrue(get("/stats?token=fedcba9876543210", null).startsWith("HTTP/1.1 401 "));
+    }
+
+    @Test
+    public void servesWithTheTokenAndNoCrossOriginAccess() throws IOException {
+        String index = get("/?token=" + TOKEN, null);
+        assertTrue(index.startsWith("HTTP/1.1 200 "));
+        assertTrue(index.contains("/ws?token=" + TOKEN));
+        assertFalse(index.contains("Access-Control-Allow-Origin"));
+
+        String stats = get("/stats", "Bearer " + TOKEN);
+        assertTrue(stats.startsWith("HTTP/1.1 200 "));
+        assertTrue(stats.endsWith("\r\n\r\n{}"));
+    }
+
+    @Test
+    public void turnsAwayClientsBeyondTheLimit() throws IOException {
+        // Holds the only slot until it sends its request
+        try (Socket idle = connect(InetAddress.getLoopbackAddress())) {
+            assertTrue(idle.isConnected());
+            assertTrue(get("/stats?token=" + TOKEN, null).startsWith("HTTP/1.1 503 "));
+        }
+    }
+
+    @Test
+    public void listensOnLoopbackOnly() throws IOException {
+        InetAddress external = null;
+        for (NetworkInterface network : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            for (InetAddress address : Collections.list(network.getInetAddresses())) {
+                if (network.isUp() && !address.isLoopbackAddress() && address instanceof Inet4Address) {
+                    external = address;
+                }
+            }
+        }
+        Assume.assumeTrue("No network interface besides loopback", external != null);
+        try (Socket socket = connect(external)) {
+            fail("Accepted a connection on " + external + " from " + socket.getLocalAddress());
+        } catch (ConnectException expected) {
+            // Nothing listens there
+        }
+    }
+
+    private Socket connect(InetAddress address) throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(address, server.getPort()), 5000);
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    /**
+     * @return the whole response, the server closes the connection after it
+     */
+    private String get(String target, String authorization) throws IOException {
+        try (Socket socket = connect(InetAddress.getLoopbackAddress())) {
+            String request = "GET " + target + " HTTP/1.1\r\nHost: localhost\r\n"
+                    + (authorization != null ? "Authorization: " + authorization + "\r\n" : "") + "\r\n";
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                response.write(buffer, 0, n);
+            }
+            return new String(response.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.example.flirone;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Microbenchmarks of the core, for the throughput figures given when the classes were added. A plain main without a
+ * harness: every benchmark runs a few warm-up rounds, then prints the last round, so numbers are only comparable on
+ * the same JVM and machine.
+ * <p>
+ * Arguments pick benchmarks by name, none runs them all: export, codec, formatter, fusion, gate, kernels.
+ */
+public final class CoreBenchmark {
+    private static final int ROUNDS = 5;
+    // 160x120, the FLIR One thermal resolution
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    // CameraHandler's text log row
+    private static final char[] LOG_MIN = ": \t Min: ".toCharArray();
+    private static final char[] LOG_MAX = "; Max: ".toCharArray();
+    private static final char[] LOG_AVG = "; Avg: ".toCharArray();
+    private static final char[] LOG_P90 = "; P90: ".toCharArray();
+    private static final char[] LOG_P95 = "; P95: ".toCharArray();
+
+    // Results are folded in here so the JIT can't drop the work
+    private static double sink;
+
+    private CoreBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Keep the classes' own debug logging out of the results
+        Log.setSink((error, tag, message) -> {
+            if (error) {
+                System.err.println("E/" + tag + ": " + message);
+            }
+        });
+        List<String> names = Arrays.asList(args);
+        if (names.isEmpty() || names.contains("export")) {
+            export();
+        }
+        if (names.isEmpty() || names.contains("codec")) {
+            codec();
+        }
+        if (names.isEmpty() || names.contains("formatter")) {
+            formatter();
+        }
+        if (names.isEmpty() || names.contains("fusion")) {
+            fusion();
+        }
+        if (names.isEmpty() || names.contains("gate")) {
+            gate();
+        }
+        if (names.isEmpty() || names.contains("kernels")) {
+            kernels();
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * CSV and NDJSON export of an hour of raw readings at 9 fps, against the same rows written the way
+     * CameraHandler.saveLog writes the text log
+     */
+    private static void export() throws IOException {
+        TimeSeriesStore store = new TimeSeriesStore();
+        long start = System.currentTimeMillis() - TimeSeriesStore.HOUR;
+        Random random = new Random(1);
+        for (int i = 0; i < 9 * 3600; i++) {
+            float avg = 305 + random.nextFloat();
+            store.ingest(start + i * 111L, avg - 2, avg + 3, avg);
+        }
+        TemperatureExporter exporter = new TemperatureExporter();
+        CountingWriter out = new CountingWriter();
+        for (TemperatureExporter.Format format : TemperatureExporter.Format.values()) {
+            double rowsPerSecond = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long t = System.nanoTime();
+                long rows = exporter.export(store, store.raw, format, out);
+                rowsPerSecond = rows / ((System.nanoTime() - t) / 1e9);
+            }
+            System.out.printf("export %s: %.0f rows/s%n", format, rowsPerSecond);
+        }
+
+        ReadingBatch rows = new ReadingBatch(9 * 3600);
+        store.read(store.raw, Long.MIN_VALUE, rows);
+        TemperatureFormatter line = new TemperatureFormatter(160);
+        TimeZone zone = TimeZone.getDefault();
+        double rowsPerSecond = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long t = System.nanoTime();
+            // saveLog's loop without the fsync, percentiles are zero here but formatted all the same
+            try (Writer log = new BufferedWriter(out)) {
+                for (int i = 0; i < rows.size; i++) {
+                    long time = rows.time[i];
+                    line.reset().appendDateTime(time + zone.getOffset(time), ' ')
+                            .append(LOG_MIN).appendTemperature(rows.min[i], TemperatureScale.CELSIUS, true)
+                            .append(LOG_MAX).appendTemperature(rows.max[i], TemperatureScale.CELSIUS, true)
+                            .append(LOG_AVG).appendTemperature(rows.avg[i], TemperatureScale.CELSIUS, true)
+                            .append(LOG_P90).appendTemperature(rows.p90[i], TemperatureScale.CELSIUS, true)
+                            .append(LOG_P95).appendTemperature(rows.p95[i], TemperatureScale.CELSIUS, true)
+                            .append('\n');
+                    line.writeTo(log);
+                }
+            }
+            rowsPerSecond = rows.size / ((System.nanoTime() - t) / 1e9);
+        }
+        System.out.printf("saveLog text log: %.0f rows/s%n", rowsPerSecond);
+        sink += out.chars;
+    }
+
+    /**
+     * Frame codec on a static scene with sensor noise, keyframe every 10 frames
+     */
+    private static void codec() throws IOException {
+        TemperatureMatrixPool pool = new TemperatureMatrixPool(4);
+        Random random = new Random(1);
+        double[] base = new double[WIDTH * HEIGHT];
+        for (int i = 0; i < base.length; i++) {
+            int x = i % WIDTH;
+            int y = i / WIDTH;
+            base[i] = 295 + x / 20.0 + (y > 40 && y < 80 && x > 60 && x < 100 ? 12 : 0);
+        }
+        TemperatureMatrix[] frames = new TemperatureMatrix[100];
+        double[] values = new double[base.length];
+        for (int f = 0; f < frames.length; f++) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = base[i] + (random.nextInt(10) == 0 ? random.nextGaussian() * 0.05 : 0);
+            }
+            frames[f] = new TemperatureMatrix(WIDTH, HEIGHT, null);
+            frames[f].fill(values, f);
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            FrameEncoder encoder = new FrameEncoder(bytes, 10, null);
+            for (TemperatureMatrix frame : frames) {
+                encoder.write(frame);
+            }
+            encoder.flush();
+            FrameDecoder decoder = new FrameDecoder(new ByteArrayInputStream(bytes.toByteArray()));
+            TemperatureMatrix matrix;
+            while ((matrix = decoder.read(pool)) != null) {
+                sink += matrix.get(0, 0);
+                matrix.release();
+            }
+            if (round == ROUNDS - 1) {
+                System.out.printf("codec: ratio %.1f, encode %.0f MB/s, decode %.0f MB/s%n",
+                        encoder.getCompressionRatio(), encoder.getThroughputMBps(), decoder.getThroughputMBps());
+            }
+        }
+    }
+
+    /**
+     * One temperature with suffix, against rounding through double and String concatenation
+     */
+    private static void formatter() {
+        int n = 5000000;
+        double[] kelvin = new double[1024];
+        for (int i = 0; i < kelvin.length; i++) {
+            kelvin[i] = 290 + i * 0.013;
+        }
+        TemperatureFormatter formatter = new TemperatureFormatter(8);
+        long formatterNanos = 0;
+        long concatNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long t = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                formatter.reset().appendTemperature(kelvin[i & 1023], TemperatureScale.CELSIUS, true);
+                sink += formatter.length();
+            }
+            formatterNanos = System.nanoTime() - t;
+            t = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                String text = Math.round(TemperatureScale.CELSIUS.fromKelvin(kelvin[i & 1023]) * 100.0) / 100.0 + " C";
+                sink += text.length();
+            }
+            concatNanos = System.nanoTime() - t;
+        }
+        System.out.printf("formatter: %d ns, String concatenation %d ns per temperature%n", formatterNanos / n,
+                concatNanos / n);
+    }
+
+    /**
+     * Software fusion of a 480x640 thermal image with a 1080x1440 visual one, on one thread and on all cores
+     */
+    private static void fusion() {
+        int width = 480;
+        int height = 640;
+        int visualWidth = 1080;
+        int visualHeight = 1440;
+        int[] original = new int[width * height];
+        for (int i = 0; i < original.length; i++) {
+            original[i] = 0xFF000000 | (i % width * 255 / width) << 16 | 40 << 8 | (i / width * 255 / height);
+        }
+        int[] visual = new int[visualWidth * visualHeight];
+        for (int y = 0; y < visualHeight; y++) {
+            for (int x = 0; x < visualWidth; x++) {
+                // A checkerboard, edges everywhere
+                visual[y * visualWidth + x] = (x / 60 + y / 60) % 2 == 0 ? 0xFFFFFFFF : 0xFF202020;
+            }
+        }
+        int[] thermal = new int[original.length];
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int parallelism : cores > 1 ? new int[]{1, cores} : new int[]{1}) {
+            SoftwareFusion fusion = new SoftwareFusion(parallelism);
+            for (int frame = 0; frame < 250; frame++) {
+                if (frame == 50) {
+                    // Only time the frames after warm-up
+                    fusion.stop();
+                    fusion = new SoftwareFusion(parallelism);
+                }
+                System.arraycopy(original, 0, thermal, 0, thermal.length);
+                fusion.fuse(thermal, width, height, visual, visualWidth, visualHeight,
+                        visualWidth / (float) width, visualHeight / (float) height);
+            }
+            sink += thermal[width * height / 2];
+            System.out.printf("fusion, %d thread%s: %.2f ms per frame%n", parallelism, parallelism == 1 ? "" : "s",
+                    fusion.getAverageMillis());
+            fusion.stop();
+        }
+    }
+
+    /**
+     * Motion gate in a simulated hallway: ambient drift and noise, someone walking through now and then
+     */
+    private static void gate() {
+        TemperatureMatrixPool pool = new TemperatureMatrixPool(2);
+        Random random = new Random(1);
+        double[] values = new double[WIDTH * HEIGHT];
+        MotionGate gate = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            gate = new MotionGate(8, 6, 0.3, TemperatureScale.ZERO_CELSIUS + 32, 2000);
+            for (int f = 0; f < 2400; f++) {
+                long millis = f * 111L;
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = 293.15 + f * 0.0005 + random.nextGaussian() * 0.1;
+                }
+                // Someone walks through for 60 frames out of every 600, clothes at 30 C, the face at 34 C
+                int walking = f % 600 - 300;
+                if (walking >= 0 && walking < 60) {
+                    int center = walking * 2 + 20;
+                    for (int y = 20; y < 110; y++) {
+                        for (int x = center - 10; x < center + 10; x++) {
+                            values[y * WIDTH + x] = y < 40 ? 307.15 : 303.15;
+                        }
+                    }
+                }
+                TemperatureMatrix matrix = pool.acquire(WIDTH, HEIGHT);
+                matrix.fill(values, millis);
+                if (gate.update(matrix, millis)) {
+                    // What face detection and fusion took per frame on the device
+                    gate.spent(8000000);
+                }
+                matrix.release();
+            }
+        }
+        System.out.println("gate: " + gate);
+    }
+
+    /**
+     * Bulk conversion and re-correction of a frame, against per-value calls
+     */
+    private static void kernels() {
+        int n = WIDTH * HEIGHT;
+        float[] kelvin = new float[n];
+        for (int i = 0; i < n; i++) {
+            kelvin[i] = 290f + (i % 500) * 0.05f;
+        }
+        float[] out = new float[n];
+        float[] work = new float[n];
+        RadiometricCorrection from = new RadiometricCorrection(0.95, 293.15, 293.15, 1, 0, 1);
+        RadiometricCorrection to = new RadiometricCorrection(0.98, 295.15, 293.15, 0.99, 0, 1);
+        int reps = 2000;
+        double convertValue = 0;
+        double convertBulk = 0;
+        double correctValue = 0;
+        double correctBulk = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long t = System.nanoTime();
+            for (int r = 0; r < reps; r++) {
+                for (int i = 0; i < n; i++) {
+                    out[i] = (float) TemperatureScale.FAHRENHEIT.fromKelvin(kelvin[i]);
+                }
+            }
+            convertValue = (System.nanoTime() - t) / 1e3 / reps;
+            t = System.nanoTime();
+            for (int r = 0; r < reps; r++) {
+                TemperatureKernels.fromKelvin(kelvin, 0, out, 0, n, TemperatureScale.FAHRENHEIT);
+            }
+            convertBulk = (System.nanoTime() - t) / 1e3 / reps;
+            t = System.nanoTime();
+            for (int r = 0; r < reps / 4; r++) {
+                for (int i = 0; i < n; i++) {
+                    out[i] = (float) to.recorrect(kelvin[i], from);
+                }
+            }
+            correctValue = (System.nanoTime() - t) / 1e3 / (reps / 4);
+            t = System.nanoTime();
+            for (int r = 0; r < reps / 4; r++) {
+                System.arraycopy(kelvin, 0, work, 0, n);
+                to.recorrect(work, 0, n, from);
+            }
+            correctBulk = (System.nanoTime() - t) / 1e3 / (reps / 4);
+            sink += out[7] + work[7];
+        }
+        double error = 0;
+        for (int i = 0; i < n; i++) {
+            error = Math.max(error, Math.abs(work[i] - to.recorrect(kelvin[i], from)));
+        }
+        System.out.printf("kernels, %dx%d frame: convert %.1f us bulk, %.1f us per value; re-correct %.1f us bulk, "
+                + "%.1f us per value, max error %.1e K%n", WIDTH, HEIGHT, convertBulk, convertValue, correctBulk,
+                correctValue, error);
+    }
+
+    /**
+     * Counts what an export writes instead of keeping it
+     */
+    private static class CountingWriter extends Writer {
+        long chars;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            chars += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.flirone;
+
+/**
+ * Compensates the drift of the readings as the room and the camera warm up, by watching a reference region with a
+ * known or assumed constant temperature, like a blackbody or a patch of wall.
+ * <p>
+ * Every frame the reference region is measured and the offset that would bring it back to its reference temperature
+ * is folded into a rolling model of the offset and its trend (double exponential smoothing) with a time constant of
+ * {@link #TIME_CONSTANT_MILLIS}, so the noise of single frames averages out while a steady drift is followed without
+ * lag. Every new offset goes to a {@link Listener}, which is expected to add it to every temperature as the next frames
+ * are read, so the stream never stops for it.
+ * <p>
+ * Frames where the reference looks disturbed, because it is not uniform or moved far away from the current model
+ * (someone walking in front of it), are rejected and counted. Updates don't allocate.
+ */
+class DriftCompensator {
+    interface Listener {
+        /**
+         * @param kelvin offset to add to every temperature from now on
+         */
+        void offsetChanged(float kelvin);
+    }
+
+    private static final String TAG = "DriftCompensator";
+    private static final long TIME_CONSTANT_MILLIS = 60_000;
+    // Largest spread, in Kelvin, of a reference region that is taken to be uniform
+    private static final double MAX_SPREAD = 2.0;
+    // Largest difference, in Kelvin, between one frame and the model before the frame is rejected
+    private static final double MAX_JUMP = 1.5;
+    // Frames off the model in a row before the model is restarted from the current reading
+    private static final int MAX_REJECTED_IN_A_ROW = 300;
+    private static final int REPORT_INTERVAL = 500;
+
+    private final RoiStatistics stats = new RoiStatistics();
+    private final Listener listener;
+    private final double left;
+    private final double top;
+    private final double width;
+    private final double height;
+    // Temperature the reference should read, NaN until taken from the first reading
+    private double referenceKelvin;
+
+    private double offset;
+    private double rate;
+    private long lastMillis;
+    private double lastRaw = Double.NaN;
+    private double maxAbsOffset;
+    private long samples;
+    private long rejected;
+    private int rejectedInARow;
+
+    /**
+     * @param left            reference region in thermal pixels
+     * @param referenceKelvin temperature of the reference, or NaN to hold the reference at its first reading
+     * @param listener        told about every new offset, on the thread calling {@link #update}
+     */
+    DriftCompensator(double left, double top, double width, double height, double referenceKelvin, Listener listener) {
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+        this.referenceKelvin = referenceKelvin;
+        this.listener = listener;
+    }
+
+    /**
+     * Measure the reference region of a frame and update the offset
+     *
+     * @param matrix  temperatures of the frame, with {@code applied} already added
+     * @param sums    summed-area table built for the matrix
+     * @param applied offset that was added to the matrix as it was read
+     */
+    synchronized void update(TemperatureMatrix matrix, SummedAreaTable sums, double applied, long millis) {
+        if (!stats.compute(matrix, sums, left, top, width, height)) {
+            return;
+        }
+        double raw = stats.avg - applied;
+        lastRaw = raw;
+        if (stats.max - stats.min > MAX_SPREAD) {
+            // Something is in front of the reference
+            rejected++;
+            return;
+        }
+        if (Double.isNaN(referenceKelvin)) {
+            referenceKelvin = raw;
+        }
+        double target = referenceKelvin - raw;
+        boolean first = samples == 0;
+        if (!first && Math.abs(target - offset) > MAX_JUMP) {
+            rejected++;
+            if (++rejectedInARow < MAX_REJECTED_IN_A_ROW) {
+                return;
+            }
+            // A uniform reference that stays this far off is a real step, e.g. after a shutter calibration
+            Log.d(TAG, "Reference off for " + rejectedInARow + " frames, restarting the model");
+            first = true;
+        }
+        rejectedInARow = 0;
+        if (first) {
+            offset = target;
+            rate = 0;
+        } else {
+            long elapsed = Math.max(1, millis - lastMillis);
+            double alpha = 1 - Math.exp(-(double) elapsed / TIME_CONSTANT_MILLIS);
+            double previous = offset;
+            // Follow the trend too, so steady warm up doesn't leave the offset lagging behind
+            double predicted = offset + rate * elapsed / 60_000;
+            offset = predicted + alpha * (target - predicted);
+            // Kelvin per minute, smoothed the same way
+            rate += alpha * ((offset - previous) * 60_000 / elapsed - rate);
+        }
+        lastMillis = millis;
+        maxAbsOffset = Math.max(maxAbsOffset, Math.abs(offset));
+        samples++;
+        listener.offsetChanged((float) offset);
+        if (samples % REPORT_INTERVAL == 0) {
+            Log.d(TAG, toString());
+        }
+    }
+
+    /**
+     * Stop compensating, the readings go back to the plain calibration
+     */
+    void stop() {
+        listener.offsetChanged(0);
+        Log.d(TAG, "stop: " + this);
+    }
+
+    synchronized double getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return how fast the offset currently changes, in Kelvin per minute
+     */
+    synchronized double getRate() {
+        return rate;
+    }
+
+    synchronized double getMaxAbsOffset() {
+        return maxAbsOffset;
+    }
+
+    synchronized double getReferenceKelvin() {
+        return referenceKelvin;
+    }
+
+    /**
+     * @return the last reading of the reference before compensation, in Kelvin
+     */
+    synchronized double getLastRaw() {
+        return lastRaw;
+    }
+
+    synchronized long getSamples() {
+        return samples;
+    }
+
+    synchronized long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "drift offset " + Math.round(offset * 1000) / 1000.0 + " K, rate " + Math.round(rate * 1000) / 1000.0
+                + " K/min, max " + Math.round(maxAbsOffset * 1000) / 1000.0 + " K, reference "
+                + Math.round(referenceKelvin * 100) / 100.0 + " K, " + samples + " samples, " + rejected + " rejected";
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.flirone;
+
+/**
+ * Shared definitions of the radiometric frame format written by {@link FrameEncoder} and read by {@link FrameDecoder}.
+ * <p>
+ * A stream starts with {@link #MAGIC}, a version and the radiometric correction the temperatures were recorded with:
+ * <pre>
+ *   byte 1, then double emissivity, reflected K, atmospheric K, transmission, optics K, optics transmission
+ * </pre>
+ * or byte 0 if it isn't known. Version 1 streams have no correction. Frames follow, every frame is
+ * <pre>
+ *   byte type (KEYFRAME or DELTA), long timestamp, int width, int height, int payload length, payload
+ * </pre>
+ * Temperatures are quantized to unsigned 16-bit hundredths of a Kelvin (0 to 655.35 K). A keyframe stores each value
+ * as the difference to its left neighbour, a delta frame as the difference to the same pixel of the previous keyframe,
+ * so any frame can be decoded from its keyframe alone. Residuals are zigzag encoded and written as varints, where a
+ * token with the low bit set stands for a run of zero residuals instead of a single value.
+ */
+final class FrameCodec {
+    static final int MAGIC = 0x54465231; // "TFR1"
+    static final int VERSION = 2;
+    // Streams before the recorded correction, still read
+    static final int VERSION_WITHOUT_CORRECTION = 1;
+    static final byte KEYFRAME = 'K';
+    static final byte DELTA = 'D';
+    static final String EXTENSION = ".tfr";
+
+    // Largest frame accepted, far above any camera resolution, so a corrupt header can't ask for gigabytes
+    static final int MAX_VALUES = 4096 * 4096;
+
+    private static final double SCALE = 100.0;
+    static final int MAX_QUANTIZED = 0xFFFF;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * @return the largest payload the encoder writes for a frame of n values: a residual of 17 zigzag bits, shifted
+     * left for the run flag, takes 3 varint bytes
+     */
+    static int maxPayload(int n) {
+        return 3 * n;
+    }
+
+    static int quantize(float kelvin) {
+        long q = Math.round(kelvin * SCALE);
+        return (int) Math.max(0, Math.min(MAX_QUANTIZED, q));
+    }
+
+    static float dequantize(int q) {
+        return (float) (q / SCALE);
+    }
+
+    static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.flirone;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming decoder for frames written by {@link FrameEncoder}, see {@link FrameCodec} for the format.
+ */
+class FrameDecoder {
+    private final DataInputStream in;
+    private int[] keyframe = new int[0];
+    private byte[] payload = new byte[0];
+    private int width = -1;
+    private int height = -1;
+    private final RadiometricCorrection correction;
+
+    // Metrics
+    private long frames;
+    private long rawBytes;
+    private long decodeNanos;
+
+    FrameDecoder(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        if (this.in.readInt() != FrameCodec.MAGIC) {
+            throw new IOException("Not a radiometric frame stream");
+        }
+        int version = this.in.readInt();
+        if (version == FrameCodec.VERSION_WITHOUT_CORRECTION) {
+            correction = null;
+        } else if (version == FrameCodec.VERSION) {
+            correction = this.in.readBoolean() ? readCorrection(this.in) : null;
+        } else {
+            throw new IOException("Unsupported frame stream version " + version);
+        }
+    }
+
+    private static RadiometricCorrection readCorrection(DataInputStream in) throws IOException {
+        double emissivity = in.readDouble();
+        double reflectedKelvin = in.readDouble();
+        double atmosphericKelvin = in.readDouble();
+        double transmission = in.readDouble();
+        double opticsKelvin = in.readDouble();
+        double opticsTransmission = in.readDouble();
+        // Negated so NaN is rejected too
+        if (!(emissivity > 0 && emissivity <= 1 && transmission > 0 && transmission <= 1 && opticsTransmission > 0
+                && opticsTransmission <= 1 && reflectedKelvin >= 0 && atmosphericKelvin >= 0 && opticsKelvin >= 0)) {
+            throw new IOException("Corrupt radiometric correction in the header");
+        }
+        return new RadiometricCorrection(emissivity, reflectedKelvin, atmosphericKelvin, transmission, opticsKelvin,
+                opticsTransmission);
+    }
+
+    /**
+     * @return the correction the temperatures were recorded with, null if the stream doesn't say
+     */
+    RadiometricCorrection getCorrection() {
+        return correction;
+    }
+
+    /**
+     * Decode the next frame into a matrix from the pool
+     *
+     * @return a matrix holding one reference the caller must release, or null at the end of the stream
+     */
+    TemperatureMatrix read(TemperatureMatrixPool pool) throws IOException {
+        int type;
+        try {
+            type = in.readByte();
+        } catch (EOFException e) {
+            return null;
+        }
+        long start = System.nanoTime();
+        long timestamp = in.readLong();
+        int w = in.readInt();
+        int h = in.readInt();
+        int length = in.readInt();
+        if (w <= 0 || h <= 0 || length < 0 || (long) w * h > FrameCodec.MAX_VALUES
+                || length > FrameCodec.maxPayload(w * h)) {
+            throw new IOException("Corrupt frame header: " + w + "x" + h + ", " + length + " bytes");
+        }
+        boolean key = type == FrameCodec.KEYFRAME;
+        if (!key && (type != FrameCodec.DELTA || w != width || h != height)) {
+            throw new IOException("Delta frame without matching keyframe");
+        }
+        if (payload.length < length) {
+            payload = new byte[length];
+        }
+        in.readFully(payload, 0, length);
+
+        int n = w * h;
+        if (key && keyframe.length < n) {
+            keyframe = new int[n];
+        }
+        width = w;
+        height = h;
+
+        TemperatureMatrix matrix = pool.acquire(w, h);
+        try {
+            decode(matrix, key, n, length);
+        } catch (IOException e) {
+            matrix.release();
+            throw e;
+        }
+        matrix.filled(timestamp);
+
+        frames++;
+        rawBytes += 4L * n;
+        decodeNanos += System.nanoTime() - start;
+        return matrix;
+    }
+
+    /**
+     * Decode the payload of a frame into the matrix, it has to hold exactly n values
+     */
+    private void decode(TemperatureMatrix matrix, boolean key, int n, int length) throws IOException {
+        int w = matrix.width;
+        int pos = 0;
+        int i = 0;
+        int x = 0;
+        int y = 0;
+        int previous = 0;
+        while (i < n) {
+            // Read a varint token, it has to end within the payload and fit in an int
+            int token = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (pos >= length || shift > 28) {
+                    throw new IOException("Truncated or corrupt varint at " + pos + " of " + length + " bytes");
+                }
+                b = payload[pos++];
+                token |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            int run = (token & 1) != 0 ? token >>> 1 : 1;
+            int residual = (token & 1) != 0 ? 0 : FrameCodec.unzigzag(token >>> 1);
+            if (run <= 0 || run > n - i) {
+                throw new IOException("Corrupt run of " + run + " at value " + i + " of " + n);
+            }
+            for (int r = 0; r < run; r++, i++) {
+                int predicted = key ? previous : keyframe[i];
+                int q = predicted + residual;
+                if (q < 0 || q > FrameCodec.MAX_QUANTIZED) {
+                    throw new IOException("Corrupt value at " + i + " of " + n);
+                }
+                if (key) {
+                    keyframe[i] = q;
+                    previous = q;
+                }
+                matrix.set(x, y, FrameCodec.dequantize(q));
+                if (++x == w) {
+                    x = 0;
+                    y++;
+                }
+            }
+        }
+        if (pos != length) {
+            throw new IOException((length - pos) + " bytes left over after the last value");
+        }
+    }
+
+    long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return raw megabytes decoded per second of decoding time
+     */
+    double getThroughputMBps() {
+        return decodeNanos == 0 ? 0 : rawBytes / (1024.0 * 1024.0) / (decodeNanos / 1e9);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.flirone;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Demand-driven flow control between the camera stream and whoever consumes its frames, like request(n) in Reactive
+ * Streams.
+ * <p>
+ * The consumer {@link #request requests} as many frames as it can take. The stream only takes a frame from the SDK when
+ * it can {@link #tryTake take} one of those requests, so a frame nobody asked for is dropped before it is decoded or
+ * turned into bitmaps. A stage that drops a frame it was given hands its request back, so the stream never stalls.
+ * <p>
+ * Drops are counted per stage.
+ */
+class FrameDemand {
+    // Not taken from the SDK, there was no demand
+    static final int SOURCE = 0;
+    // Taken, but processing failed before it reached the consumer
+    static final int PROCESSING = 1;
+    // Processed, but the display queue was full
+    static final int DISPLAY = 2;
+    private static final String[] STAGES = {"source", "processing", "display"};
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLongArray dropped = new AtomicLongArray(STAGES.length);
+    private final AtomicLong taken = new AtomicLong();
+
+    /**
+     * Ask for more frames
+     *
+     * @param n number of additional frames the consumer can take
+     */
+    void request(long n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("request(" + n + ")");
+        }
+        long current;
+        long next;
+        do {
+            current = requested.get();
+            // Saturate, Long.MAX_VALUE means unbounded
+            next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!requested.compareAndSet(current, next));
+    }
+
+    /**
+     * Take one requested frame
+     *
+     * @return false if there is no demand, the frame should be dropped and was counted
+     */
+    boolean tryTake() {
+        long current;
+        do {
+            current = requested.get();
+            if (current <= 0) {
+                dropped.incrementAndGet(SOURCE);
+                return false;
+            }
+        } while (current != Long.MAX_VALUE && !requested.compareAndSet(current, current - 1));
+        taken.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Count a frame a stage dropped after it was taken and hand its request back
+     *
+     * @param stage {@link #PROCESSING} or {@link #DISPLAY}
+     */
+    void drop(int stage) {
+        dropped.incrementAndGet(stage);
+        request(1);
+    }
+
+    /**
+     * Forget outstanding requests, e.g. when the stream stops
+     */
+    void reset() {
+        requested.set(0);
+    }
+
+    long getDropped(int stage) {
+        return dropped.get(stage);
+    }
+
+    long getTaken() {
+        return taken.get();
+    }
+
+    long getRequested() {
+        return requested.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("taken ").append(taken.get()).append(", dropped");
+        for (int i = 0; i < STAGES.length; i++) {
+            text.append(' ').append(STAGES[i]).append(' ').append(dropped.get(i));
+        }
+        return text.toString();
+    }
+}
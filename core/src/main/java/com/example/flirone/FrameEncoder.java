@@ -0,0 +1,146 @@
+package com.example.flirone;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.FloatBuffer;
+
+/**
+ * Streaming encoder for {@link TemperatureMatrix} frames, see {@link FrameCodec} for the format.
+ * Keeps the raw and encoded byte counts and the time spent encoding so the compression ratio and throughput of a
+ * session can be reported.
+ */
+class FrameEncoder {
+    private final DataOutputStream out;
+    private final int keyframeInterval;
+    private int[] keyframe = new int[0];
+    private int[] current = new int[0];
+    private byte[] payload = new byte[0];
+    private int payloadLength;
+    private int width = -1;
+    private int height = -1;
+    private int sinceKeyframe;
+
+    // Metrics
+    private long frames;
+    private long rawBytes;
+    private long encodedBytes;
+    private long encodeNanos;
+
+    /**
+     * @param out              where the frames are written, the caller closes it
+     * @param keyframeInterval a keyframe is written every this many frames, 1 for keyframes only
+     * @param correction       the correction the temperatures were calculated with, or null if it isn't known
+     */
+    FrameEncoder(OutputStream out, int keyframeInterval, RadiometricCorrection correction) throws IOException {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("keyframeInterval must be at least 1");
+        }
+        this.out = new DataOutputStream(out);
+        this.keyframeInterval = keyframeInterval;
+        this.out.writeInt(FrameCodec.MAGIC);
+        this.out.writeInt(FrameCodec.VERSION);
+        this.out.writeBoolean(correction != null);
+        if (correction != null) {
+            this.out.writeDouble(correction.emissivity);
+            this.out.writeDouble(correction.reflectedKelvin);
+            this.out.writeDouble(correction.atmosphericKelvin);
+            this.out.writeDouble(correction.transmission);
+            this.out.writeDouble(correction.opticsKelvin);
+            this.out.writeDouble(correction.opticsTransmission);
+        }
+    }
+
+    /**
+     * Encode and write one frame
+     */
+    void write(TemperatureMatrix matrix) throws IOException {
+        long start = System.nanoTime();
+        int n = matrix.width * matrix.height;
+        boolean key = sinceKeyframe == 0 || matrix.width != width || matrix.height != height;
+        if (current.length < n) {
+            current = new int[n];
+            keyframe = new int[n];
+            payload = new byte[FrameCodec.maxPayload(n)];
+        }
+        width = matrix.width;
+        height = matrix.height;
+
+        FloatBuffer data = matrix.buffer();
+        for (int y = 0; y < height; y++) {
+            int row = y * matrix.stride;
+            int dst = y * width;
+            for (int x = 0; x < width; x++) {
+                current[dst + x] = FrameCodec.quantize(data.get(row + x));
+            }
+        }
+
+        payloadLength = 0;
+        int zeros = 0;
+        for (int i = 0; i < n; i++) {
+            int predicted = key ? (i > 0 ? current[i - 1] : 0) : keyframe[i];
+            int residual = FrameCodec.zigzag(current[i] - predicted);
+            if (residual == 0) {
+                zeros++;
+                continue;
+            }
+            if (zeros > 0) {
+                writeVarint((zeros << 1) | 1);
+                zeros = 0;
+            }
+            writeVarint(residual << 1);
+        }
+        if (zeros > 0) {
+            writeVarint((zeros << 1) | 1);
+        }
+
+        if (key) {
+            int[] swap = keyframe;
+            keyframe = current;
+            current = swap;
+        }
+        sinceKeyframe = (sinceKeyframe + 1) % keyframeInterval;
+
+        out.writeByte(key ? FrameCodec.KEYFRAME : FrameCodec.DELTA);
+        out.writeLong(matrix.timestamp());
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(payloadLength);
+        out.write(payload, 0, payloadLength);
+
+        frames++;
+        rawBytes += 4L * n;
+        encodedBytes += 21 + payloadLength;
+        encodeNanos += System.nanoTime() - start;
+    }
+
+    private void writeVarint(int v) {
+        while ((v & ~0x7F) != 0) {
+            payload[payloadLength++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        payload[payloadLength++] = (byte) v;
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return size of the float frames divided by the size written
+     */
+    double getCompressionRatio() {
+        return encodedBytes == 0 ? 0 : (double) rawBytes / encodedBytes;
+    }
+
+    /**
+     * @return raw megabytes encoded per second of encoding time
+     */
+    double getThroughputMBps() {
+        return encodeNanos == 0 ? 0 : rawBytes / (1024.0 * 1024.0) / (encodeNanos / 1e9);
+    }
+}
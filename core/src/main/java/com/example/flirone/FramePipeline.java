@@ -0,0 +1,311 @@
+package com.example.flirone;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the processing of every camera frame as a graph of stages.
+ * <p>
+ * Each stage declares the slots of the frame it reads and writes, as bit masks defined by the app, and where it runs:
+ * <ul>
+ * <li>{@link Affinity#CAMERA} stages run on the camera thread, in the order they were added, while what the camera
+ * handed over is still valid. They may only depend on other camera stages.</li>
+ * <li>{@link Affinity#WORKER} stages each have their own thread and queue. A worker stage is queued as soon as the
+ * stages that last wrote its inputs are done with the frame, so stages that don't depend on each other, like face
+ * detection and the guide statistics, run at the same time, and while one frame is being drawn the next is already
+ * being measured. Because every stage has one thread, it sees frames in the order they came in and can keep state from
+ * frame to frame.</li>
+ * </ul>
+ * When a stage throws, the stages that depend on it, directly or not, are skipped for that frame; the others still run.
+ * Once every stage is done with a frame the {@link Listener} is told and the frame goes back to the pool.
+ * <p>
+ * Every stage counts the frames it processed, failed and skipped, the time it took and the frames waiting in its queue.
+ */
+class FramePipeline<F extends StagedFrame> {
+    private static final String TAG = "FramePipeline";
+    // Frames between two metrics reports in the log
+    private static final int REPORT_INTERVAL = 100;
+    private static final int MAX_STAGES = 31;
+
+    enum Affinity {CAMERA, WORKER}
+
+    interface Processor<F> {
+        void process(F frame) throws Exception;
+    }
+
+    interface Listener<F> {
+        /**
+         * Every stage is done with the frame, called on the thread of the last stage
+         */
+        void finished(F frame);
+    }
+
+    interface Factory<F> {
+        /**
+         * @param stages number of stages the frame has to keep state for
+         */
+        F create(int stages);
+    }
+
+    /**
+     * A stage and what it has done so far
+     */
+    static class Stage<F> {
+        final String name;
+        final Affinity affinity;
+        final int inputs;
+        final int outputs;
+        final Processor<F> processor;
+        final int index;
+
+        // Stages that have to finish first, as a bit mask of indices, and how many of them are workers
+        int dependencies;
+        int workerDependencies;
+        int[] dependents = new int[0];
+        ThreadPoolExecutor executor;
+
+        final AtomicLong processed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicLong nanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        Stage(String name, Affinity affinity, int inputs, int outputs, Processor<F> processor, int index) {
+            this.name = name;
+            this.affinity = affinity;
+            this.inputs = inputs;
+            this.outputs = outputs;
+            this.processor = processor;
+            this.index = index;
+        }
+
+        int queued() {
+            return executor != null ? executor.getQueue().size() : 0;
+        }
+
+        @Override
+        public String toString() {
+            long count = processed.get();
+            return name + ": " + count + " frames, " + (count > 0 ? nanos.get() / count / 1000 : 0) + " us avg, "
+                    + maxNanos.get() / 1000 + " us max, " + failed.get() + " failed, " + skipped.get() + " skipped, "
+                    + queued() + " queued";
+        }
+    }
+
+    private final List<Stage<F>> stages = new ArrayList<>();
+    private final ArrayBlockingQueue<F> pool;
+    private final Factory<F> factory;
+    private final Listener<F> listener;
+    private long sequence;
+    private boolean started;
+
+    /**
+     * @param maxFrames how many frames are kept for reuse, normally the number of frames that can be in flight
+     * @param factory   creates frames when none is free for reuse
+     */
+    FramePipeline(int maxFrames, Factory<F> factory, Listener<F> listener) {
+        this.pool = new ArrayBlockingQueue<>(maxFrames);
+        this.factory = factory;
+        this.listener = listener;
+    }
+
+    /**
+     * Add a stage after the ones added so far
+     *
+     * @param inputs  slots the stage reads
+     * @param outputs slots the stage writes, later stages reading them wait for it
+     */
+    FramePipeline<F> add(String name, Affinity affinity, int inputs, int outputs, Processor<F> processor) {
+        if (started) {
+            throw new IllegalStateException("Stages must be added before the pipeline starts");
+        }
+        if (stages.size() == MAX_STAGES) {
+            throw new IllegalStateException("Too many stages");
+        }
+        Stage<F> stage = new Stage<>(name, affinity, inputs, outputs, processor, stages.size());
+        // Depend on the last stage writing each input
+        for (int slot = 1; slot != 0 && slot <= inputs; slot <<= 1) {
+            if ((inputs & slot) == 0) {
+                continue;
+            }
+            for (int i = stages.size() - 1; i >= 0; i--) {
+                Stage<F> writer = stages.get(i);
+                if ((writer.outputs & slot) != 0) {
+                    if (affinity == Affinity.CAMERA && writer.affinity == Affinity.WORKER) {
+                        throw new IllegalStateException(name + " runs on the camera thread but depends on " + writer.name);
+                    }
+                    stage.dependencies |= 1 << i;
+                    break;
+                }
+            }
+        }
+        for (Stage<F> writer : stages) {
+            if ((stage.dependencies & (1 << writer.index)) != 0 && writer.affinity == Affinity.WORKER) {
+                stage.workerDependencies++;
+                int[] dependents = new int[writer.dependents.length + 1];
+                System.arraycopy(writer.dependents, 0, dependents, 0, writer.dependents.length);
+                dependents[writer.dependents.length] = stage.index;
+                writer.dependents = dependents;
+            }
+        }
+        stages.add(stage);
+        return this;
+    }
+
+    /**
+     * Start the worker threads, no stages can be added afterwards
+     */
+    FramePipeline<F> start() {
+        for (Stage<F> stage : stages) {
+            if (stage.affinity == Affinity.WORKER) {
+                String name = "pipeline-" + stage.name;
+                stage.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                        runnable -> new Thread(runnable, name));
+            }
+        }
+        started = true;
+        return this;
+    }
+
+    /**
+     * Let the queued frames finish and stop the worker threads
+     */
+    void stop() {
+        for (Stage<F> stage : stages) {
+            if (stage.executor != null) {
+                stage.executor.shutdown();
+            }
+        }
+        Log.d(TAG, "stop: " + this);
+    }
+
+    /**
+     * Get a frame to fill, from the pool if one is free
+     */
+    F obtain() {
+        F frame = pool.poll();
+        if (frame == null) {
+            frame = factory.create(stages.size());
+        }
+        frame.reset(++sequence);
+        return frame;
+    }
+
+    /**
+     * Run the camera stages for a frame on the calling thread, then hand it to the workers
+     */
+    void submit(F frame) {
+        int workers = 0;
+        for (Stage<F> stage : stages) {
+            if (stage.affinity == Affinity.WORKER) {
+                frame.pending.set(stage.index, stage.workerDependencies);
+                workers++;
+            }
+        }
+        frame.remaining.set(workers);
+        for (Stage<F> stage : stages) {
+            if (stage.affinity == Affinity.CAMERA) {
+                run(stage, frame);
+            }
+        }
+        frame.cameraStagesDone();
+        if (workers == 0) {
+            finish(frame);
+            return;
+        }
+        for (Stage<F> stage : stages) {
+            if (stage.affinity == Affinity.WORKER && stage.workerDependencies == 0) {
+                schedule(stage, frame);
+            }
+        }
+        if (frame.sequence % REPORT_INTERVAL == 0) {
+            Log.d(TAG, toString());
+        }
+    }
+
+    List<Stage<F>> getStages() {
+        return stages;
+    }
+
+    private void schedule(Stage<F> stage, F frame) {
+        try {
+            stage.executor.execute(() -> {
+                run(stage, frame);
+                done(stage, frame);
+            });
+        } catch (RejectedExecutionException e) {
+            // Stopped, skip the rest of the frame
+            stage.skipped.incrementAndGet();
+            markFailed(stage, frame);
+            done(stage, frame);
+        }
+    }
+
+    private void run(Stage<F> stage, F frame) {
+        if ((frame.failedStages.get() & stage.dependencies) != 0) {
+            // Skipped stages count as failed, so their dependents are skipped too
+            markFailed(stage, frame);
+            stage.skipped.incrementAndGet();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            stage.processor.process(frame);
+        } catch (Exception e) {
+            Log.e(TAG, stage.name + " failed on frame " + frame.sequence + ": " + e);
+            if (frame.error == null) {
+                frame.error = e;
+            }
+            markFailed(stage, frame);
+            stage.failed.incrementAndGet();
+        }
+        long took = System.nanoTime() - start;
+        stage.processed.incrementAndGet();
+        stage.nanos.addAndGet(took);
+        long max;
+        while (took > (max = stage.maxNanos.get()) && !stage.maxNanos.compareAndSet(max, took)) {
+            // Retry
+        }
+    }
+
+    private static void markFailed(Stage<?> stage, StagedFrame frame) {
+        int failed;
+        do {
+            failed = frame.failedStages.get();
+        } while (!frame.failedStages.compareAndSet(failed, failed | 1 << stage.index));
+    }
+
+    private void done(Stage<F> stage, F frame) {
+        for (int dependent : stage.dependents) {
+            if (frame.pending.decrementAndGet(dependent) == 0) {
+                schedule(stages.get(dependent), frame);
+            }
+        }
+        if (frame.remaining.decrementAndGet() == 0) {
+            finish(frame);
+        }
+    }
+
+    private void finish(F frame) {
+        try {
+            listener.finished(frame);
+        } finally {
+            pool.offer(frame);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("pipeline, ").append(sequence).append(" frames");
+        for (Stage<F> stage : stages) {
+            text.append("\n  ").append(stage);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.flirone;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the temperature matrices of the stream to a {@link FrameCodec} file on a background thread.
+ * The stream thread only retains the matrix and queues it; when the writer falls behind and the queue is full
+ * the frame is dropped rather than blocking the stream.
+ */
+class FrameRecorder {
+    private static final String TAG = "FrameRecorder";
+    private static final int QUEUE_SIZE = 8;
+
+    private final File file;
+    private final FileOutputStream fileOut;
+    private final FrameEncoder encoder;
+    private final ArrayBlockingQueue<TemperatureMatrix> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Thread writer;
+    private volatile boolean running = true;
+    final AtomicLong framesDropped = new AtomicLong();
+
+    /**
+     * Start recording
+     *
+     * @param file             file to write, overwritten if it exists
+     * @param keyframeInterval a keyframe is written every this many frames
+     * @param correction       the correction the stream's temperatures are calculated with, or null if it isn't known
+     */
+    FrameRecorder(File file, int keyframeInterval, RadiometricCorrection correction) throws IOException {
+        this.file = file;
+        fileOut = new FileOutputStream(file);
+        encoder = new FrameEncoder(new BufferedOutputStream(fileOut, 64 * 1024), keyframeInterval, correction);
+        writer = new Thread(this::writeLoop, TAG);
+        writer.start();
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Queue a frame for recording, called on the stream thread
+     */
+    void record(TemperatureMatrix matrix) {
+        if (!running) {
+            return;
+        }
+        matrix.retain();
+        if (!queue.offer(matrix)) {
+            matrix.release();
+            framesDropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Write what is still queued, close the file and log the compression ratio and throughput of the session
+     */
+    void stop() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (running || !queue.isEmpty()) {
+                TemperatureMatrix matrix = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (matrix == null) {
+                    continue;
+                }
+                try {
+                    encoder.write(matrix);
+                } finally {
+                    matrix.release();
+                }
+            }
+            encoder.flush();
+            fileOut.getFD().sync();
+        } catch (IOException | InterruptedException e) {
+            Log.e(TAG, "Recording to " + file + " failed: " + e);
+        } finally {
+            running = false;
+            TemperatureMatrix matrix;
+            while ((matrix = queue.poll()) != null) {
+                matrix.release();
+            }
+            try {
+                fileOut.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        Log.d(TAG, "Recorded " + encoder.getFrames() + " frames to " + file.getName()
+                + ", ratio " + encoder.getCompressionRatio() + ", " + encoder.getThroughputMBps() + " MB/s, "
+                + framesDropped.get() + " dropped");
+    }
+}
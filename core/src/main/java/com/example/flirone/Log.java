@@ -0,0 +1,29 @@
+package com.example.flirone;
+
+/**
+ * Logging for the core, with the same calls as android.util.Log so code reads the same on both sides.
+ * <p>
+ * Messages go to a {@link Sink}, standard error until the app installs one that forwards to android.util.Log.
+ */
+final class Log {
+    interface Sink {
+        void log(boolean error, String tag, String message);
+    }
+
+    private static volatile Sink sink = (error, tag, message) -> System.err.println((error ? "E/" : "D/") + tag + ": " + message);
+
+    private Log() {
+    }
+
+    static void setSink(Sink sink) {
+        Log.sink = sink;
+    }
+
+    static void d(String tag, String message) {
+        sink.log(false, tag, message);
+    }
+
+    static void e(String tag, String message) {
+        sink.log(true, tag, message);
+    }
+}
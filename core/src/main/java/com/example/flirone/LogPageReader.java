@@ -0,0 +1,176 @@
+package com.example.flirone;
+
+/**
+ * Random access, page at a time view of a {@link TimeSeriesStore} tier for the log viewer.
+ * <p>
+ * {@link #refresh} scans the tier once and remembers the time of the first entry of every page of entries whose
+ * average is at or above the threshold. Rows are then loaded a page at a time, starting from that checkpoint, into a
+ * small fixed set of cached pages, so memory stays the same however much history the tier holds.
+ * <p>
+ * Positions are stable until the next refresh: readings that come in afterwards are not shown, and pages whose
+ * readings expired in the meantime come back shorter.
+ */
+class LogPageReader {
+    static final int PAGE_SIZE = 64;
+    private static final int CACHED_PAGES = 4;
+    private static final int SCAN_BATCH = 4096;
+
+    private final TimeSeriesStore store;
+    private RollupTier tier;
+    private float threshold = -Float.MAX_VALUE;
+
+    private long[] checkpoints = new long[16];
+    private int pageCount;
+    private int count;
+    private long lastTime;
+
+    private final ReadingBatch scan = new ReadingBatch(SCAN_BATCH);
+    private final ReadingBatch[] pages = new ReadingBatch[CACHED_PAGES];
+    private final int[] pageIndex = new int[CACHED_PAGES];
+    private final long[] pageUsed = new long[CACHED_PAGES];
+    private long useCounter;
+
+    LogPageReader(TimeSeriesStore store, RollupTier tier) {
+        this.store = store;
+        this.tier = tier;
+        for (int i = 0; i < CACHED_PAGES; i++) {
+            pages[i] = new ReadingBatch(PAGE_SIZE);
+            pageIndex[i] = -1;
+        }
+    }
+
+    void setTier(RollupTier tier) {
+        this.tier = tier;
+    }
+
+    RollupTier getTier() {
+        return tier;
+    }
+
+    /**
+     * Only show entries whose average is at or above the threshold
+     *
+     * @param kelvin threshold in Kelvin, -Float.MAX_VALUE to show everything
+     */
+    void setThreshold(float kelvin) {
+        threshold = kelvin;
+    }
+
+    float getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Rebuild the page checkpoints from the current contents of the tier
+     */
+    void refresh() {
+        count = 0;
+        pageCount = 0;
+        lastTime = Long.MIN_VALUE;
+        for (int i = 0; i < CACHED_PAGES; i++) {
+            pageIndex[i] = -1;
+        }
+        long after = Long.MIN_VALUE;
+        while (store.read(tier, after, scan) > 0) {
+            for (int i = 0; i < scan.size; i++) {
+                if (scan.avg[i] < threshold) {
+                    continue;
+                }
+                if (count % PAGE_SIZE == 0) {
+                    if (pageCount == checkpoints.length) {
+                        long[] grown = new long[checkpoints.length * 2];
+                        System.arraycopy(checkpoints, 0, grown, 0, pageCount);
+                        checkpoints = grown;
+                    }
+                    checkpoints[pageCount++] = scan.time[i];
+                }
+                count++;
+                lastTime = scan.time[i];
+            }
+            after = scan.lastTime();
+        }
+    }
+
+    /**
+     * @return the number of rows as of the last refresh
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Get the page holding a row, loading it if it is not cached
+     *
+     * @param position row position
+     * @return the page, the row is at {@code position % PAGE_SIZE} unless the page came back shorter
+     */
+    ReadingBatch page(int position) {
+        int index = position / PAGE_SIZE;
+        int lru = 0;
+        for (int i = 0; i < CACHED_PAGES; i++) {
+            if (pageIndex[i] == index) {
+                pageUsed[i] = ++useCounter;
+                return pages[i];
+            }
+            if (pageUsed[i] < pageUsed[lru]) {
+                lru = i;
+            }
+        }
+        load(index, pages[lru]);
+        pageIndex[lru] = index;
+        pageUsed[lru] = ++useCounter;
+        return pages[lru];
+    }
+
+    private void load(int index, ReadingBatch page) {
+        page.size = 0;
+        long after = checkpoints[index] - 1;
+        // Don't spill into readings that came in after the last refresh
+        long end = index + 1 < pageCount ? checkpoints[index + 1] : lastTime + 1;
+        while (page.size < PAGE_SIZE && store.read(tier, after, scan) > 0) {
+            for (int i = 0; i < scan.size && page.size < PAGE_SIZE; i++) {
+                if (scan.time[i] >= end) {
+                    return;
+                }
+                if (scan.avg[i] >= threshold) {
+                    int n = page.size++;
+                    page.time[n] = scan.time[i];
+                    page.min[n] = scan.min[i];
+                    page.max[n] = scan.max[i];
+                    page.avg[n] = scan.avg[i];
+                    page.count[n] = scan.count[i];
+                }
+            }
+            after = scan.lastTime();
+        }
+    }
+
+    /**
+     * Find the first row at or after a time
+     *
+     * @return its position, or {@link #size()} if every row is older
+     */
+    int positionOf(long time) {
+        if (pageCount == 0) {
+            return 0;
+        }
+        // Last page starting at or before the time
+        int lo = 0;
+        int hi = pageCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (checkpoints[mid] <= time) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        ReadingBatch page = page(lo * PAGE_SIZE);
+        for (int i = 0; i < page.size; i++) {
+            if (page.time[i] >= time) {
+                return lo * PAGE_SIZE + i;
+            }
+        }
+        return Math.min(count, (lo + 1) * PAGE_SIZE);
+    }
+}
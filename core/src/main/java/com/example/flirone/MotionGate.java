@@ -0,0 +1,169 @@
+package com.example.flirone;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Tells whether a frame is worth the expensive stages, so the pipeline can idle while the camera looks at an empty,
+ * static scene.
+ * <p>
+ * Every frame is downsampled to the mean temperatures of a coarse grid of cells, reading every {@link #STEP}th pixel of
+ * every {@link #STEP}th row. The scene has changed when a cell moved more than the sensitivity away from the
+ * background, a slowly following average of the grid, so slow approaches add up instead of slipping through
+ * frame-to-frame differences. A pixel at or above the warm temperature counts as a body in view, even if it stands
+ * still. After a change the gate stays open for the hold time.
+ * <p>
+ * Frames and the time the expensive stages took on open frames are counted, for the idle ratio and an estimate of the
+ * time saved on idle frames. Updates don't allocate.
+ */
+class MotionGate {
+    private static final String TAG = "MotionGate";
+    // Pixels skipped between samples, in both directions
+    static final int STEP = 2;
+    // Weight of a new frame in the background
+    private static final float BACKGROUND_WEIGHT = 0.05f;
+    private static final int REPORT_INTERVAL = 500;
+
+    private final int columns;
+    private final int rows;
+    private final long holdMillis;
+    private volatile double sensitivity;
+    private volatile double warmKelvin;
+
+    private final float[] sums;
+    private final int[] counts;
+    private final float[] background;
+    private int width = -1;
+    private int height = -1;
+    private long openUntil = Long.MIN_VALUE;
+    private double lastChange;
+
+    private long frames;
+    private long idleFrames;
+    private long gateNanos;
+    private long openNanos;
+
+    /**
+     * @param columns     cells across the frame
+     * @param rows        cells down the frame
+     * @param sensitivity smallest change, in Kelvin, of a cell's mean that counts as motion
+     * @param warmKelvin  temperature that counts as a body in view, or NaN to only look at motion
+     * @param holdMillis  time the gate stays open after the last change
+     */
+    MotionGate(int columns, int rows, double sensitivity, double warmKelvin, long holdMillis) {
+        this.columns = columns;
+        this.rows = rows;
+        this.sensitivity = sensitivity;
+        this.warmKelvin = warmKelvin;
+        this.holdMillis = holdMillis;
+        sums = new float[columns * rows];
+        counts = new int[columns * rows];
+        background = new float[columns * rows];
+    }
+
+    /**
+     * @param kelvin smallest change of a cell's mean that counts as motion, smaller is more sensitive
+     */
+    void setSensitivity(double kelvin) {
+        sensitivity = kelvin;
+    }
+
+    double getSensitivity() {
+        return sensitivity;
+    }
+
+    /**
+     * @param kelvin temperature that counts as a body in view, NaN for none
+     */
+    void setWarmKelvin(double kelvin) {
+        warmKelvin = kelvin;
+    }
+
+    /**
+     * Look at a frame
+     *
+     * @param matrix temperatures of the frame
+     * @param millis time of the frame
+     * @return true if the expensive stages should run for this frame
+     */
+    synchronized boolean update(TemperatureMatrix matrix, long millis) {
+        long start = System.nanoTime();
+        boolean reset = matrix.width != width || matrix.height != height;
+        width = matrix.width;
+        height = matrix.height;
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] = 0;
+            counts[i] = 0;
+        }
+        FloatBuffer data = matrix.buffer();
+        float warm = Double.isNaN(warmKelvin) ? Float.POSITIVE_INFINITY : (float) warmKelvin;
+        boolean warmSeen = false;
+        for (int y = 0; y < height; y += STEP) {
+            int row = y * matrix.stride;
+            int cellRow = y * rows / height * columns;
+            for (int x = 0; x < width; x += STEP) {
+                float kelvin = data.get(row + x);
+                int cell = cellRow + x * columns / width;
+                sums[cell] += kelvin;
+                counts[cell]++;
+                if (kelvin >= warm) {
+                    warmSeen = true;
+                }
+            }
+        }
+
+        double change = 0;
+        for (int i = 0; i < sums.length; i++) {
+            float mean = counts[i] > 0 ? sums[i] / counts[i] : 0;
+            if (reset) {
+                background[i] = mean;
+            }
+            change = Math.max(change, Math.abs(mean - background[i]));
+            background[i] += (mean - background[i]) * BACKGROUND_WEIGHT;
+        }
+        lastChange = change;
+        if (reset || warmSeen || change > sensitivity) {
+            openUntil = millis + holdMillis;
+        }
+        boolean open = millis <= openUntil;
+
+        frames++;
+        if (!open) {
+            idleFrames++;
+        }
+        gateNanos += System.nanoTime() - start;
+        if (frames % REPORT_INTERVAL == 0) {
+            Log.d(TAG, toString());
+        }
+        return open;
+    }
+
+    /**
+     * Count the time the expensive stages took on an open frame, for {@link #getSavedMillis}
+     */
+    synchronized void spent(long nanos) {
+        openNanos += nanos;
+    }
+
+    /**
+     * @return the fraction of frames the gate was closed for, 0 to 1
+     */
+    synchronized double getIdleRatio() {
+        return frames > 0 ? (double) idleFrames / frames : 0;
+    }
+
+    /**
+     * @return time the expensive stages would have taken on the idle frames, at their average on open frames, less the
+     * time the gate itself took
+     */
+    synchronized long getSavedMillis() {
+        long openFrames = frames - idleFrames;
+        long saved = openFrames > 0 ? openNanos / openFrames * idleFrames : 0;
+        return (saved - gateNanos) / 1000000;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return frames + " frames, " + Math.round(getIdleRatio() * 100) + "% idle, gate " + (frames > 0 ? gateNanos / frames / 1000 : 0)
+                + " us/frame, saved about " + getSavedMillis() + " ms, last change " + Math.round(lastChange * 100) / 100.0 + " K";
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.flirone;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Emissivity, reflected temperature, atmosphere and external optics correction, applied to whole arrays of
+ * temperatures at once.
+ * <p>
+ * The radiation reaching the sensor is modelled with the Stefan-Boltzmann law, radiance proportional to T^4:
+ * <pre>
+ *   W = to * (t * (e * T^4 + (1 - e) * Tr^4) + (1 - t) * Ta^4) + (1 - to) * To^4
+ * </pre>
+ * with emissivity e, reflected temperature Tr, atmospheric transmission t and temperature Ta, optics transmission to
+ * and temperature To. That is W = gain * T^4 + bias for a set of parameters, so temperatures that were corrected with
+ * one set are {@link #recorrect re-corrected} for another with T'^4 = k * T^4 + c, the same two constants for every
+ * pixel. The kernel is a branch-free loop of multiplies and square roots, which the JIT can compile to SIMD
+ * instructions.
+ * <p>
+ * The SDK corrects with the camera's own Planck constants, so re-corrected values differ from what the SDK would
+ * compute by a fraction of the change, well below the accuracy of the camera for the usual adjustments of emissivity
+ * and reflected temperature.
+ */
+final class RadiometricCorrection {
+    final double emissivity;
+    final double reflectedKelvin;
+    final double atmosphericKelvin;
+    final double transmission;
+    final double opticsKelvin;
+    final double opticsTransmission;
+
+    private final double gain;
+    private final double bias;
+
+    /**
+     * @param emissivity         of the object, 0 to 1
+     * @param reflectedKelvin    apparent temperature of the surroundings reflected by the object
+     * @param atmosphericKelvin  temperature of the air between object and camera
+     * @param transmission       of the air, 0 to 1
+     * @param opticsKelvin       temperature of external optics, like a window or heat shield
+     * @param opticsTransmission of the external optics, 1 without any
+     */
+    RadiometricCorrection(double emissivity, double reflectedKelvin, double atmosphericKelvin, double transmission,
+                          double opticsKelvin, double opticsTransmission) {
+        if (emissivity <= 0 || transmission <= 0 || opticsTransmission <= 0) {
+            throw new IllegalArgumentException("emissivity " + emissivity + ", transmission " + transmission
+                    + " and optics transmission " + opticsTransmission + " must be positive");
+        }
+        this.emissivity = emissivity;
+        this.reflectedKelvin = reflectedKelvin;
+        this.atmosphericKelvin = atmosphericKelvin;
+        this.transmission = transmission;
+        this.opticsKelvin = opticsKelvin;
+        this.opticsTransmission = opticsTransmission;
+        gain = opticsTransmission * transmission * emissivity;
+        bias = opticsTransmission * (transmission * (1 - emissivity) * fourth(reflectedKelvin) + (1 - transmission) * fourth(atmosphericKelvin))
+                + (1 - opticsTransmission) * fourth(opticsKelvin);
+    }
+
+    /**
+     * A temperature corrected with {@code previous}, as if it had been corrected with these parameters
+     */
+    double recorrect(double kelvin, RadiometricCorrection previous) {
+        double value = (previous.gain * fourth(kelvin) + previous.bias - bias) / gain;
+        return value > 0 ? Math.sqrt(Math.sqrt(value)) : 0;
+    }
+
+    /**
+     * Re-correct temperatures in place that were corrected with {@code previous}, as if they had been corrected with these
+     * parameters. Radiation below what the surroundings alone account for comes out as 0 K.
+     */
+    void recorrect(float[] kelvin, int from, int length, RadiometricCorrection previous) {
+        if (from < 0 || length < 0 || from + length > kelvin.length) {
+            throw new IndexOutOfBoundsException("length " + length + " from " + from + " of " + kelvin.length);
+        }
+        float k = (float) (previous.gain / gain);
+        float c = (float) ((previous.bias - bias) / gain);
+        for (int i = from, end = from + length; i < end; i++) {
+            float t = kelvin[i];
+            float t2 = t * t;
+            float value = Math.max(k * (t2 * t2) + c, 0f);
+            kelvin[i] = (float) Math.sqrt(Math.sqrt(value));
+        }
+    }
+
+    /**
+     * Re-correct every temperature of a matrix in place, a row at a time
+     *
+     * @param row at least width floats to work in
+     */
+    void recorrect(TemperatureMatrix matrix, RadiometricCorrection previous, float[] row) {
+        FloatBuffer rows = matrix.buffer().duplicate();
+        for (int y = 0; y < matrix.height; y++) {
+            // Through Buffer, the covariant FloatBuffer.position(int) doesn't exist on older runtimes
+            ((Buffer) rows).position(y * matrix.stride);
+            rows.get(row, 0, matrix.width);
+            recorrect(row, 0, matrix.width, previous);
+            ((Buffer) rows).position(y * matrix.stride);
+            rows.put(row, 0, matrix.width);
+        }
+    }
+
+    private static double fourth(double kelvin) {
+        double squared = kelvin * kelvin;
+        return squared * squared;
+    }
+
+    @Override
+    public String toString() {
+        return "emissivity " + emissivity + ", reflected " + reflectedKelvin + " K, atmosphere " + atmosphericKelvin + " K at "
+                + transmission + ", optics " + opticsKelvin + " K at " + opticsTransmission;
+    }
+}
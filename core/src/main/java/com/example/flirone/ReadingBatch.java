@@ -0,0 +1,38 @@
+package com.example.flirone;
+
+/**
+ * Reusable block of readings copied out of a {@link RollupTier}, so readers can work on them without holding the store lock.
+ * Temperatures are in Kelvin.
+ */
+class ReadingBatch {
+    final long[] time;
+    final float[] min;
+    final float[] max;
+    final float[] avg;
+    final int[] count;
+    // Percentiles, only kept for the live temperature log
+    final float[] p90;
+    final float[] p95;
+    int size;
+
+    ReadingBatch(int capacity) {
+        time = new long[capacity];
+        min = new float[capacity];
+        max = new float[capacity];
+        avg = new float[capacity];
+        count = new int[capacity];
+        p90 = new float[capacity];
+        p95 = new float[capacity];
+    }
+
+    int capacity() {
+        return time.length;
+    }
+
+    /**
+     * @return time of the last entry, for reading the next batch
+     */
+    long lastTime() {
+        return time[size - 1];
+    }
+}
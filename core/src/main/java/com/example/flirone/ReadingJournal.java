@@ -0,0 +1,209 @@
+package com.example.flirone;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of the readings of the temperature log, so a crash loses at most the last sync interval instead
+ * of everything since the log was last saved.
+ * <p>
+ * Every reading is appended as a fixed-size record with a CRC32, into a buffer that is written and synced to disk in
+ * batches, every {@code syncIntervalMillis} or when the buffer fills up. Once the readings are safely in the text log,
+ * {@link #checkpoint} empties the journal. On startup {@link #recover} replays the records left behind; a record that
+ * was only partly written, or is damaged, fails its checksum and ends the replay, and the file is cut back to the last
+ * good record.
+ * <p>
+ * Appending doesn't allocate. Temperatures are in Kelvin.
+ */
+class ReadingJournal {
+    private static final String TAG = "ReadingJournal";
+    static final String FILE_NAME = "readings.wal";
+    private static final int MAGIC = 0x46574131; // "FWA1"
+    private static final int HEADER_SIZE = 16;
+    // time, min, max, avg, p90, p95, crc
+    static final int RECORD_SIZE = 8 + 5 * 4 + 4;
+    private static final int PAYLOAD_SIZE = RECORD_SIZE - 4;
+    private static final int BATCH_RECORDS = 256;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * BATCH_RECORDS).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService syncer;
+
+    private long appended;
+    private long syncs;
+    private long syncNanos;
+    private boolean dirty;
+
+    /**
+     * Open the journal in a directory, creating it if needed, and start syncing it in the background
+     *
+     * @param syncIntervalMillis longest time a reading stays in memory only
+     */
+    ReadingJournal(File directory, long syncIntervalMillis) throws IOException {
+        file = new RandomAccessFile(new File(directory, FILE_NAME), "rw");
+        channel = file.getChannel();
+        if (channel.size() < HEADER_SIZE || !validHeader()) {
+            writeHeader();
+        }
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "journal-sync"));
+        syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Append a reading, it is on disk after the next sync
+     */
+    synchronized void append(long time, float min, float max, float avg, float p90, float p95) throws IOException {
+        if (!buffer.hasRemaining()) {
+            write();
+        }
+        int start = buffer.position();
+        buffer.putLong(time).putFloat(min).putFloat(max).putFloat(avg).putFloat(p90).putFloat(p95);
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, PAYLOAD_SIZE);
+        buffer.putInt((int) crc.getValue());
+        appended++;
+        dirty = true;
+    }
+
+    /**
+     * Write the buffered records and force them to disk
+     */
+    synchronized void sync() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        long start = System.nanoTime();
+        write();
+        channel.force(false);
+        dirty = false;
+        syncs++;
+        syncNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Forget every record, they have been saved somewhere else
+     */
+    synchronized void checkpoint() throws IOException {
+        buffer.clear();
+        channel.truncate(HEADER_SIZE);
+        channel.force(false);
+        dirty = false;
+    }
+
+    /**
+     * Replay the records of the journal in order, before anything new is appended
+     *
+     * @param into filled with the records, up to its capacity
+     * @return the number of valid records found, which may be more than fit into the batch
+     */
+    synchronized int recover(ReadingBatch into) throws IOException {
+        long start = System.nanoTime();
+        // Read many records at a time, this runs before the camera starts
+        ByteBuffer chunk = ByteBuffer.allocate(RECORD_SIZE * BATCH_RECORDS * 16).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] bytes = chunk.array();
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        int count = 0;
+        into.size = 0;
+        boolean damaged = false;
+        while (!damaged && position + RECORD_SIZE <= size) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), (size - position) / RECORD_SIZE * RECORD_SIZE));
+            while (chunk.hasRemaining() && channel.read(chunk, position + chunk.position()) >= 0) {
+                // Until the chunk is full
+            }
+            for (int offset = 0; offset + RECORD_SIZE <= chunk.position(); offset += RECORD_SIZE) {
+                crc.reset();
+                crc.update(bytes, offset, PAYLOAD_SIZE);
+                if (chunk.getInt(offset + PAYLOAD_SIZE) != (int) crc.getValue()) {
+                    damaged = true;
+                    break;
+                }
+                if (into.size < into.capacity()) {
+                    int i = into.size++;
+                    into.time[i] = chunk.getLong(offset);
+                    into.min[i] = chunk.getFloat(offset + 8);
+                    into.max[i] = chunk.getFloat(offset + 12);
+                    into.avg[i] = chunk.getFloat(offset + 16);
+                    into.p90[i] = chunk.getFloat(offset + 20);
+                    into.p95[i] = chunk.getFloat(offset + 24);
+                    into.count[i] = 1;
+                }
+                count++;
+                position += RECORD_SIZE;
+            }
+            if (chunk.position() < chunk.limit()) {
+                // The file ended early
+                break;
+            }
+        }
+        if (position < size) {
+            Log.d(TAG, "recover: dropping " + (size - position) + " bytes after the last good record");
+            channel.truncate(position);
+            channel.force(false);
+        }
+        channel.position(position);
+        Log.d(TAG, "recover: " + count + " records in " + (System.nanoTime() - start) / 1000 + " us");
+        return count;
+    }
+
+    /**
+     * Sync one last time and close the file
+     */
+    void close() {
+        syncer.shutdown();
+        synchronized (this) {
+            syncQuietly();
+            try {
+                channel.close();
+                file.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        Log.d(TAG, "close: " + this);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return appended + " records appended, " + syncs + " syncs, " + (syncs > 0 ? syncNanos / syncs / 1000 : 0) + " us per sync";
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            Log.e(TAG, "sync failed: " + e);
+        }
+    }
+
+    private void write() throws IOException {
+        buffer.flip();
+        channel.write(buffer, channel.size());
+        buffer.clear();
+    }
+
+    private boolean validHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+        return header.getInt(0) == MAGIC && header.getInt(4) == RECORD_SIZE;
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC).putInt(4, RECORD_SIZE);
+        channel.truncate(0);
+        channel.write(header, 0);
+        channel.force(false);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.flirone;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Min, max and average of a rectangular region of a {@link TemperatureMatrix}, plus where the hot and cold spots are.
+ * Instances are reused from frame to frame, {@link #compute} overwrites all fields.
+ * <p>
+ * Regions can have fractional edges: the average then weights every edge pixel by how much of it the region covers,
+ * so it doesn't jump while the region is dragged or resized by less than a pixel.
+ * <p>
+ * With a {@link #histogram} set, the same pass also bins every pixel the region touches and fills in the percentiles.
+ * <p>
+ * All temperatures are in Kelvin, positions are in thermal image pixels.
+ */
+class RoiStatistics {
+    double min;
+    double max;
+    double avg;
+    int hotX;
+    int hotY;
+    int coldX;
+    int coldY;
+    int pixelCount;
+    // Covered area in pixels, fractional for regions with fractional edges
+    double area;
+    // Percentiles from the histogram, NaN without one
+    double p90 = Double.NaN;
+    double p95 = Double.NaN;
+    // Distribution of the region, null unless it should be kept, cleared by every compute
+    TemperatureHistogram histogram;
+
+    /**
+     * Compute the statistics of the region, clipped to the bounds of the matrix
+     *
+     * @return false if the region does not overlap the matrix, in which case the fields are left untouched
+     */
+    boolean compute(TemperatureMatrix matrix, int left, int top, int width, int height) {
+        int x0 = Math.max(0, left);
+        int y0 = Math.max(0, top);
+        int x1 = Math.min(matrix.width, left + width);
+        int y1 = Math.min(matrix.height, top + height);
+        if (x1 <= x0 || y1 <= y0) {
+            return false;
+        }
+        avg = scan(matrix, x0, y0, x1, y1) / pixelCount;
+        area = pixelCount;
+        return true;
+    }
+
+    /**
+     * Compute the statistics of a region with fractional edges, clipped to the bounds of the matrix
+     * <p>
+     * The average comes from the summed-area table in constant time; min, max and the hot and cold spots from every
+     * pixel the region touches.
+     *
+     * @param sums table already built for the matrix
+     * @return false if the region does not overlap the matrix, in which case the fields are left untouched
+     */
+    boolean compute(TemperatureMatrix matrix, SummedAreaTable sums, double left, double top, double width, double height) {
+        double x0 = Math.max(0, left);
+        double y0 = Math.max(0, top);
+        double x1 = Math.min(matrix.width, left + width);
+        double y1 = Math.min(matrix.height, top + height);
+        if (x1 <= x0 || y1 <= y0) {
+            return false;
+        }
+        scan(matrix, (int) x0, (int) y0, (int) Math.ceil(x1), (int) Math.ceil(y1));
+        area = (x1 - x0) * (y1 - y0);
+        avg = sums.sum(x0, y0, x1, y1) / area;
+        return true;
+    }
+
+    /**
+     * Find min, max and their positions over whole pixels, and count them
+     *
+     * @return the sum of the pixels
+     */
+    private double scan(TemperatureMatrix matrix, int x0, int y0, int x1, int y1) {
+        FloatBuffer data = matrix.buffer();
+        int stride = matrix.stride;
+        float lo = Float.MAX_VALUE;
+        float hi = -Float.MAX_VALUE;
+        int loIndex = 0;
+        int hiIndex = 0;
+        double sum = 0;
+        TemperatureHistogram histogram = this.histogram;
+        if (histogram != null) {
+            histogram.clear();
+        }
+        for (int y = y0; y < y1; y++) {
+            int row = y * stride;
+            for (int i = row + x0; i < row + x1; i++) {
+                float v = data.get(i);
+                sum += v;
+                if (histogram != null) {
+                    histogram.add(v);
+                }
+                if (v < lo) {
+                    lo = v;
+                    loIndex = i;
+                }
+                if (v > hi) {
+                    hi = v;
+                    hiIndex = i;
+                }
+            }
+        }
+
+        pixelCount = (x1 - x0) * (y1 - y0);
+        min = lo;
+        max = hi;
+        coldX = loIndex % stride;
+        coldY = loIndex / stride;
+        hotX = hiIndex % stride;
+        hotY = hiIndex / stride;
+        if (histogram != null) {
+            p90 = histogram.quantile(0.90);
+            p95 = histogram.quantile(0.95);
+        }
+        return sum;
+    }
+}
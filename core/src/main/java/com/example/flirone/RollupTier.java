@@ -0,0 +1,188 @@
+package com.example.flirone;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Fixed capacity ring of time-sorted temperature readings or rollups.
+ * <p>
+ * Every entry covers {@link #period} milliseconds (0 for raw readings) and carries the min, max and average of the
+ * readings it summarizes together with how many there were. Entries older than {@link #retention} milliseconds,
+ * counted from the newest one, are dropped, and once the ring is full the oldest entry is overwritten,
+ * so the heap used by a tier never grows.
+ * <p>
+ * Not thread safe, {@link TimeSeriesStore} guards access.
+ */
+class RollupTier {
+    // Bytes taken by one entry in a stream, see writeTo
+    static final int ENTRY_SIZE = 8 + 3 * 4 + 4;
+
+    final long period;
+    final long retention;
+    private final long[] time;
+    private final float[] min;
+    private final float[] max;
+    private final float[] avg;
+    private final int[] count;
+    private int head;
+    private int size;
+    private long appended;
+
+    /**
+     * @param period    length covered by one entry in milliseconds, 0 for raw readings
+     * @param retention how long entries are kept in milliseconds
+     * @param capacity  maximum number of entries kept in memory
+     */
+    RollupTier(long period, long retention, int capacity) {
+        this.period = period;
+        this.retention = retention;
+        time = new long[capacity];
+        min = new float[capacity];
+        max = new float[capacity];
+        avg = new float[capacity];
+        count = new int[capacity];
+    }
+
+    void append(long t, float mn, float mx, float av, int n) {
+        int capacity = time.length;
+        int slot = (head + size) % capacity;
+        if (size == capacity) {
+            head = (head + 1) % capacity;
+        } else {
+            size++;
+        }
+        time[slot] = t;
+        min[slot] = mn;
+        max[slot] = mx;
+        avg[slot] = av;
+        count[slot] = n;
+        appended++;
+
+        // Expire what fell out of the retention window
+        long oldest = t - retention;
+        while (size > 1 && time[head] < oldest) {
+            head = (head + 1) % capacity;
+            size--;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return time.length;
+    }
+
+    /**
+     * Entries appended since the tier was created, {@link #clear} doesn't reset it. The difference between two calls
+     * is how many entries came in between, the newest of which are still in the ring unless it wrapped.
+     */
+    long appended() {
+        return appended;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private int slot(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return (head + i) % time.length;
+    }
+
+    /**
+     * Accessors take the position counted from the oldest entry
+     */
+    long time(int i) {
+        return time[slot(i)];
+    }
+
+    float min(int i) {
+        return min[slot(i)];
+    }
+
+    float max(int i) {
+        return max[slot(i)];
+    }
+
+    float avg(int i) {
+        return avg[slot(i)];
+    }
+
+    int count(int i) {
+        return count[slot(i)];
+    }
+
+    /**
+     * Binary search for the first entry newer than the given time
+     *
+     * @return the position of that entry, or {@link #size()} if there is none
+     */
+    int firstAfter(long t) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (time[(head + mid) % time.length] <= t) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Copy entries starting at a position into a batch
+     *
+     * @return the number of entries copied
+     */
+    int copyTo(int from, ReadingBatch batch) {
+        int n = Math.min(batch.capacity(), size - from);
+        for (int i = 0; i < n; i++) {
+            int s = (head + from + i) % time.length;
+            batch.time[i] = time[s];
+            batch.min[i] = min[s];
+            batch.max[i] = max[s];
+            batch.avg[i] = avg[s];
+            batch.count[i] = count[s];
+        }
+        batch.size = Math.max(n, 0);
+        return batch.size;
+    }
+
+    /**
+     * Write the entries from a position on, {@link #ENTRY_SIZE} bytes each
+     */
+    void writeTo(DataOutputStream out, int from) throws IOException {
+        for (int i = from; i < size; i++) {
+            int s = (head + i) % time.length;
+            out.writeLong(time[s]);
+            out.writeFloat(min[s]);
+            out.writeFloat(max[s]);
+            out.writeFloat(avg[s]);
+            out.writeInt(count[s]);
+        }
+    }
+
+    /**
+     * Append entries as {@link #writeTo} wrote them
+     *
+     * @param n the number of entries to read
+     */
+    void readFrom(DataInputStream in, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            long t = in.readLong();
+            float mn = in.readFloat();
+            float mx = in.readFloat();
+            float av = in.readFloat();
+            int c = in.readInt();
+            append(t, mn, mx, av, c);
+        }
+    }
+}
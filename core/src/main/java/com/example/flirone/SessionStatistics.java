@@ -0,0 +1,209 @@
+package com.example.flirone;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Running totals of a screening session: people screened, alerts, face temperatures and frames processed and dropped.
+ * <p>
+ * It is fed from the pipeline threads for every frame and read by the dashboard once in a while, so writers never wait
+ * on each other or on the reader. The per-frame counters are {@link StripedCounter striped} across threads like
+ * LongAdder, which isn't available before API 24, temperatures are summed as fixed point millikelvin and binned into a
+ * histogram of atomic counters. A reader sees totals that may be a frame apart from each other, never torn values.
+ * <p>
+ * A person is a run of frames with a measured face, ended by {@link #PERSON_GAP_MILLIS} without one. Each person raises
+ * at most one alert, the first time their face reaches the alert temperature.
+ */
+class SessionStatistics {
+    // A face missing for this long means the next one is a different person
+    static final long PERSON_GAP_MILLIS = 1500;
+    // Face temperatures between 0 C and 50 C, in 0.1 K bins
+    static final double MIN_KELVIN = 273.15;
+    static final double BIN_WIDTH = 0.1;
+    static final int BINS = 500;
+
+    /**
+     * A counter split into cells, one cache line apart, so threads add to different cells and don't contend
+     */
+    static final class StripedCounter {
+        // Longs per cell, 64 bytes
+        private static final int PAD = 8;
+        private final AtomicLongArray cells;
+        private final int mask;
+
+        StripedCounter() {
+            int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) * 2;
+            cells = new AtomicLongArray(stripes * PAD);
+            mask = stripes - 1;
+        }
+
+        void add(long x) {
+            cells.addAndGet(((int) Thread.currentThread().getId() & mask) * PAD, x);
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < cells.length(); i += PAD) {
+                sum += cells.get(i);
+            }
+            return sum;
+        }
+
+        void reset() {
+            for (int i = 0; i < cells.length(); i += PAD) {
+                cells.set(i, 0);
+            }
+        }
+    }
+
+    private final double alertKelvin;
+
+    private final StripedCounter framesProcessed = new StripedCounter();
+    private final StripedCounter framesDropped = new StripedCounter();
+    private final StripedCounter readings = new StripedCounter();
+    private final StripedCounter millikelvin = new StripedCounter();
+    private final AtomicLong peakMillikelvin = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLongArray bins = new AtomicLongArray(BINS);
+
+    // Changed about once per person, no need to stripe
+    private final AtomicLong people = new AtomicLong();
+    private final AtomicLong alerts = new AtomicLong();
+    private final AtomicLong alertedPerson = new AtomicLong();
+    private final AtomicLong lastFaceMillis = new AtomicLong(Long.MIN_VALUE / 2);
+    private volatile long startMillis;
+
+    /**
+     * @param alertKelvin face temperature that raises an alert
+     */
+    SessionStatistics(double alertKelvin) {
+        this.alertKelvin = alertKelvin;
+        startMillis = System.currentTimeMillis();
+    }
+
+    void frameProcessed() {
+        framesProcessed.add(1);
+    }
+
+    void frameDropped() {
+        framesDropped.add(1);
+    }
+
+    /**
+     * Count the face temperature of a frame
+     *
+     * @param time   time of the frame, in milliseconds
+     * @param kelvin temperature of the face
+     * @return true if this raised an alert for a person that had none yet
+     */
+    boolean faceMeasured(long time, double kelvin) {
+        // Frames may arrive slightly out of order, keep the latest time
+        long last;
+        do {
+            last = lastFaceMillis.get();
+        } while (time > last && !lastFaceMillis.compareAndSet(last, time));
+        long person = time - last > PERSON_GAP_MILLIS ? people.incrementAndGet() : people.get();
+
+        long value = Math.round(kelvin * 1000);
+        readings.add(1);
+        millikelvin.add(value);
+        long peak;
+        do {
+            peak = peakMillikelvin.get();
+        } while (value > peak && !peakMillikelvin.compareAndSet(peak, value));
+        int bin = (int) ((kelvin - MIN_KELVIN) / BIN_WIDTH);
+        bins.incrementAndGet(bin < 0 ? 0 : bin >= BINS ? BINS - 1 : bin);
+
+        if (kelvin >= alertKelvin && person > 0 && alertedPerson.getAndSet(person) != person) {
+            alerts.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Start a new session
+     */
+    void reset() {
+        framesProcessed.reset();
+        framesDropped.reset();
+        readings.reset();
+        millikelvin.reset();
+        peakMillikelvin.set(Long.MIN_VALUE);
+        for (int i = 0; i < BINS; i++) {
+            bins.set(i, 0);
+        }
+        people.set(0);
+        alerts.set(0);
+        alertedPerson.set(0);
+        lastFaceMillis.set(Long.MIN_VALUE / 2);
+        startMillis = System.currentTimeMillis();
+    }
+
+    long getStartMillis() {
+        return startMillis;
+    }
+
+    long getFramesProcessed() {
+        return framesProcessed.sum();
+    }
+
+    long getFramesDropped() {
+        return framesDropped.sum();
+    }
+
+    long getPeopleScreened() {
+        return people.get();
+    }
+
+    long getAlerts() {
+        return alerts.get();
+    }
+
+    /**
+     * @return mean face temperature in Kelvin, NaN before the first one
+     */
+    double getMeanKelvin() {
+        long count = readings.sum();
+        return count > 0 ? millikelvin.sum() / 1000.0 / count : Double.NaN;
+    }
+
+    /**
+     * @return highest face temperature in Kelvin, NaN before the first one
+     */
+    double getPeakKelvin() {
+        long peak = peakMillikelvin.get();
+        return peak == Long.MIN_VALUE ? Double.NaN : peak / 1000.0;
+    }
+
+    /**
+     * @param q quantile, 0 to 1
+     * @return the face temperature below which a fraction q of the readings fall, interpolated within a bin, NaN before
+     * the first reading
+     */
+    double getQuantileKelvin(double q) {
+        long[] counts = new long[BINS];
+        long total = 0;
+        for (int i = 0; i < BINS; i++) {
+            counts[i] = bins.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return Double.NaN;
+        }
+        double rank = Math.max(0, Math.min(1, q)) * total;
+        long below = 0;
+        for (int i = 0; i < BINS; i++) {
+            if (counts[i] > 0 && below + counts[i] >= rank) {
+                return MIN_KELVIN + (i + (rank - below) / counts[i]) * BIN_WIDTH;
+            }
+            below += counts[i];
+        }
+        return MIN_KELVIN + BINS * BIN_WIDTH;
+    }
+
+    @Override
+    public String toString() {
+        return getPeopleScreened() + " screened, " + getAlerts() + " alerts, mean " + getMeanKelvin() + " K, peak "
+                + getPeakKelvin() + " K, " + getFramesProcessed() + " frames processed, " + getFramesDropped() + " dropped";
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.flirone;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Finds the regions of a frame at skin temperature, where a face detector has to look for faces.
+ * <p>
+ * The matrix is looked at in blocks of {@link #BLOCK} by {@link #BLOCK} pixels; a block is skin if any of its pixels is
+ * between {@link #MIN_KELVIN} and {@link #MAX_KELVIN}. Skin blocks are joined into connected regions in one pass with a
+ * union-find, regions of fewer than {@code minBlocks} blocks are dropped as noise, and the largest {@code maxRegions}
+ * are padded by {@link #PADDING} of their size on every side, so the detector sees the whole head, and merged where
+ * they overlap. A frame without anyone in it yields no region at all.
+ * <p>
+ * Results are in thermal pixels and stay valid until the next {@link #find}. Nothing is allocated once the arrays have
+ * grown to the size of the frame.
+ */
+class SkinRegionFinder {
+    // Skin temperature band, 30 C to 40 C
+    static final double MIN_KELVIN = TemperatureScale.ZERO_CELSIUS + 30.0;
+    static final double MAX_KELVIN = TemperatureScale.ZERO_CELSIUS + 40.0;
+    static final int BLOCK = 2;
+    // Margin added around a region, as a fraction of its width and height
+    static final float PADDING = 0.25f;
+
+    private final int maxRegions;
+    private final int minBlocks;
+
+    private int[] labels = new int[0];
+    private int[] parent = new int[1];
+    private int[] minX = new int[1];
+    private int[] minY = new int[1];
+    private int[] maxX = new int[1];
+    private int[] maxY = new int[1];
+    private int[] blocks = new int[1];
+
+    // Regions found in the last frame, in thermal pixels, right and bottom exclusive
+    final int[] left;
+    final int[] top;
+    final int[] right;
+    final int[] bottom;
+    int count;
+
+    /**
+     * @param maxRegions most regions returned, the largest are kept
+     * @param minBlocks  smallest region, in blocks, that is not noise
+     */
+    SkinRegionFinder(int maxRegions, int minBlocks) {
+        this.maxRegions = maxRegions;
+        this.minBlocks = minBlocks;
+        left = new int[maxRegions];
+        top = new int[maxRegions];
+        right = new int[maxRegions];
+        bottom = new int[maxRegions];
+    }
+
+    /**
+     * Find the skin regions of a frame
+     *
+     * @return the number of regions, in {@link #left}, {@link #top}, {@link #right} and {@link #bottom}
+     */
+    int find(TemperatureMatrix matrix) {
+        int columns = (matrix.width + BLOCK - 1) / BLOCK;
+        int rows = (matrix.height + BLOCK - 1) / BLOCK;
+        if (labels.length < columns * rows) {
+            labels = new int[columns * rows];
+            // Four-connected labels can't outnumber half the blocks, plus label 0 for none
+            int maxLabels = columns * rows / 2 + 2;
+            parent = new int[maxLabels];
+            minX = new int[maxLabels];
+            minY = new int[maxLabels];
+            maxX = new int[maxLabels];
+            maxY = new int[maxLabels];
+            blocks = new int[maxLabels];
+        }
+
+        // Label the skin blocks, joining a block with the ones above and to the left
+        FloatBuffer data = matrix.buffer();
+        float low = (float) MIN_KELVIN;
+        float high = (float) MAX_KELVIN;
+        int next = 1;
+        for (int by = 0; by < rows; by++) {
+            for (int bx = 0; bx < columns; bx++) {
+                int i = by * columns + bx;
+                if (!isSkin(data, matrix, bx * BLOCK, by * BLOCK, low, high)) {
+                    labels[i] = 0;
+                    continue;
+                }
+                int up = by > 0 ? labels[i - columns] : 0;
+                int before = bx > 0 ? labels[i - 1] : 0;
+                int label;
+                if (up == 0 && before == 0) {
+                    label = next++;
+                    parent[label] = label;
+                } else if (up == 0 || before == 0) {
+                    label = up | before;
+                } else {
+                    int a = root(up);
+                    int b = root(before);
+                    label = Math.min(a, b);
+                    parent[Math.max(a, b)] = label;
+                }
+                labels[i] = label;
+            }
+        }
+
+        // Bounding box and size of every region, kept at its root
+        for (int label = 1; label < next; label++) {
+            blocks[label] = 0;
+            minX[label] = Integer.MAX_VALUE;
+            minY[label] = Integer.MAX_VALUE;
+            maxX[label] = -1;
+            maxY[label] = -1;
+        }
+        for (int by = 0; by < rows; by++) {
+            for (int bx = 0; bx < columns; bx++) {
+                int label = labels[by * columns + bx];
+                if (label == 0) {
+                    continue;
+                }
+                label = root(label);
+                blocks[label]++;
+                minX[label] = Math.min(minX[label], bx);
+                minY[label] = Math.min(minY[label], by);
+                maxX[label] = Math.max(maxX[label], bx);
+                maxY[label] = Math.max(maxY[label], by);
+            }
+        }
+
+        // Keep the largest regions, as padded windows in pixels
+        count = 0;
+        while (count < maxRegions) {
+            int largest = 0;
+            for (int label = 1; label < next; label++) {
+                if (blocks[label] >= minBlocks && (largest == 0 || blocks[label] > blocks[largest])) {
+                    largest = label;
+                }
+            }
+            if (largest == 0) {
+                break;
+            }
+            blocks[largest] = 0;
+            int x0 = minX[largest] * BLOCK;
+            int y0 = minY[largest] * BLOCK;
+            int x1 = Math.min(matrix.width, (maxX[largest] + 1) * BLOCK);
+            int y1 = Math.min(matrix.height, (maxY[largest] + 1) * BLOCK);
+            int padX = Math.round((x1 - x0) * PADDING);
+            int padY = Math.round((y1 - y0) * PADDING);
+            left[count] = Math.max(0, x0 - padX);
+            top[count] = Math.max(0, y0 - padY);
+            right[count] = Math.min(matrix.width, x1 + padX);
+            bottom[count] = Math.min(matrix.height, y1 + padY);
+            count++;
+        }
+        mergeOverlapping();
+        return count;
+    }
+
+    private static boolean isSkin(FloatBuffer data, TemperatureMatrix matrix, int x, int y, float low, float high) {
+        int endX = Math.min(matrix.width, x + BLOCK);
+        int endY = Math.min(matrix.height, y + BLOCK);
+        for (int row = y; row < endY; row++) {
+            int offset = row * matrix.stride;
+            for (int column = x; column < endX; column++) {
+                float kelvin = data.get(offset + column);
+                if (kelvin >= low && kelvin <= high) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int root(int label) {
+        while (parent[label] != label) {
+            // Path halving keeps the trees flat
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    /**
+     * Join windows that overlap after padding, so no part of the frame is searched twice
+     */
+    private void mergeOverlapping() {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < count && !merged; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    if (left[i] < right[j] && left[j] < right[i] && top[i] < bottom[j] && top[j] < bottom[i]) {
+                        left[i] = Math.min(left[i], left[j]);
+                        top[i] = Math.min(top[i], top[j]);
+                        right[i] = Math.max(right[i], right[j]);
+                        bottom[i] = Math.max(bottom[i], bottom[j]);
+                        count--;
+                        left[j] = left[count];
+                        top[j] = top[count];
+                        right[j] = right[count];
+                        bottom[j] = bottom[count];
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
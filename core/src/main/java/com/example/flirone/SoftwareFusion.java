@@ -0,0 +1,211 @@
+package com.example.flirone;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * MSX-style fusion done in plain Java instead of by the SDK: edges of the visual image are embossed onto the colorized
+ * thermal image.
+ * <p>
+ * Works on packed ARGB int[] pixels, so it has no Android dependencies and runs unchanged on a desktop JVM. A frame is
+ * fused in two passes over bands of rows on a fork-join pool:
+ * <ol>
+ * <li>the visual image is registered to the thermal grid by sampling it every {@code scaleX, scaleY} visual pixels
+ * (the ratio between the visual and thermal bitmaps) and reduced to luminance;</li>
+ * <li>a Sobel operator finds the edges in that luminance, and each thermal pixel is brightened by the edge magnitude
+ * times {@link #setStrength strength}, ignoring magnitudes below {@link #setThreshold threshold}.</li>
+ * </ol>
+ * Luminance and magnitude buffers are kept between frames and only reallocated when the thermal size changes.
+ */
+class SoftwareFusion {
+    // Rows per task below which a band isn't split any further
+    private static final int MIN_BAND = 16;
+
+    private final ForkJoinPool pool;
+    private int[] luma = new int[0];
+    private int strength = 96;
+    private int threshold = 48;
+
+    private long lastNanos;
+    private long frames;
+    private long totalNanos;
+
+    SoftwareFusion() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    SoftwareFusion(int parallelism) {
+        pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    /**
+     * @param strength how much edges brighten the thermal image, 0 (no edges) to 256 (full magnitude)
+     */
+    void setStrength(int strength) {
+        this.strength = Math.max(0, Math.min(256, strength));
+    }
+
+    /**
+     * @param threshold smallest Sobel magnitude, 0 to 1020, that counts as an edge
+     */
+    void setThreshold(int threshold) {
+        this.threshold = Math.max(0, threshold);
+    }
+
+    /**
+     * Emboss the edges of the visual image onto the thermal image, in place
+     *
+     * @param thermal       colorized thermal pixels, thermalWidth * thermalHeight ARGB values, overwritten with the result
+     * @param thermalWidth  width of the thermal image
+     * @param thermalHeight height of the thermal image
+     * @param visual        visual pixels, visualWidth * visualHeight ARGB values
+     * @param visualWidth   width of the visual image
+     * @param visualHeight  height of the visual image
+     * @param scaleX        visual pixels per thermal pixel horizontally
+     * @param scaleY        visual pixels per thermal pixel vertically
+     */
+    void fuse(int[] thermal, int thermalWidth, int thermalHeight, int[] visual, int visualWidth, int visualHeight, float scaleX, float scaleY) {
+        long start = System.nanoTime();
+        int size = thermalWidth * thermalHeight;
+        if (luma.length < size) {
+            luma = new int[size];
+        }
+        Frame frame = new Frame(thermal, thermalWidth, thermalHeight, visual, visualWidth, visualHeight, scaleX, scaleY, luma, strength, threshold);
+        pool.invoke(new Band(frame, 0, thermalHeight, false));
+        pool.invoke(new Band(frame, 0, thermalHeight, true));
+        lastNanos = System.nanoTime() - start;
+        totalNanos += lastNanos;
+        frames++;
+    }
+
+    /**
+     * @return time taken by the last {@link #fuse} call, in nanoseconds
+     */
+    long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * @return average time of a {@link #fuse} call, in milliseconds
+     */
+    double getAverageMillis() {
+        return frames == 0 ? 0 : totalNanos / 1e6 / frames;
+    }
+
+    void stop() {
+        pool.shutdown();
+    }
+
+    /**
+     * Everything a band needs to know about the frame being fused
+     */
+    private static class Frame {
+        final int[] thermal;
+        final int width;
+        final int height;
+        final int[] visual;
+        final int visualWidth;
+        final int visualHeight;
+        final float scaleX;
+        final float scaleY;
+        final int[] luma;
+        final int strength;
+        final int threshold;
+
+        Frame(int[] thermal, int width, int height, int[] visual, int visualWidth, int visualHeight, float scaleX, float scaleY, int[] luma, int strength, int threshold) {
+            this.thermal = thermal;
+            this.width = width;
+            this.height = height;
+            this.visual = visual;
+            this.visualWidth = visualWidth;
+            this.visualHeight = visualHeight;
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.luma = luma;
+            this.strength = strength;
+            this.threshold = threshold;
+        }
+    }
+
+    /**
+     * Rows [from, to) of one pass, split in halves until they are small enough
+     */
+    private static class Band extends RecursiveAction {
+        // RecursiveAction is Serializable, bands never are
+        private static final long serialVersionUID = 1L;
+
+        private final Frame frame;
+        private final int from;
+        private final int to;
+        private final boolean blend;
+
+        Band(Frame frame, int from, int to, boolean blend) {
+            this.frame = frame;
+            this.from = from;
+            this.to = to;
+            this.blend = blend;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > MIN_BAND) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Band(frame, from, mid, blend), new Band(frame, mid, to, blend));
+            } else if (blend) {
+                blend(frame, from, to);
+            } else {
+                register(frame, from, to);
+            }
+        }
+    }
+
+    /**
+     * Sample the visual image at every thermal pixel of the rows and store its luminance
+     */
+    private static void register(Frame f, int from, int to) {
+        int maxX = f.visualWidth - 1;
+        int maxY = f.visualHeight - 1;
+        for (int y = from; y < to; y++) {
+            int vy = Math.min(maxY, (int) (y * f.scaleY));
+            int src = vy * f.visualWidth;
+            int dst = y * f.width;
+            for (int x = 0; x < f.width; x++) {
+                int vx = Math.min(maxX, (int) (x * f.scaleX));
+                int p = f.visual[src + vx];
+                // ITU-R BT.601 weights in 1/256ths
+                f.luma[dst + x] = (77 * ((p >> 16) & 0xff) + 150 * ((p >> 8) & 0xff) + 29 * (p & 0xff)) >> 8;
+            }
+        }
+    }
+
+    /**
+     * Run Sobel over the luminance of the rows and brighten the thermal pixels by the edge magnitude
+     */
+    private static void blend(Frame f, int from, int to) {
+        int w = f.width;
+        int[] l = f.luma;
+        int[] t = f.thermal;
+        for (int y = from; y < to; y++) {
+            int up = Math.max(0, y - 1) * w;
+            int row = y * w;
+            int down = Math.min(f.height - 1, y + 1) * w;
+            for (int x = 0; x < w; x++) {
+                int left = Math.max(0, x - 1);
+                int right = Math.min(w - 1, x + 1);
+                int gx = (l[up + right] + 2 * l[row + right] + l[down + right]) - (l[up + left] + 2 * l[row + left] + l[down + left]);
+                int gy = (l[down + left] + 2 * l[down + x] + l[down + right]) - (l[up + left] + 2 * l[up + x] + l[up + right]);
+                // |gx| + |gy| approximates the magnitude without a square root
+                int magnitude = (gx < 0 ? -gx : gx) + (gy < 0 ? -gy : gy);
+                if (magnitude < f.threshold) {
+                    continue;
+                }
+                int add = Math.min(255, magnitude * f.strength >> 8);
+                int p = t[row + x];
+                int r = Math.min(255, ((p >> 16) & 0xff) + add);
+                int g = Math.min(255, ((p >> 8) & 0xff) + add);
+                int b = Math.min(255, (p & 0xff) + add);
+                t[row + x] = (p & 0xff000000) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.flirone;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A frame as the {@link FramePipeline} sees it: a sequence number and the state of its stages. Apps extend it with
+ * the data their stages work on.
+ */
+class StagedFrame {
+    long sequence;
+
+    // Scheduling state, owned by the pipeline
+    final AtomicIntegerArray pending;
+    final AtomicInteger remaining = new AtomicInteger();
+    final AtomicInteger failedStages = new AtomicInteger();
+    volatile Throwable error;
+
+    StagedFrame(int stages) {
+        pending = new AtomicIntegerArray(stages);
+    }
+
+    /**
+     * The camera stages are done, drop whatever is only valid on the camera thread
+     */
+    void cameraStagesDone() {
+    }
+
+    /**
+     * Clear what the previous frame left behind
+     */
+    void reset(long sequence) {
+        this.sequence = sequence;
+        failedStages.set(0);
+        error = null;
+    }
+}
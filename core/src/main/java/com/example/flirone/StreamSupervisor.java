@@ -0,0 +1,227 @@
+package com.example.flirone;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a camera stream alive: notices when it stalls or the connection is lost and reconnects on its own.
+ * <p>
+ * The stream calls {@link #frameArrived} for every frame. A watchdog checks every quarter of the stall time whether a
+ * frame came in within the stall time; if not, or when the connection reports itself {@link #connectionLost lost},
+ * recovery starts: the {@link Connector} lets go of the old connection, then finds the camera again, connects and
+ * resubscribes. A failed attempt is retried after a backoff that doubles from the initial delay up to the maximum. An
+ * attempt only counts as a recovery once a frame arrives; a connection that stays silent for the stall time is treated
+ * as another failure and the backoff goes on.
+ * <p>
+ * Attempts run one at a time on the supervisor's own thread, so the Connector may block. Time to recovery, from
+ * noticing the loss to the first frame after it, is measured.
+ */
+class StreamSupervisor {
+    private static final String TAG = "StreamSupervisor";
+
+    interface Connector {
+        /**
+         * Let go of the lost connection, keeping whatever can be reused for the next one
+         */
+        void disconnect();
+
+        /**
+         * Find the camera again, connect to it and resubscribe the stream
+         *
+         * @throws Exception if it didn't work, another attempt follows after the backoff
+         */
+        void connect() throws Exception;
+    }
+
+    interface Listener {
+        /**
+         * Recovery is under way, called on the supervisor's thread
+         *
+         * @param attempt     attempts that failed so far
+         * @param delayMillis time until the next attempt
+         * @param reason      why the stream was lost or the last attempt failed
+         */
+        void recovering(int attempt, long delayMillis, String reason);
+
+        /**
+         * Frames arrive again, called on the thread calling {@link #frameArrived}
+         *
+         * @param recoveryMillis time from noticing the loss to this frame
+         */
+        void recovered(long recoveryMillis);
+    }
+
+    private enum State {STREAMING, RECOVERING, WAITING_FOR_FRAME}
+
+    private final Connector connector;
+    private final Listener listener;
+    private final long stallNanos;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService executor;
+
+    private volatile long lastFrameNanos;
+    private volatile State state = State.STREAMING;
+    private long lostNanos;
+    private long connectedNanos;
+    private int attempt;
+
+    private long stalls;
+    private long disconnects;
+    private long failedAttempts;
+    private long recoveries;
+    private long totalRecoveryMillis;
+    private long maxRecoveryMillis;
+    private long lastRecoveryMillis = -1;
+
+    /**
+     * Start watching, the stream is expected to be running
+     *
+     * @param stallMillis        time without a frame after which the stream counts as stalled
+     * @param initialDelayMillis backoff after the first failed attempt
+     * @param maxDelayMillis     longest backoff
+     */
+    StreamSupervisor(Connector connector, Listener listener, long stallMillis, long initialDelayMillis, long maxDelayMillis) {
+        this.connector = connector;
+        this.listener = listener;
+        this.stallNanos = TimeUnit.MILLISECONDS.toNanos(stallMillis);
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        lastFrameNanos = System.nanoTime();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, TAG));
+        long period = Math.max(1, stallMillis / 4);
+        executor.scheduleAtFixedRate(this::watch, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A frame came in, called by the stream for every frame
+     */
+    void frameArrived() {
+        lastFrameNanos = System.nanoTime();
+        if (state == State.WAITING_FOR_FRAME) {
+            recovered();
+        }
+    }
+
+    /**
+     * The connection reported itself lost, start recovering right away
+     */
+    void connectionLost(String reason) {
+        synchronized (this) {
+            if (state == State.STREAMING) {
+                disconnects++;
+            }
+        }
+        lost(reason);
+    }
+
+    /**
+     * Stop watching and abandon a recovery under way
+     */
+    void stop() {
+        executor.shutdownNow();
+        Log.d(TAG, "stop: " + this);
+    }
+
+    private void watch() {
+        long silent = System.nanoTime() - lastFrameNanos;
+        State current = state;
+        if (current == State.STREAMING && silent > stallNanos) {
+            synchronized (this) {
+                stalls++;
+            }
+            lost("no frame for " + TimeUnit.NANOSECONDS.toMillis(silent) + " ms");
+        } else if (current == State.WAITING_FOR_FRAME && System.nanoTime() - connectedNanos > stallNanos) {
+            failed("connected, but no frame for " + TimeUnit.NANOSECONDS.toMillis(stallNanos) + " ms");
+        }
+    }
+
+    private synchronized void lost(String reason) {
+        if (state != State.STREAMING) {
+            return;
+        }
+        Log.e(TAG, "Stream lost: " + reason);
+        state = State.RECOVERING;
+        lostNanos = System.nanoTime();
+        schedule(0, reason);
+    }
+
+    private synchronized void failed(String reason) {
+        if (state == State.STREAMING) {
+            return;
+        }
+        state = State.RECOVERING;
+        attempt++;
+        failedAttempts++;
+        long delay = Math.min(maxDelayMillis, initialDelayMillis << Math.min(attempt - 1, 30));
+        Log.e(TAG, "Attempt " + attempt + " failed, " + reason + ", next in " + delay + " ms");
+        schedule(delay, reason);
+    }
+
+    private void schedule(long delayMillis, String reason) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        listener.recovering(attempt, delayMillis, reason);
+        executor.schedule(this::reconnect, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect() {
+        try {
+            connector.disconnect();
+            connector.connect();
+        } catch (InterruptedException e) {
+            // Stopped
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            failed(String.valueOf(e));
+            return;
+        }
+        synchronized (this) {
+            connectedNanos = System.nanoTime();
+            state = State.WAITING_FOR_FRAME;
+        }
+    }
+
+    private void recovered() {
+        long recoveryMillis;
+        synchronized (this) {
+            if (state != State.WAITING_FOR_FRAME) {
+                return;
+            }
+            state = State.STREAMING;
+            attempt = 0;
+            recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lostNanos);
+            recoveries++;
+            totalRecoveryMillis += recoveryMillis;
+            maxRecoveryMillis = Math.max(maxRecoveryMillis, recoveryMillis);
+            lastRecoveryMillis = recoveryMillis;
+        }
+        Log.d(TAG, "Recovered in " + recoveryMillis + " ms: " + this);
+        listener.recovered(recoveryMillis);
+    }
+
+    synchronized long getRecoveries() {
+        return recoveries;
+    }
+
+    /**
+     * @return time to recovery of the last loss in milliseconds, -1 before the first
+     */
+    synchronized long getLastRecoveryMillis() {
+        return lastRecoveryMillis;
+    }
+
+    synchronized long getMaxRecoveryMillis() {
+        return maxRecoveryMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return stalls + " stalls, " + disconnects + " disconnects, " + recoveries + " recoveries, " + failedAttempts
+                + " failed attempts, recovery avg " + (recoveries > 0 ? totalRecoveryMillis / recoveries : 0) + " ms, max "
+                + maxRecoveryMillis + " ms";
+    }
+}
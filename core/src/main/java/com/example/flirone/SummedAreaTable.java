@@ -0,0 +1,93 @@
+package com.example.flirone;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Summed-area table of a {@link TemperatureMatrix}, for the sum of any rectangle in constant time, including rectangles
+ * with fractional edges.
+ * <p>
+ * Entry (x, y) holds the sum of all pixels left of column x and above row y. Pixels are taken to be constant over the
+ * unit square they cover, so the integral of the matrix up to a fractional point is the bilinear interpolation of the
+ * four surrounding entries. A rectangle's sum built from those integrals weights every edge pixel by how much of it the
+ * rectangle covers, and changes smoothly as the rectangle moves or grows by less than a pixel.
+ * <p>
+ * Sums are kept as doubles, a float would lose the hundredths of a Kelvin over a whole frame. The table is reused and
+ * only reallocated when the matrix size changes.
+ */
+class SummedAreaTable {
+    private double[] sums = new double[0];
+    private int width;
+    private int height;
+    private long generation = -1;
+    private TemperatureMatrix source;
+
+    /**
+     * Build the table for a matrix, unless it was already built for the same contents
+     */
+    void build(TemperatureMatrix matrix) {
+        if (matrix == source && matrix.generation() == generation) {
+            return;
+        }
+        width = matrix.width;
+        height = matrix.height;
+        int tableWidth = width + 1;
+        if (sums.length < tableWidth * (height + 1)) {
+            sums = new double[tableWidth * (height + 1)];
+        }
+        // First row and column stay zero
+        for (int x = 0; x <= width; x++) {
+            sums[x] = 0;
+        }
+        FloatBuffer data = matrix.buffer();
+        int stride = matrix.stride;
+        for (int y = 0; y < height; y++) {
+            int above = y * tableWidth;
+            int row = above + tableWidth;
+            int src = y * stride;
+            double rowSum = 0;
+            sums[row] = 0;
+            for (int x = 0; x < width; x++) {
+                rowSum += data.get(src + x);
+                sums[row + x + 1] = sums[above + x + 1] + rowSum;
+            }
+        }
+        source = matrix;
+        generation = matrix.generation();
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    /**
+     * Sum of the pixels in a rectangle, edge pixels weighted by how much of them it covers. The rectangle must lie
+     * within the matrix.
+     *
+     * @param x0 left edge, in pixels
+     * @param y0 top edge
+     * @param x1 right edge, at least x0
+     * @param y1 bottom edge, at least y0
+     */
+    double sum(double x0, double y0, double x1, double y1) {
+        return integral(x1, y1) - integral(x0, y1) - integral(x1, y0) + integral(x0, y0);
+    }
+
+    /**
+     * Sum of all pixels above and left of a point, interpolated between the table entries around it
+     */
+    private double integral(double x, double y) {
+        int ix = Math.min((int) x, width - 1);
+        int iy = Math.min((int) y, height - 1);
+        double fx = x - ix;
+        double fy = y - iy;
+        int tableWidth = width + 1;
+        int i = iy * tableWidth + ix;
+        double top = sums[i] + (sums[i + 1] - sums[i]) * fx;
+        double bottom = sums[i + tableWidth] + (sums[i + tableWidth + 1] - sums[i + tableWidth]) * fx;
+        return top + (bottom - top) * fy;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.flirone;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streams the readings of a {@link TimeSeriesStore} tier as CSV or newline-delimited JSON.
+ * <p>
+ * Rows are read from the store a batch at a time and formatted by a {@link TemperatureFormatter} straight into its
+ * reusable buffer, which is only handed to the Writer when full. Timestamps are written as ISO-8601 UTC and
+ * temperatures in Celsius with two decimals, so no String or Date is created per row. The temperatures of a batch are
+ * converted to Celsius together by {@link TemperatureKernels}.
+ */
+class TemperatureExporter {
+    enum Format {
+        CSV,
+        NDJSON
+    }
+
+    private static final int BATCH_SIZE = 4096;
+    private static final char[] CSV_HEADER = "time,min_c,max_c,avg_c,count\n".toCharArray();
+    private static final char[] JSON_TIME = "{\"time\":\"".toCharArray();
+    private static final char[] JSON_MIN = "\",\"min_c\":".toCharArray();
+    private static final char[] JSON_MAX = ",\"max_c\":".toCharArray();
+    private static final char[] JSON_AVG = ",\"avg_c\":".toCharArray();
+    private static final char[] JSON_COUNT = ",\"count\":".toCharArray();
+    private static final char[] JSON_END = "}\n".toCharArray();
+
+    // Rows are formatted into the line and handed to the Writer once it holds this many chars
+    private static final int FLUSH_LENGTH = 16 * 1024;
+
+    private final TemperatureFormatter line = new TemperatureFormatter(FLUSH_LENGTH + 256);
+    private final ReadingBatch batch = new ReadingBatch(BATCH_SIZE);
+    private final float[] minCelsius = new float[BATCH_SIZE];
+    private final float[] maxCelsius = new float[BATCH_SIZE];
+    private final float[] avgCelsius = new float[BATCH_SIZE];
+
+    /**
+     * Write every entry of the tier to the writer
+     *
+     * @return the number of rows written
+     */
+    long export(TimeSeriesStore store, RollupTier tier, Format format, Writer out) throws IOException {
+        return export(store, tier, Long.MIN_VALUE, Long.MAX_VALUE, format, out);
+    }
+
+    /**
+     * Write the entries of the tier in a time range to the writer
+     *
+     * @param tier one of the store's {@link TimeSeriesStore#raw}, {@link TimeSeriesStore#seconds} or
+     *             {@link TimeSeriesStore#minutes}
+     * @param from first time exported, inclusive
+     * @param to   end of the range, exclusive
+     * @return the number of rows written
+     */
+    long export(TimeSeriesStore store, RollupTier tier, long from, long to, Format format, Writer out)
+            throws IOException {
+        line.reset();
+        long rows = 0;
+        if (format == Format.CSV) {
+            line.append(CSV_HEADER);
+        }
+        long after = from == Long.MIN_VALUE ? from : from - 1;
+        boolean more = true;
+        while (more && store.read(tier, after, batch) > 0) {
+            if (batch.lastTime() >= to) {
+                // The range ends in this batch
+                int end = 0;
+                while (batch.time[end] < to) {
+                    end++;
+                }
+                batch.size = end;
+                more = false;
+            }
+            TemperatureKernels.fromKelvin(batch.min, 0, minCelsius, 0, batch.size, TemperatureScale.CELSIUS);
+            TemperatureKernels.fromKelvin(batch.max, 0, maxCelsius, 0, batch.size, TemperatureScale.CELSIUS);
+            TemperatureKernels.fromKelvin(batch.avg, 0, avgCelsius, 0, batch.size, TemperatureScale.CELSIUS);
+            for (int i = 0; i < batch.size; i++) {
+                if (format == Format.CSV) {
+                    writeCsvRow(i);
+                } else {
+                    writeJsonRow(i);
+                }
+                if (line.length() >= FLUSH_LENGTH) {
+                    line.writeTo(out);
+                    line.reset();
+                }
+            }
+            rows += batch.size;
+            if (batch.size > 0) {
+                after = batch.lastTime();
+            }
+        }
+        line.writeTo(out);
+        line.reset();
+        out.flush();
+        return rows;
+    }
+
+    private void writeCsvRow(int i) {
+        appendTimestamp(batch.time[i]);
+        line.append(',');
+        appendCelsius(minCelsius[i]);
+        line.append(',');
+        appendCelsius(maxCelsius[i]);
+        line.append(',');
+        appendCelsius(avgCelsius[i]);
+        line.append(',').append(batch.count[i]).append('\n');
+    }
+
+    private void writeJsonRow(int i) {
+        line.append(JSON_TIME);
+        appendTimestamp(batch.time[i]);
+        line.append(JSON_MIN);
+        appendCelsius(minCelsius[i]);
+        line.append(JSON_MAX);
+        appendCelsius(maxCelsius[i]);
+        line.append(JSON_AVG);
+        appendCelsius(avgCelsius[i]);
+        line.append(JSON_COUNT).append(batch.count[i]).append(JSON_END);
+    }
+
+    /**
+     * Write a temperature in Celsius with two decimals
+     */
+    private void appendCelsius(float celsius) {
+        line.appendHundredths(Math.round(celsius * 100.0));
+    }
+
+    /**
+     * Write milliseconds since the epoch as yyyy-MM-ddTHH:mm:ss.SSSZ
+     */
+    private void appendTimestamp(long millis) {
+        line.appendDateTime(millis, 'T').append('Z');
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.flirone;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Formats temperatures with two decimals into a reusable char buffer, without going through double to String.
+ * <p>
+ * Temperatures are rounded to hundredths of the unit they are shown in and written as plain digits, optionally followed
+ * by the unit suffix, e.g. "36.62 C". The buffer can be drawn with Canvas.drawText(char[], ...), shown with
+ * TextView.setText(char[], ...) or written straight to a Writer. It only grows when a line doesn't fit; after that
+ * formatting allocates nothing. Whole numbers and timestamps are formatted the same way, for rows that mix them with
+ * temperatures.
+ */
+class TemperatureFormatter {
+    // Sign, 19 digits, point and two decimals
+    static final int MAX_DIGITS = 23;
+
+    private char[] chars;
+    private int length;
+
+    // yyyy-MM-dd of the day last formatted, recomputed only when the day changes
+    private final char[] date = new char[10];
+    private long dateDay = Long.MIN_VALUE;
+
+    TemperatureFormatter(int capacity) {
+        chars = new char[Math.max(capacity, MAX_DIGITS + 2)];
+    }
+
+    /**
+     * @return the temperature in hundredths of the unit, as it will be shown
+     */
+    static long hundredths(double kelvin, TemperatureScale unit) {
+        return Math.round(unit.fromKelvin(kelvin) * 100.0);
+    }
+
+    /**
+     * @return the suffix shown after temperatures in the unit: C, F or K
+     */
+    static char suffix(TemperatureScale unit) {
+        return unit.suffix;
+    }
+
+    /**
+     * Write a value in hundredths as a number with two decimals
+     *
+     * @param dest   buffer with room for {@link #MAX_DIGITS} chars from offset
+     * @param offset where to start writing
+     * @return the offset after the last char written
+     */
+    static int putHundredths(long hundredths, char[] dest, int offset) {
+        if (hundredths < 0) {
+            dest[offset++] = '-';
+            hundredths = -hundredths;
+        }
+        offset = putLong(hundredths / 100, dest, offset);
+        int fraction = (int) (hundredths % 100);
+        dest[offset++] = '.';
+        dest[offset++] = (char) ('0' + fraction / 10);
+        dest[offset++] = (char) ('0' + fraction % 10);
+        return offset;
+    }
+
+    /**
+     * Write a whole number
+     *
+     * @param dest   buffer with room for 20 chars from offset
+     * @param offset where to start writing
+     * @return the offset after the last char written
+     */
+    static int putLong(long value, char[] dest, int offset) {
+        if (value < 0) {
+            dest[offset++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long p = 10; p <= value && digits < 19; p *= 10) {
+            digits++;
+        }
+        return putDigits(value, digits, dest, offset);
+    }
+
+    /**
+     * Write the last digits of a positive number, with leading zeros
+     *
+     * @return the offset after the last char written
+     */
+    static int putDigits(long value, int digits, char[] dest, int offset) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            dest[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + digits;
+    }
+
+    TemperatureFormatter reset() {
+        length = 0;
+        return this;
+    }
+
+    /**
+     * Append a temperature in the given unit
+     *
+     * @param kelvin temperature in Kelvin
+     * @param suffix whether to follow it with a space and the unit suffix
+     */
+    TemperatureFormatter appendTemperature(double kelvin, TemperatureScale unit, boolean suffix) {
+        ensure(MAX_DIGITS + 2);
+        length = putHundredths(hundredths(kelvin, unit), chars, length);
+        if (suffix) {
+            chars[length++] = ' ';
+            chars[length++] = suffix(unit);
+        }
+        return this;
+    }
+
+    TemperatureFormatter append(char c) {
+        ensure(1);
+        chars[length++] = c;
+        return this;
+    }
+
+    TemperatureFormatter append(char[] text) {
+        ensure(text.length);
+        System.arraycopy(text, 0, chars, length, text.length);
+        length += text.length;
+        return this;
+    }
+
+    TemperatureFormatter append(CharSequence text) {
+        int n = text.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            chars[length++] = text.charAt(i);
+        }
+        return this;
+    }
+
+    TemperatureFormatter append(long value) {
+        ensure(20);
+        length = putLong(value, chars, length);
+        return this;
+    }
+
+    /**
+     * Append a value in hundredths with two decimals, for temperatures that were converted to their unit already
+     */
+    TemperatureFormatter appendHundredths(long hundredths) {
+        ensure(MAX_DIGITS);
+        length = putHundredths(hundredths, chars, length);
+        return this;
+    }
+
+    /**
+     * Append a time as yyyy-MM-dd, the separator and HH:mm:ss.SSS
+     *
+     * @param millis milliseconds since the epoch, shifted by the offset of the time zone to show it in
+     */
+    TemperatureFormatter appendDateTime(long millis, char separator) {
+        long day = millis / TimeSeriesStore.DAY;
+        long msOfDay = millis % TimeSeriesStore.DAY;
+        if (msOfDay < 0) {
+            msOfDay += TimeSeriesStore.DAY;
+            day--;
+        }
+        if (day != dateDay) {
+            formatDate(day);
+        }
+        ensure(date.length + 13);
+        System.arraycopy(date, 0, chars, length, date.length);
+        length += date.length;
+        chars[length++] = separator;
+        length = putDigits(msOfDay / TimeSeriesStore.HOUR, 2, chars, length);
+        chars[length++] = ':';
+        length = putDigits(msOfDay / TimeSeriesStore.MINUTE % 60, 2, chars, length);
+        chars[length++] = ':';
+        length = putDigits(msOfDay / TimeSeriesStore.SECOND % 60, 2, chars, length);
+        chars[length++] = '.';
+        length = putDigits(msOfDay % 1000, 3, chars, length);
+        return this;
+    }
+
+    /**
+     * @return the buffer, valid up to {@link #length()} until the next append
+     */
+    char[] chars() {
+        return chars;
+    }
+
+    int length() {
+        return length;
+    }
+
+    void writeTo(Writer out) throws IOException {
+        out.write(chars, 0, length);
+    }
+
+    /**
+     * Civil date from days since 1970-01-01, see http://howardhinnant.github.io/date_algorithms.html
+     */
+    private void formatDate(long epochDay) {
+        long z = epochDay + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long d = doy - (153 * mp + 2) / 5 + 1;
+        long m = mp < 10 ? mp + 3 : mp - 9;
+        long y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+
+        int pos = putDigits(y, 4, date, 0);
+        date[pos++] = '-';
+        pos = putDigits(m, 2, date, pos);
+        date[pos++] = '-';
+        putDigits(d, 2, date, pos);
+        dateDay = epochDay;
+    }
+
+    private void ensure(int n) {
+        if (length + n > chars.length) {
+            char[] grown = new char[Math.max(chars.length * 2, length + n)];
+            System.arraycopy(chars, 0, grown, 0, length);
+            chars = grown;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.flirone;
+
+/**
+ * Fixed-bin histogram of temperatures, for percentiles and the shape of a region's distribution.
+ * <p>
+ * Bins are {@link #BIN_WIDTH} Kelvin wide from {@link #MIN_KELVIN} to {@link #MAX_KELVIN}, values outside that range
+ * are counted in the first or last bin. Because the bins are the same for every histogram, two histograms merge
+ * exactly by adding their counts, so per-frame histograms can be combined into any time window without losing
+ * anything. Quantiles are interpolated within a bin and are accurate to a bin width.
+ * <p>
+ * Only the range of bins that was used is cleared and walked, so a histogram of a small region stays cheap.
+ */
+class TemperatureHistogram {
+    // -40 C to 150 C, the widest range of the FLIR One
+    static final double MIN_KELVIN = 233.15;
+    static final double MAX_KELVIN = 423.15;
+    static final double BIN_WIDTH = 0.05;
+    static final int BINS = (int) Math.round((MAX_KELVIN - MIN_KELVIN) / BIN_WIDTH);
+    private static final double BINS_PER_KELVIN = 1 / BIN_WIDTH;
+
+    private final int[] counts = new int[BINS];
+    private long total;
+    // Range of bins that may be non-zero, empty while lowest > highest
+    private int lowest = BINS;
+    private int highest = -1;
+
+    /**
+     * Bin a value falls into
+     */
+    static int bin(double kelvin) {
+        int bin = (int) ((kelvin - MIN_KELVIN) * BINS_PER_KELVIN);
+        return bin < 0 ? 0 : bin >= BINS ? BINS - 1 : bin;
+    }
+
+    /**
+     * Lower edge of a bin, in Kelvin
+     */
+    static double lowerBound(int bin) {
+        return MIN_KELVIN + bin * BIN_WIDTH;
+    }
+
+    void add(double kelvin) {
+        int bin = bin(kelvin);
+        counts[bin]++;
+        total++;
+        if (bin < lowest) {
+            lowest = bin;
+        }
+        if (bin > highest) {
+            highest = bin;
+        }
+    }
+
+    /**
+     * Add the counts of another histogram to this one
+     */
+    void merge(TemperatureHistogram other) {
+        for (int bin = other.lowest; bin <= other.highest; bin++) {
+            counts[bin] += other.counts[bin];
+        }
+        total += other.total;
+        if (other.lowest < lowest) {
+            lowest = other.lowest;
+        }
+        if (other.highest > highest) {
+            highest = other.highest;
+        }
+    }
+
+    void clear() {
+        for (int bin = lowest; bin <= highest; bin++) {
+            counts[bin] = 0;
+        }
+        total = 0;
+        lowest = BINS;
+        highest = -1;
+    }
+
+    long count() {
+        return total;
+    }
+
+    int count(int bin) {
+        return counts[bin];
+    }
+
+    /**
+     * Temperature below which a fraction q of the values lie
+     *
+     * @param q 0 to 1, e.g. 0.95 for p95
+     * @return the temperature in Kelvin, or NaN if the histogram is empty
+     */
+    double quantile(double q) {
+        if (total == 0) {
+            return Double.NaN;
+        }
+        double rank = Math.max(0, Math.min(1, q)) * total;
+        long below = 0;
+        for (int bin = lowest; bin <= highest; bin++) {
+            int n = counts[bin];
+            if (n > 0 && below + n >= rank) {
+                return lowerBound(bin) + BIN_WIDTH * (rank - below) / n;
+            }
+            below += n;
+        }
+        return lowerBound(highest + 1);
+    }
+
+    /**
+     * Fraction of the values below a temperature, e.g. to tell how much of a region hair or glasses cover
+     */
+    double fractionBelow(double kelvin) {
+        if (total == 0) {
+            return 0;
+        }
+        int limit = bin(kelvin);
+        long below = 0;
+        for (int bin = lowest; bin < limit && bin <= highest; bin++) {
+            below += counts[bin];
+        }
+        return (double) below / total;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.flirone;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Array-at-a-time temperature conversion, for code that works on whole matrices or batches of readings instead of
+ * single values.
+ * <p>
+ * Every conversion between the scales is a linear map, so each kernel is a single multiply-add per element in a
+ * counted loop without branches, calls or aliasing between iterations, which is what the JIT needs to compile it to
+ * SIMD instructions. The scale is chosen once per call, not per value as with {@link TemperatureScale#fromKelvin}.
+ * Results are floats, like the matrices they come from.
+ */
+final class TemperatureKernels {
+    private TemperatureKernels() {
+    }
+
+    /**
+     * Convert temperatures from Kelvin, in place if both arrays and offsets are the same
+     *
+     * @param kelvin  temperatures in Kelvin
+     * @param from    first index in kelvin
+     * @param out     where the converted temperatures go
+     * @param outFrom first index in out
+     * @param length  number of temperatures
+     * @param unit    scale to convert to
+     */
+    static void fromKelvin(float[] kelvin, int from, float[] out, int outFrom, int length, TemperatureScale unit) {
+        scale(kelvin, from, out, outFrom, length, gain(unit), offset(unit));
+    }
+
+    /**
+     * Convert temperatures to Kelvin, in place if both arrays and offsets are the same
+     *
+     * @param values temperatures in the given scale
+     * @param kelvin where the temperatures in Kelvin go
+     * @param unit   scale of values
+     */
+    static void toKelvin(float[] values, int from, float[] kelvin, int kelvinFrom, int length, TemperatureScale unit) {
+        float gain = gain(unit);
+        scale(values, from, kelvin, kelvinFrom, length, 1 / gain, -offset(unit) / gain);
+    }
+
+    /**
+     * Copy a whole matrix into an array, row after row without the stride, converted from Kelvin
+     *
+     * @param out  at least width * height floats
+     * @param unit scale to convert to
+     */
+    static void fromKelvin(TemperatureMatrix matrix, float[] out, TemperatureScale unit) {
+        FloatBuffer rows = matrix.buffer().duplicate();
+        for (int y = 0; y < matrix.height; y++) {
+            // Through Buffer, the covariant FloatBuffer.position(int) doesn't exist on older runtimes
+            ((Buffer) rows).position(y * matrix.stride);
+            rows.get(out, y * matrix.width, matrix.width);
+        }
+        fromKelvin(out, 0, out, 0, matrix.width * matrix.height, unit);
+    }
+
+    /**
+     * out = in * gain + offset, element by element
+     */
+    static void scale(float[] in, int from, float[] out, int outFrom, int length, float gain, float offset) {
+        if (from < 0 || outFrom < 0 || length < 0 || from + length > in.length || outFrom + length > out.length) {
+            throw new IndexOutOfBoundsException("length " + length + " from " + from + " of " + in.length + " to " + outFrom + " of " + out.length);
+        }
+        if (in == out && from == outFrom) {
+            // The common in-place case, one index so the loop is trivially vectorizable
+            for (int i = from, end = from + length; i < end; i++) {
+                in[i] = in[i] * gain + offset;
+            }
+            return;
+        }
+        int shift = outFrom - from;
+        for (int i = from, end = from + length; i < end; i++) {
+            out[i + shift] = in[i] * gain + offset;
+        }
+    }
+
+    private static float gain(TemperatureScale unit) {
+        return unit == TemperatureScale.FAHRENHEIT ? 1.8f : 1;
+    }
+
+    private static float offset(TemperatureScale unit) {
+        switch (unit) {
+            case CELSIUS:
+                return (float) -TemperatureScale.ZERO_CELSIUS;
+            case FAHRENHEIT:
+                return (float) (32 - TemperatureScale.ZERO_CELSIUS * 1.8);
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.flirone;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Off-heap matrix holding the temperature (in Kelvin) of every pixel of one thermal frame.
+ * <p>
+ * The matrix is filled once per frame from the ThermalImage and handed by reference to every stage that needs
+ * temperatures, so no stage has to ask the SDK again. Rows are {@link #stride} floats apart in a direct FloatBuffer.
+ * <p>
+ * Matrices are reference counted: whoever acquires one from a {@link TemperatureMatrixPool} holds the first reference.
+ * A stage that keeps the matrix after the call it was handed in must {@link #retain()} it and {@link #release()} it
+ * when done; the last release returns it to the pool. Every refill bumps the {@link #generation()}, so a holder can
+ * tell whether the contents it remembered are still the ones in the buffer.
+ */
+class TemperatureMatrix {
+    final int width;
+    final int height;
+    final int stride;
+
+    private final FloatBuffer data;
+    private final TemperatureMatrixPool pool;
+    private final AtomicInteger refCount = new AtomicInteger();
+    private volatile long generation;
+    private long timestamp;
+
+    TemperatureMatrix(int width, int height, TemperatureMatrixPool pool) {
+        this.width = width;
+        this.height = height;
+        // Keep rows 16 byte aligned
+        this.stride = (width + 3) & ~3;
+        this.pool = pool;
+        this.data = ByteBuffer.allocateDirect(stride * height * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Copy a row-major array of temperatures, as returned by ThermalImage.getValues(), into the matrix
+     *
+     * @param values    width * height temperatures in Kelvin
+     * @param timestamp time the frame was received, in milliseconds
+     */
+    void fill(double[] values, long timestamp) {
+        fill(values, 0, timestamp);
+    }
+
+    /**
+     * Copy a row-major array of temperatures into the matrix, adding an offset to every value on the way
+     *
+     * @param values    width * height temperatures in Kelvin
+     * @param offset    Kelvin to add
+     * @param timestamp time the frame was received, in milliseconds
+     */
+    void fill(double[] values, float offset, long timestamp) {
+        if (values.length < width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " values, got " + values.length);
+        }
+        for (int y = 0; y < height; y++) {
+            int row = y * stride;
+            int src = y * width;
+            for (int x = 0; x < width; x++) {
+                data.put(row + x, (float) values[src + x] + offset);
+            }
+        }
+        filled(timestamp);
+    }
+
+    /**
+     * Mark the matrix as holding a new frame after it was written with {@link #set}
+     *
+     * @param timestamp time the frame was received, in milliseconds
+     */
+    void filled(long timestamp) {
+        this.timestamp = timestamp;
+        generation++;
+    }
+
+    /**
+     * @return the temperature in Kelvin at the given pixel
+     */
+    float get(int x, int y) {
+        return data.get(y * stride + x);
+    }
+
+    void set(int x, int y, float kelvin) {
+        data.put(y * stride + x, kelvin);
+    }
+
+    /**
+     * @return the underlying buffer. Use absolute get/put with {@link #stride} to address rows, never change its position
+     */
+    FloatBuffer buffer() {
+        return data;
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    long timestamp() {
+        return timestamp;
+    }
+
+    boolean isAlive() {
+        return refCount.get() > 0;
+    }
+
+    /**
+     * Take an additional reference to this matrix
+     *
+     * @return this matrix, for chaining
+     */
+    TemperatureMatrix retain() {
+        if (refCount.getAndIncrement() <= 0) {
+            refCount.decrementAndGet();
+            throw new IllegalStateException("retain() on a recycled TemperatureMatrix");
+        }
+        return this;
+    }
+
+    /**
+     * Drop a reference to this matrix. The last release hands it back to its pool.
+     */
+    void release() {
+        int count = refCount.decrementAndGet();
+        if (count == 0) {
+            if (pool != null) {
+                pool.recycle(this);
+            }
+        } else if (count < 0) {
+            refCount.incrementAndGet();
+            throw new IllegalStateException("release() on a recycled TemperatureMatrix");
+        }
+    }
+
+    /**
+     * Called by the pool when the matrix is handed out again
+     */
+    void acquired() {
+        refCount.set(1);
+    }
+}
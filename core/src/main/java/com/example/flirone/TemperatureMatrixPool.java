@@ -0,0 +1,41 @@
+package com.example.flirone;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Recycles {@link TemperatureMatrix} instances so the off-heap buffers are only allocated when the resolution changes.
+ * The pool keeps at most {@code capacity} free matrices, anything above that is left to the garbage collector.
+ */
+class TemperatureMatrixPool {
+    private final ArrayBlockingQueue<TemperatureMatrix> free;
+
+    TemperatureMatrixPool(int capacity) {
+        free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Get a matrix of the given size holding a single reference
+     *
+     * @param width  width of the thermal frame
+     * @param height height of the thermal frame
+     * @return a recycled matrix if one of the right size is free, else a newly allocated one
+     */
+    TemperatureMatrix acquire(int width, int height) {
+        TemperatureMatrix matrix;
+        while ((matrix = free.poll()) != null) {
+            if (matrix.width == width && matrix.height == height) {
+                break;
+            }
+            // Resolution changed, let the stale buffer be collected
+        }
+        if (matrix == null) {
+            matrix = new TemperatureMatrix(width, height, this);
+        }
+        matrix.acquired();
+        return matrix;
+    }
+
+    void recycle(TemperatureMatrix matrix) {
+        free.offer(matrix);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.flirone;
+
+/**
+ * Units temperatures are shown in. Everything is stored and computed in Kelvin and only converted for display.
+ */
+enum TemperatureScale {
+    KELVIN('K'),
+    CELSIUS('C'),
+    FAHRENHEIT('F');
+
+    static final double ZERO_CELSIUS = 273.15;
+
+    final char suffix;
+
+    TemperatureScale(char suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * @param kelvin temperature in Kelvin
+     * @return the temperature in this unit
+     */
+    double fromKelvin(double kelvin) {
+        switch (this) {
+            case CELSIUS:
+                return kelvin - ZERO_CELSIUS;
+            case FAHRENHEIT:
+                return (kelvin - ZERO_CELSIUS) * 9 / 5 + 32;
+            default:
+                return kelvin;
+        }
+    }
+
+    /**
+     * @param value temperature in this unit
+     * @return the temperature in Kelvin
+     */
+    double toKelvin(double value) {
+        switch (this) {
+            case CELSIUS:
+                return value + ZERO_CELSIUS;
+            case FAHRENHEIT:
+                return (value - 32) * 5 / 9 + ZERO_CELSIUS;
+            default:
+                return value;
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package com.example.flirone;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded time-series store for ROI temperature statistics with tiered retention:
+ * raw readings for an hour, 1-second rollups for a day and 1-minute rollups for 90 days.
+ * <p>
+ * Rollups are computed incrementally as readings come in, every tier is a fixed size ring, and a background task
+ * persists the tiers and deletes daily log files that have aged out, so heap and disk use stay flat however long the
+ * kiosk runs. Every tier has an append-only file: a compaction only copies the entries closed since the last one
+ * under the lock and appends them, and a file that has grown to twice its tier is rewritten from disk with just the
+ * live entries, outside the lock. The open rollup buckets are written along with them and picked up again on
+ * {@link #open}, so a restart doesn't lose a partial second or minute.
+ * <p>
+ * All temperatures are in Kelvin, times in milliseconds since the epoch.
+ */
+class TimeSeriesStore {
+    static final long SECOND = 1000;
+    static final long MINUTE = 60 * SECOND;
+    static final long HOUR = 60 * MINUTE;
+    static final long DAY = 24 * HOUR;
+
+    private static final long RAW_RETENTION = HOUR;
+    private static final long SECOND_RETENTION = DAY;
+    private static final long MINUTE_RETENTION = 90 * DAY;
+    // The camera delivers ~9 fps, leave room for faster sources
+    private static final int RAW_CAPACITY = 16 * (int) (RAW_RETENTION / SECOND);
+    private static final long COMPACTION_INTERVAL_MINUTES = 1;
+    // Records a tier file may hold beyond twice its tier before it is rewritten, so small tiers aren't rewritten often
+    private static final int REWRITE_SLACK = 1024;
+    private static final int TIER_FILE_MAGIC = 0x54534631; // "TSF1"
+    private static final int TIER_FILE_HEADER = 4 + 8;
+    static final String RAW_FILE = "readings-raw.log";
+    static final String SECOND_FILE = "rollups-1s.log";
+    static final String MINUTE_FILE = "rollups-1m.log";
+    private static final String BUCKET_FILE = "rollups-open.bin";
+    private static final String FULL_LOG_SUFFIX = "-FULL";
+
+    final RollupTier raw = new RollupTier(0, RAW_RETENTION, RAW_CAPACITY);
+    final RollupTier seconds = new RollupTier(SECOND, SECOND_RETENTION, (int) (SECOND_RETENTION / SECOND));
+    final RollupTier minutes = new RollupTier(MINUTE, MINUTE_RETENTION, (int) (MINUTE_RETENTION / MINUTE));
+
+    private final Accumulator secondBucket = new Accumulator(seconds);
+    private final Accumulator minuteBucket = new Accumulator(minutes);
+
+    private final TierFile rawFile = new TierFile(raw, RAW_FILE);
+    private final TierFile[] files = {rawFile, new TierFile(seconds, SECOND_FILE), new TierFile(minutes, MINUTE_FILE)};
+    // Held while the files are written, so a compaction from close() never interleaves with a scheduled one
+    private final Object diskLock = new Object();
+
+    private File directory;
+    private ScheduledExecutorService compactor;
+
+    /**
+     * Load the persisted tiers from the directory and start compacting to it in the background.
+     * Calling it again with the store already open does nothing.
+     *
+     * @param directory where rollups are persisted and daily logs are kept
+     */
+    synchronized void open(File directory) {
+        if (compactor != null || directory == null) {
+            return;
+        }
+        this.directory = directory;
+        for (TierFile file : files) {
+            file.load(directory);
+        }
+        loadBuckets(new File(directory, BUCKET_FILE));
+        compactor = Executors.newSingleThreadScheduledExecutor();
+        compactor.scheduleWithFixedDelay(this::compact, COMPACTION_INTERVAL_MINUTES, COMPACTION_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stop background compaction, close the open rollup buckets into their tiers and persist every tier one last time
+     */
+    void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = compactor;
+            compactor = null;
+            if (executor == null) {
+                return;
+            }
+            secondBucket.flush();
+            minuteBucket.flush();
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compact();
+        synchronized (this) {
+            directory = null;
+        }
+    }
+
+    /**
+     * Record one ROI reading and fold it into the open rollup buckets
+     */
+    synchronized void ingest(long time, float min, float max, float avg) {
+        raw.append(time, min, max, avg, 1);
+        secondBucket.add(time, min, max, avg, 1);
+        minuteBucket.add(time, min, max, avg, 1);
+    }
+
+    /**
+     * Drop the raw readings, rollups are kept
+     */
+    synchronized void clearRaw() {
+        raw.clear();
+        rawFile.cleared = true;
+        rawFile.persisted = raw.appended();
+    }
+
+    /**
+     * Copy the next readings of a tier into a batch. Readers page through a tier by passing the time of the last entry
+     * they got, which keeps working while new readings push old ones out of the ring.
+     *
+     * @param tier  one of {@link #raw}, {@link #seconds} or {@link #minutes}
+     * @param after only entries newer than this time are copied, Long.MIN_VALUE to start at the oldest
+     * @param batch filled with up to its capacity entries
+     * @return the number of entries copied, 0 once the reader has caught up
+     */
+    synchronized int read(RollupTier tier, long after, ReadingBatch batch) {
+        return tier.copyTo(tier.firstAfter(after), batch);
+    }
+
+    /**
+     * Append what the tiers closed since the last compaction to their files, rewrite the files that grew to twice their
+     * tier, persist the open buckets and drop daily logs older than the minute retention. Only the new entries and the
+     * buckets are copied under the ingest lock, the disk work happens outside of it.
+     */
+    void compact() {
+        synchronized (diskLock) {
+            File dir;
+            byte[][] fresh = new byte[files.length][];
+            long[] persisted = new long[files.length];
+            boolean[] truncate = new boolean[files.length];
+            int[] sizes = new int[files.length];
+            byte[] buckets;
+            synchronized (this) {
+                dir = directory;
+                if (dir == null) {
+                    return;
+                }
+                try {
+                    for (int i = 0; i < files.length; i++) {
+                        TierFile file = files[i];
+                        persisted[i] = file.persisted;
+                        truncate[i] = file.cleared;
+                        sizes[i] = file.tier.size();
+                        fresh[i] = file.takeFresh();
+                    }
+                    buckets = snapshotBuckets();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+            }
+            for (int i = 0; i < files.length; i++) {
+                TierFile file = files[i];
+                if (!file.append(dir, fresh[i], truncate[i])) {
+                    // Try again with the next compaction, the entries are still in the ring
+                    synchronized (this) {
+                        file.persisted = Math.min(file.persisted, persisted[i]);
+                        file.cleared |= truncate[i];
+                    }
+                } else if (file.records > 2L * sizes[i] + REWRITE_SLACK) {
+                    file.rewrite(dir);
+                }
+            }
+            write(dir, BUCKET_FILE, buckets);
+
+            long expired = System.currentTimeMillis() - MINUTE_RETENTION;
+            File[] logs = dir.listFiles((d, name) -> name.endsWith(FULL_LOG_SUFFIX));
+            if (logs != null) {
+                for (File log : logs) {
+                    if (log.lastModified() < expired) {
+                        log.delete();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The open buckets as they are persisted, taken under the lock so the write can happen outside of it
+     */
+    private byte[] snapshotBuckets() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            secondBucket.writeTo(out);
+            minuteBucket.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void loadBuckets(File file) {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            secondBucket.readFrom(in);
+            minuteBucket.readFrom(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            secondBucket.reset();
+            minuteBucket.reset();
+        }
+    }
+
+    /**
+     * @return whether the file was replaced
+     */
+    private static boolean write(File dir, String name, byte[] snapshot) {
+        // Write next to the old file and swap, so a crash never leaves a half written file
+        File tmp = new File(dir, name + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             BufferedOutputStream out = new BufferedOutputStream(fos)) {
+            out.write(snapshot);
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+            return false;
+        }
+        if (!tmp.renameTo(new File(dir, name))) {
+            tmp.delete();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Append the records of a tier file to a tier
+     *
+     * @return the number of whole records in the file, a torn last one is left to be overwritten by the next append
+     */
+    private static int readTierFile(File file, RollupTier tier) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != TIER_FILE_MAGIC || in.readLong() != tier.period) {
+                throw new IOException("Not a file of this rollup tier: " + file);
+            }
+            int n = (int) ((file.length() - TIER_FILE_HEADER) / RollupTier.ENTRY_SIZE);
+            tier.readFrom(in, n);
+            return n;
+        }
+    }
+
+    /**
+     * The append-only file of a tier. Its counters are guarded by the store for {@link #persisted} and {@link #cleared},
+     * and by the disk lock for {@link #records}.
+     */
+    private static class TierFile {
+        final RollupTier tier;
+        final String name;
+        // Entries of the tier up to this count of RollupTier.appended() are in the file
+        long persisted;
+        // The tier was cleared since the last compaction, the file starts over
+        boolean cleared;
+        // Whole records in the file
+        long records;
+
+        TierFile(RollupTier tier, String name) {
+            this.tier = tier;
+            this.name = name;
+        }
+
+        void load(File dir) {
+            File file = new File(dir, name);
+            tier.clear();
+            records = 0;
+            cleared = false;
+            if (file.exists()) {
+                try {
+                    records = readTierFile(file, tier);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    tier.clear();
+                    cleared = true;
+                }
+            }
+            persisted = tier.appended();
+        }
+
+        /**
+         * The entries appended since the last call, bounded by what came in since and not by the size of the tier
+         */
+        byte[] takeFresh() throws IOException {
+            int n = (int) Math.min(tier.appended() - persisted, tier.size());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(n * RollupTier.ENTRY_SIZE);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                tier.writeTo(out, tier.size() - n);
+            }
+            persisted = tier.appended();
+            cleared = false;
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Append records after the last whole one and sync, starting the file over first when asked to
+         *
+         * @return false if the write failed, nothing past the last whole record counts then
+         */
+        boolean append(File dir, byte[] entries, boolean truncate) {
+            if (entries.length == 0 && !truncate) {
+                return true;
+            }
+            try (RandomAccessFile out = new RandomAccessFile(new File(dir, name), "rw")) {
+                if (truncate || out.length() < TIER_FILE_HEADER) {
+                    out.setLength(0);
+                    out.writeInt(TIER_FILE_MAGIC);
+                    out.writeLong(tier.period);
+                    records = 0;
+                }
+                long end = TIER_FILE_HEADER + records * RollupTier.ENTRY_SIZE;
+                out.seek(end);
+                out.write(entries);
+                out.setLength(end + entries.length);
+                out.getFD().sync();
+                records += entries.length / RollupTier.ENTRY_SIZE;
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        /**
+         * Replace the file with the entries that are still live, read back from the file itself so the tier isn't
+         * touched
+         */
+        void rewrite(File dir) {
+            RollupTier live = new RollupTier(tier.period, tier.retention, tier.capacity());
+            ByteArrayOutputStream bytes;
+            try {
+                readTierFile(new File(dir, name), live);
+                bytes = new ByteArrayOutputStream(TIER_FILE_HEADER + live.size() * RollupTier.ENTRY_SIZE);
+                try (DataOutputStream out = new DataOutputStream(bytes)) {
+                    out.writeInt(TIER_FILE_MAGIC);
+                    out.writeLong(tier.period);
+                    live.writeTo(out, 0);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            if (write(dir, name, bytes.toByteArray())) {
+                records = live.size();
+            }
+        }
+    }
+
+    /**
+     * Open bucket of a rollup tier, closed into the tier once a reading falls past its end
+     */
+    private static class Accumulator {
+        private final RollupTier tier;
+        private long start = Long.MIN_VALUE;
+        private float min;
+        private float max;
+        private double sum;
+        private int count;
+
+        Accumulator(RollupTier tier) {
+            this.tier = tier;
+        }
+
+        void add(long time, float mn, float mx, float av, int n) {
+            long bucket = time - time % tier.period;
+            if (bucket != start) {
+                if (count > 0) {
+                    tier.append(start, min, max, (float) (sum / count), count);
+                }
+                start = bucket;
+                min = mn;
+                max = mx;
+                sum = 0;
+                count = 0;
+            }
+            min = Math.min(min, mn);
+            max = Math.max(max, mx);
+            sum += (double) av * n;
+            count += n;
+        }
+
+        /**
+         * Close the bucket into the tier, the next reading opens a new one
+         */
+        void flush() {
+            if (count > 0) {
+                tier.append(start, min, max, (float) (sum / count), count);
+            }
+            reset();
+        }
+
+        void reset() {
+            start = Long.MIN_VALUE;
+            count = 0;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            if (count > 0) {
+                out.writeLong(start);
+                out.writeFloat(min);
+                out.writeFloat(max);
+                out.writeDouble(sum);
+            }
+        }
+
+        void readFrom(DataInputStream in) throws IOException {
+            reset();
+            int n = in.readInt();
+            if (n > 0) {
+                start = in.readLong();
+                min = in.readFloat();
+                max = in.readFloat();
+                sum = in.readDouble();
+                count = n;
+            }
+        }
+    }
+}
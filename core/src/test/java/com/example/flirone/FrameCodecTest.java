@@ -0,0 +1,116 @@
+package com.example.flirone;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class FrameCodecTest {
+    private static final int WIDTH = 17;
+    private static final int HEIGHT = 11;
+
+    private final TemperatureMatrixPool pool = new TemperatureMatrixPool(4);
+
+    @Test
+    public void roundTripsWithinQuantization() throws IOException {
+        Random random = new Random(1);
+        double[][] frames = new double[7][];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameEncoder encoder = new FrameEncoder(bytes, 3, null);
+        for (int f = 0; f < frames.length; f++) {
+            frames[f] = new double[WIDTH * HEIGHT];
+            for (int i = 0; i < frames[f].length; i++) {
+                // Flat areas for the zero runs, noise for the residuals
+                frames[f][i] = i % 5 == 0 ? 295 : 290 + random.nextDouble() * 40;
+            }
+            write(encoder, frames[f], 1000 + f);
+        }
+        encoder.flush();
+
+        FrameDecoder decoder = new FrameDecoder(new ByteArrayInputStream(bytes.toByteArray()));
+        assertNull(decoder.getCorrection());
+        for (int f = 0; f < frames.length; f++) {
+            TemperatureMatrix matrix = decoder.read(pool);
+            assertNotNull(matrix);
+            assertEquals(1000 + f, matrix.timestamp());
+            for (int i = 0; i < frames[f].length; i++) {
+                assertEquals(frames[f][i], matrix.get(i % WIDTH, i / WIDTH), 0.005 + 1e-4);
+            }
+            matrix.release();
+        }
+        assertNull(decoder.read(pool));
+        assertEquals(frames.length, decoder.getFrames());
+    }
+
+    @Test
+    public void keepsTheRecordedCorrection() throws IOException {
+        RadiometricCorrection correction = new RadiometricCorrection(0.95, 293.15, 290.15, 0.99, 280.15, 0.9);
+        FrameDecoder decoder = new FrameDecoder(new ByteArrayInputStream(encode(correction)));
+        RadiometricCorrection recorded = decoder.getCorrection();
+        assertNotNull(recorded);
+        assertEquals(correction.emissivity, recorded.emissivity, 0);
+        assertEquals(correction.reflectedKelvin, recorded.reflectedKelvin, 0);
+        assertEquals(correction.atmosphericKelvin, recorded.atmosphericKelvin, 0);
+        assertEquals(correction.transmission, recorded.transmission, 0);
+        assertEquals(correction.opticsKelvin, recorded.opticsKelvin, 0);
+        assertEquals(correction.opticsTransmission, recorded.opticsTransmission, 0);
+        assertNotNull(decoder.read(pool));
+    }
+
+    @Test
+    public void readsVersionOneStreams() throws IOException {
+        byte[] current = encode(null);
+        // Version 1 has no correction flag after the version
+        byte[] old = new byte[current.length - 1];
+        System.arraycopy(current, 0, old, 0, 8);
+        System.arraycopy(current, 9, old, 8, current.length - 9);
+        old[7] = FrameCodec.VERSION_WITHOUT_CORRECTION;
+
+        FrameDecoder decoder = new FrameDecoder(new ByteArrayInputStream(old));
+        assertNull(decoder.getCorrection());
+        TemperatureMatrix matrix = decoder.read(pool);
+        assertEquals(300.0, matrix.get(0, 0), 0.005);
+    }
+
+    @Test
+    public void rejectsTruncatedStreams() throws IOException {
+        byte[] stream = encode(null);
+        for (int cut = 9 + 1; cut < stream.length; cut += 7) {
+            FrameDecoder decoder = new FrameDecoder(new ByteArrayInputStream(Arrays.copyOf(stream, cut)));
+            try {
+                decoder.read(pool);
+                fail("Accepted a stream cut at " + cut + " of " + stream.length + " bytes");
+            } catch (EOFException expected) {
+                // The frame ended early
+            }
+        }
+    }
+
+    private byte[] encode(RadiometricCorrection correction) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameEncoder encoder = new FrameEncoder(bytes, 1, correction);
+        double[] values = new double[WIDTH * HEIGHT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 300 + i * 0.01;
+        }
+        write(encoder, values, 0);
+        encoder.flush();
+        return bytes.toByteArray();
+    }
+
+    private void write(FrameEncoder encoder, double[] values, long timestamp) throws IOException {
+        TemperatureMatrix matrix = pool.acquire(WIDTH, HEIGHT);
+        matrix.fill(values, timestamp);
+        encoder.write(matrix);
+        matrix.release();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.flirone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LogPageReaderTest {
+    private static final int READINGS = 1000;
+
+    @Test
+    public void pagesThroughEveryReading() {
+        TimeSeriesStore store = store();
+        LogPageReader reader = new LogPageReader(store, store.raw);
+        reader.refresh();
+        assertEquals(READINGS, reader.size());
+        // Out of order, so pages are evicted and loaded again
+        for (int position : new int[]{0, 999, 64, 500, 63, 1, 700, 128, 999, 0}) {
+            ReadingBatch page = reader.page(position);
+            boolean last = position / LogPageReader.PAGE_SIZE == (READINGS - 1) / LogPageReader.PAGE_SIZE;
+            assertEquals(last ? READINGS % LogPageReader.PAGE_SIZE : LogPageReader.PAGE_SIZE, page.size);
+            assertEquals(time(position), page.time[position % LogPageReader.PAGE_SIZE]);
+        }
+        assertEquals(250, reader.positionOf(time(250)));
+        assertEquals(251, reader.positionOf(time(250) + 1));
+        assertEquals(0, reader.positionOf(Long.MIN_VALUE));
+        assertEquals(READINGS, reader.positionOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void onlyShowsReadingsAtOrAboveTheThreshold() {
+        TimeSeriesStore store = store();
+        LogPageReader reader = new LogPageReader(store, store.raw);
+        // Every third reading is warm
+        reader.setThreshold(310);
+        reader.refresh();
+        assertEquals((READINGS + 2) / 3, reader.size());
+        for (int position = 0; position < reader.size(); position++) {
+            ReadingBatch page = reader.page(position);
+            int i = position % LogPageReader.PAGE_SIZE;
+            assertEquals(time(position * 3), page.time[i]);
+            assertEquals(310, page.avg[i], 0);
+        }
+        assertEquals(2, reader.positionOf(time(5)));
+    }
+
+    @Test
+    public void ignoresReadingsAfterTheRefresh() {
+        TimeSeriesStore store = store();
+        LogPageReader reader = new LogPageReader(store, store.raw);
+        reader.refresh();
+        store.ingest(time(READINGS), 300, 320, 310);
+        ReadingBatch last = reader.page(READINGS - 1);
+        assertEquals(time(READINGS - 1), last.time[last.size - 1]);
+        assertEquals(READINGS, reader.size());
+    }
+
+    private static TimeSeriesStore store() {
+        TimeSeriesStore store = new TimeSeriesStore();
+        for (int i = 0; i < READINGS; i++) {
+            store.ingest(time(i), 290, 320, i % 3 == 0 ? 310 : 300);
+        }
+        return store;
+    }
+
+    private static long time(int i) {
+        return 1600000000000L + i * 111L;
+    }
+}
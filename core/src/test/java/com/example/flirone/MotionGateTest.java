@@ -0,0 +1,83 @@
+package com.example.flirone;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MotionGateTest {
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 24;
+    private static final long FRAME_MILLIS = 100;
+    private static final int HOLD_FRAMES = 10;
+
+    private final TemperatureMatrixPool pool = new TemperatureMatrixPool(2);
+    private final MotionGate gate = new MotionGate(8, 6, 0.3, TemperatureScale.ZERO_CELSIUS + 32, HOLD_FRAMES * FRAME_MILLIS);
+
+    @Test
+    public void idlesOnAStaticScene() {
+        double[] scene = scene(293.15);
+        for (int f = 0; f < 100; f++) {
+            update(scene, f);
+        }
+        // The first frame opens the gate for the hold time, frames 0 to 10
+        assertEquals(0.89, gate.getIdleRatio(), 1e-9);
+    }
+
+    @Test
+    public void opensOnMotionUntilTheBackgroundCatchesUp() {
+        double[] scene = scene(293.15);
+        for (int f = 0; f < 20; f++) {
+            update(scene, f);
+        }
+        assertFalse(update(scene, 20));
+        // A 1 K change in one cell of the grid
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                scene[y * WIDTH + x] += 1;
+            }
+        }
+        assertTrue(update(scene, 21));
+        // The scene is static again, but the background only follows slowly
+        for (int f = 22; f < 22 + 2 * HOLD_FRAMES; f++) {
+            assertTrue(update(scene, f));
+        }
+        assertEquals(10 / 42.0, gate.getIdleRatio(), 1e-9);
+    }
+
+    @Test
+    public void opensForABodyThatStandsStill() {
+        double[] scene = scene(293.15);
+        scene[WIDTH * 10 + 10] = TemperatureScale.ZERO_CELSIUS + 34;
+        for (int f = 0; f < 50; f++) {
+            assertTrue(update(scene, f));
+        }
+        assertEquals(0, gate.getIdleRatio(), 0);
+
+        // Without the warm level only the hold time of the last warm frame is left
+        gate.setWarmKelvin(Double.NaN);
+        for (int f = 50; f < 100; f++) {
+            update(scene, f);
+        }
+        assertEquals((50 - HOLD_FRAMES) / 100.0, gate.getIdleRatio(), 1e-9);
+    }
+
+    private boolean update(double[] scene, int frame) {
+        TemperatureMatrix matrix = pool.acquire(WIDTH, HEIGHT);
+        matrix.fill(scene, frame * FRAME_MILLIS);
+        try {
+            return gate.update(matrix, frame * FRAME_MILLIS);
+        } finally {
+            matrix.release();
+        }
+    }
+
+    private static double[] scene(double kelvin) {
+        double[] scene = new double[WIDTH * HEIGHT];
+        Arrays.fill(scene, kelvin);
+        return scene;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.flirone;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReadingJournalTest {
+    private static final int RECORDS = 10;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoversEveryRecordWrittenBeforeATornTail() throws IOException {
+        File directory = folder.getRoot();
+        writeRecords(directory);
+        File file = new File(directory, ReadingJournal.FILE_NAME);
+        long complete = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // Half a record, as a crash in the middle of a write leaves it
+            raf.seek(complete);
+            raf.write(new byte[ReadingJournal.RECORD_SIZE / 2]);
+        }
+
+        ReadingBatch batch = new ReadingBatch(64);
+        assertEquals(RECORDS, recover(directory, batch));
+        assertEquals(RECORDS, batch.size);
+        for (int i = 0; i < RECORDS; i++) {
+            assertEquals(1000 + i, batch.time[i]);
+            assertEquals(300 + i, batch.avg[i], 0);
+            assertEquals(305 + i, batch.p95[i], 0);
+        }
+        assertEquals(complete, file.length());
+    }
+
+    @Test
+    public void stopsAtADamagedRecord() throws IOException {
+        File directory = folder.getRoot();
+        writeRecords(directory);
+        File file = new File(directory, ReadingJournal.FILE_NAME);
+        long damaged = file.length() - 3 * ReadingJournal.RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(damaged + 9);
+            raf.write(0x5A);
+        }
+
+        ReadingBatch batch = new ReadingBatch(64);
+        assertEquals(RECORDS - 3, recover(directory, batch));
+        assertEquals(damaged, file.length());
+    }
+
+    @Test
+    public void checkpointEmptiesTheJournal() throws IOException {
+        File directory = folder.getRoot();
+        ReadingJournal journal = new ReadingJournal(directory, 60000);
+        journal.append(1, 290, 310, 300, 305, 306);
+        journal.sync();
+        journal.checkpoint();
+        journal.close();
+        assertEquals(0, recover(directory, new ReadingBatch(4)));
+    }
+
+    private static void writeRecords(File directory) throws IOException {
+        ReadingJournal journal = new ReadingJournal(directory, 60000);
+        for (int i = 0; i < RECORDS; i++) {
+            journal.append(1000 + i, 290 + i, 310 + i, 300 + i, 304 + i, 305 + i);
+        }
+        journal.sync();
+        journal.close();
+    }
+
+    private static int recover(File directory, ReadingBatch batch) throws IOException {
+        ReadingJournal journal = new ReadingJournal(directory, 60000);
+        try {
+            return journal.recover(batch);
+        } finally {
+            journal.close();
+        }
+    }
+}
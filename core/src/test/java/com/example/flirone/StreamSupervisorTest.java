@@ -0,0 +1,103 @@
+package com.example.flirone;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamSupervisorTest {
+    // Long enough that the watchdog stays out of the way
+    private static final long STALL_MILLIS = 60000;
+
+    @Test
+    public void backoffDoublesUpToTheMaximum() throws InterruptedException {
+        List<Long> delays = new ArrayList<>();
+        CountDownLatch attempts = new CountDownLatch(6);
+        StreamSupervisor supervisor = new StreamSupervisor(new Connector(Integer.MAX_VALUE), new StreamSupervisor.Listener() {
+            @Override
+            public void recovering(int attempt, long delayMillis, String reason) {
+                synchronized (delays) {
+                    delays.add(delayMillis);
+                }
+                attempts.countDown();
+            }
+
+            @Override
+            public void recovered(long recoveryMillis) {
+            }
+        }, STALL_MILLIS, 5, 40);
+        try {
+            supervisor.connectionLost("unplugged");
+            assertTrue(attempts.await(5, TimeUnit.SECONDS));
+        } finally {
+            supervisor.stop();
+        }
+        synchronized (delays) {
+            assertEquals(Arrays.asList(0L, 5L, 10L, 20L, 40L, 40L), delays.subList(0, 6));
+        }
+    }
+
+    @Test
+    public void recoversOnTheFirstFrameAfterConnecting() throws InterruptedException {
+        Connector connector = new Connector(2);
+        CountDownLatch connected = connector.connected;
+        CountDownLatch recovered = new CountDownLatch(1);
+        StreamSupervisor supervisor = new StreamSupervisor(connector, new StreamSupervisor.Listener() {
+            @Override
+            public void recovering(int attempt, long delayMillis, String reason) {
+            }
+
+            @Override
+            public void recovered(long recoveryMillis) {
+                recovered.countDown();
+            }
+        }, STALL_MILLIS, 1, 10);
+        try {
+            supervisor.connectionLost("unplugged");
+            assertTrue(connected.await(5, TimeUnit.SECONDS));
+            assertEquals(0, supervisor.getRecoveries());
+            // Frames keep coming, the supervisor may still be finishing the attempt when the first one arrives
+            do {
+                supervisor.frameArrived();
+            } while (!recovered.await(10, TimeUnit.MILLISECONDS));
+            assertEquals(1, supervisor.getRecoveries());
+            assertEquals(3, connector.attempts.get());
+            assertTrue(supervisor.getLastRecoveryMillis() >= 0);
+        } finally {
+            supervisor.stop();
+        }
+    }
+
+    /**
+     * Fails a number of times before it connects
+     */
+    private static class Connector implements StreamSupervisor.Connector {
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch connected = new CountDownLatch(1);
+        private final int failures;
+
+        Connector(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void connect() throws IOException {
+            if (attempts.incrementAndGet() <= failures) {
+                throw new IOException("Camera not found");
+            }
+            connected.countDown();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.flirone;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SummedAreaTableTest {
+    private static final int WIDTH = 13;
+    private static final int HEIGHT = 9;
+
+    @Test
+    public void fractionalSumsMatchBruteForce() {
+        Random random = new Random(7);
+        double[] values = new double[WIDTH * HEIGHT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 280 + random.nextInt(4000) / 100.0;
+        }
+        TemperatureMatrix matrix = new TemperatureMatrixPool(1).acquire(WIDTH, HEIGHT);
+        matrix.fill(values, 0);
+        SummedAreaTable table = new SummedAreaTable();
+        table.build(matrix);
+
+        for (int n = 0; n < 500; n++) {
+            double x0 = random.nextDouble() * WIDTH;
+            double x1 = x0 + random.nextDouble() * (WIDTH - x0);
+            double y0 = random.nextDouble() * HEIGHT;
+            double y1 = y0 + random.nextDouble() * (HEIGHT - y0);
+            assertEquals(bruteForce(matrix, x0, y0, x1, y1), table.sum(x0, y0, x1, y1), 1e-6);
+        }
+        // Whole pixels and the whole matrix, up to the right and bottom edges
+        assertEquals(bruteForce(matrix, 0, 0, WIDTH, HEIGHT), table.sum(0, 0, WIDTH, HEIGHT), 1e-6);
+        assertEquals(matrix.get(4, 3), table.sum(4, 3, 5, 4), 1e-6);
+        assertEquals(0, table.sum(2.5, 1.5, 2.5, 6), 1e-9);
+    }
+
+    /**
+     * Every pixel weighted by the part of its unit square the rectangle covers
+     */
+    private static double bruteForce(TemperatureMatrix matrix, double x0, double y0, double x1, double y1) {
+        double sum = 0;
+        for (int y = 0; y < matrix.height; y++) {
+            double h = Math.max(0, Math.min(y + 1, y1) - Math.max(y, y0));
+            for (int x = 0; x < matrix.width; x++) {
+                double w = Math.max(0, Math.min(x + 1, x1) - Math.max(x, x0));
+                sum += w * h * matrix.get(x, y);
+            }
+        }
+        return sum;
+    }
+}
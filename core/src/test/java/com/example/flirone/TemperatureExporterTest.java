@@ -0,0 +1,101 @@
+package com.example.flirone;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+public class TemperatureExporterTest {
+    // 2000-02-29T00:00:00.123Z, a leap day
+    private static final long LEAP_DAY = 951782400123L;
+    private static final long LAST_OF_FEBRUARY = LEAP_DAY + TimeSeriesStore.DAY - 124;
+
+    @Test
+    public void writesCsvWithUtcTimestampsAndTwoDecimals() throws IOException {
+        TimeSeriesStore store = store();
+        StringWriter out = new StringWriter();
+        assertEquals(3, new TemperatureExporter().export(store, store.raw, TemperatureExporter.Format.CSV, out));
+        assertEquals("time,min_c,max_c,avg_c,count\n"
+                        + "2000-02-29T23:59:59.999Z,-23.15,100.00,36.65,1\n"
+                        + "2000-03-01T00:00:00.004Z,26.85,37.00,1.25,1\n"
+                        + "2000-03-01T00:59:00.000Z,0.00,-0.50,-40.00,1\n",
+                out.toString());
+    }
+
+    @Test
+    public void writesTimesBeforeTheEpoch() throws IOException {
+        TimeSeriesStore store = new TimeSeriesStore();
+        store.ingest(-1, 273.15f, 273.15f, 273.15f);
+        StringWriter out = new StringWriter();
+        new TemperatureExporter().export(store, store.raw, TemperatureExporter.Format.CSV, out);
+        assertEquals("1969-12-31T23:59:59.999Z,0.00,0.00,0.00,1", out.toString().split("\n")[1]);
+    }
+
+    @Test
+    public void writesOneJsonObjectPerLine() throws IOException {
+        TimeSeriesStore store = store();
+        StringWriter out = new StringWriter();
+        new TemperatureExporter().export(store, store.raw, TemperatureExporter.Format.NDJSON, out);
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("{\"time\":\"2000-03-01T00:00:00.004Z\",\"min_c\":26.85,\"max_c\":37.00,\"avg_c\":1.25,\"count\":1}", lines[1]);
+    }
+
+    @Test
+    public void flushesLargeExportsWhole() throws IOException {
+        TimeSeriesStore store = new TimeSeriesStore();
+        int rows = 10000;
+        for (int i = 0; i < rows; i++) {
+            store.ingest(LEAP_DAY + i * 100L, 300.15f, 310.15f, 305.15f);
+        }
+        StringWriter out = new StringWriter();
+        assertEquals(rows, new TemperatureExporter().export(store, store.raw, TemperatureExporter.Format.CSV, out));
+        String[] lines = out.toString().split("\n");
+        assertEquals(rows + 1, lines.length);
+        assertEquals("2000-02-29T00:16:40.023Z,27.00,37.00,32.00,1", lines[rows]);
+    }
+
+    @Test
+    public void exportsATimeRangeOfAnyTier() throws IOException {
+        TimeSeriesStore store = new TimeSeriesStore();
+        // Ten readings a second for 500 seconds, from midnight on
+        long midnight = LEAP_DAY - 123;
+        for (int i = 0; i < 5000; i++) {
+            store.ingest(midnight + i * 100L, 300.15f, 310.15f, 305.15f);
+        }
+        TemperatureExporter exporter = new TemperatureExporter();
+        StringWriter out = new StringWriter();
+        // Seconds 10 to 19, the end is exclusive
+        assertEquals(10, exporter.export(store, store.seconds, midnight + 10 * TimeSeriesStore.SECOND,
+                midnight + 20 * TimeSeriesStore.SECOND, TemperatureExporter.Format.CSV, out));
+        String[] lines = out.toString().split("\n");
+        assertEquals("2000-02-29T00:00:10.000Z,27.00,37.00,32.00,10", lines[1]);
+        assertEquals("2000-02-29T00:00:19.000Z,27.00,37.00,32.00,10", lines[10]);
+
+        out = new StringWriter();
+        // The eighth minute is still open
+        assertEquals(8, exporter.export(store, store.minutes, Long.MIN_VALUE, Long.MAX_VALUE,
+                TemperatureExporter.Format.NDJSON, out));
+        assertEquals("{\"time\":\"2000-02-29T00:07:00.000Z\",\"min_c\":27.00,\"max_c\":37.00,\"avg_c\":32.00,"
+                + "\"count\":600}", out.toString().split("\n")[7]);
+
+        // A range across batches
+        out = new StringWriter();
+        assertEquals(4499, exporter.export(store, store.raw, midnight + 1, midnight + 4500 * 100L,
+                TemperatureExporter.Format.CSV, out));
+        lines = out.toString().split("\n");
+        assertEquals("2000-02-29T00:00:00.100Z,27.00,37.00,32.00,1", lines[1]);
+        assertEquals("2000-02-29T00:07:29.900Z,27.00,37.00,32.00,1", lines[4499]);
+    }
+
+    private static TimeSeriesStore store() {
+        TimeSeriesStore store = new TimeSeriesStore();
+        // Across midnight, the raw tier keeps an hour
+        store.ingest(LAST_OF_FEBRUARY, 250f, 373.15f, 309.8f);
+        store.ingest(LAST_OF_FEBRUARY + 5, 300f, 310.15f, 274.4f);
+        store.ingest(LAST_OF_FEBRUARY + 59 * TimeSeriesStore.MINUTE + 1, 273.15f, 272.65f, 233.15f);
+        return store;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.flirone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TemperatureHistogramTest {
+    @Test
+    public void quantilesAreAccurateToABin() {
+        TemperatureHistogram histogram = new TemperatureHistogram();
+        assertTrue(Double.isNaN(histogram.quantile(0.5)));
+        // 1000 values spread evenly over 300 K to 310 K
+        for (int i = 0; i < 1000; i++) {
+            histogram.add(300 + i * 0.01);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(305, histogram.quantile(0.5), TemperatureHistogram.BIN_WIDTH);
+        assertEquals(309, histogram.quantile(0.9), TemperatureHistogram.BIN_WIDTH);
+        assertEquals(309.5, histogram.quantile(0.95), TemperatureHistogram.BIN_WIDTH);
+        assertEquals(300, histogram.quantile(0), TemperatureHistogram.BIN_WIDTH);
+        assertEquals(310, histogram.quantile(1), TemperatureHistogram.BIN_WIDTH);
+        assertEquals(0.25, histogram.fractionBelow(302.5), 0.01);
+    }
+
+    @Test
+    public void outOfRangeValuesGoToTheEdgeBins() {
+        TemperatureHistogram histogram = new TemperatureHistogram();
+        histogram.add(0);
+        histogram.add(1000);
+        assertEquals(1, histogram.count(0));
+        assertEquals(1, histogram.count(TemperatureHistogram.BINS - 1));
+    }
+
+    @Test
+    public void mergeEqualsAddingEverythingToOne() {
+        TemperatureHistogram cold = new TemperatureHistogram();
+        TemperatureHistogram warm = new TemperatureHistogram();
+        TemperatureHistogram all = new TemperatureHistogram();
+        for (int i = 0; i < 300; i++) {
+            double c = 290 + i * 0.02;
+            double w = 305 + i * 0.03;
+            cold.add(c);
+            warm.add(w);
+            all.add(c);
+            all.add(w);
+        }
+        TemperatureHistogram merged = new TemperatureHistogram();
+        merged.merge(warm);
+        merged.merge(cold);
+
+        assertEquals(all.count(), merged.count());
+        for (int bin = 0; bin < TemperatureHistogram.BINS; bin++) {
+            assertEquals(all.count(bin), merged.count(bin));
+        }
+        for (double q = 0; q <= 1; q += 0.05) {
+            assertEquals(all.quantile(q), merged.quantile(q), 1e-9);
+        }
+
+        merged.clear();
+        assertEquals(0, merged.count());
+        assertTrue(Double.isNaN(merged.quantile(0.5)));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.flirone;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimeSeriesStoreTest {
+    // On a minute boundary
+    private static final long START = 1599999960000L;
+    private static final int HEADER = 4 + 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reopenRestoresTiersAndOpenBuckets() throws Exception {
+        File dir = folder.getRoot();
+        TimeSeriesStore store = new TimeSeriesStore();
+        store.open(dir);
+        ingest(store, 0, 100, 500);
+        store.compact();
+
+        TimeSeriesStore reopened = new TimeSeriesStore();
+        reopened.open(dir);
+        assertEquals(100, reopened.raw.size());
+        assertEquals(store.seconds.size(), reopened.seconds.size());
+        assertEquals(store.seconds.time(store.seconds.size() - 1),
+                reopened.seconds.time(reopened.seconds.size() - 1));
+        // The half-finished minute carried over, closing it counts the readings from before the restart
+        reopened.close();
+        assertEquals(100, reopened.minutes.count(0));
+        store.close();
+    }
+
+    @Test
+    public void compactionAppendsOnlyWhatCameIn() throws Exception {
+        File dir = folder.getRoot();
+        TimeSeriesStore store = new TimeSeriesStore();
+        store.open(dir);
+        ingest(store, 0, 100, 100);
+        store.compact();
+        File raw = new File(dir, TimeSeriesStore.RAW_FILE);
+        assertEquals(HEADER + 100 * RollupTier.ENTRY_SIZE, raw.length());
+
+        store.compact();
+        assertEquals(HEADER + 100 * RollupTier.ENTRY_SIZE, raw.length());
+
+        ingest(store, 100 * 100, 40, 100);
+        store.compact();
+        assertEquals(HEADER + 140 * RollupTier.ENTRY_SIZE, raw.length());
+        store.close();
+    }
+
+    @Test
+    public void clearRawStartsTheFileOver() throws Exception {
+        File dir = folder.getRoot();
+        TimeSeriesStore store = new TimeSeriesStore();
+        store.open(dir);
+        ingest(store, 0, 100, 100);
+        store.compact();
+        store.clearRaw();
+        ingest(store, 100 * 100, 5, 100);
+        store.close();
+
+        TimeSeriesStore reopened = new TimeSeriesStore();
+        reopened.open(dir);
+        assertEquals(5, reopened.raw.size());
+        assertEquals(START + 100 * 100, reopened.raw.time(0));
+        reopened.close();
+    }
+
+    @Test
+    public void rewritesTheFileOnceItHoldsTwiceTheTier() throws Exception {
+        File dir = folder.getRoot();
+        TimeSeriesStore store = new TimeSeriesStore();
+        store.open(dir);
+        File raw = new File(dir, TimeSeriesStore.RAW_FILE);
+        // Every batch is hours after the last, so only the newest is live
+        for (int batch = 0; batch < 3; batch++) {
+            ingest(store, batch * 10 * TimeSeriesStore.HOUR, 2000, 1000);
+            store.compact();
+        }
+        assertEquals(2000, store.raw.size());
+        assertEquals(HEADER + 2000 * RollupTier.ENTRY_SIZE, raw.length());
+
+        TimeSeriesStore reopened = new TimeSeriesStore();
+        reopened.open(dir);
+        assertEquals(2000, reopened.raw.size());
+        assertEquals(START + 20 * TimeSeriesStore.HOUR, reopened.raw.time(0));
+        reopened.close();
+        store.close();
+    }
+
+    private static void ingest(TimeSeriesStore store, long offset, int n, long step) {
+        for (int i = 0; i < n; i++) {
+            float avg = 300 + i % 7;
+            store.ingest(START + offset + i * step, avg - 1, avg + 1, avg);
+        }
+    }
+}